@@ -0,0 +1,137 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Queue;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.xml.bind.JAXBException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Puts a {@link SimulatedUSM} on a broker: requests are read from the USM queue by several consumers and answered on
+ * their JMSReplyTo destination, with the JMSMessageID of the request as JMSCorrelationID, after a latency drawn from a
+ * {@link LatencyDistribution}.
+ * <p>The latency is waited for on the threads replying, not on the consumers, so that a slow answer does not hold up
+ * the requests behind it. Every replying thread has its own session, as sessions are not thread-safe.
+ */
+public class BrokerUSM implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrokerUSM.class);
+
+    private final SimulatedUSM usm;
+    private final LatencyDistribution latency;
+    private final Connection connection;
+    private final ScheduledExecutorService repliers;
+    private final ThreadLocal<Replier> replier = ThreadLocal.withInitial(this::createReplier);
+
+    /**
+     * @param consumers the number of consumers reading the requests, which is also the number of replying threads
+     */
+    public BrokerUSM(SimulatedUSM usm, LatencyDistribution latency, ConnectionFactory connectionFactory, Queue requests, int consumers) throws JMSException {
+        this.usm = usm;
+        this.latency = latency;
+        this.repliers = Executors.newScheduledThreadPool(consumers, new ReplierThreads());
+        this.connection = connectionFactory.createConnection();
+        try {
+            for (int i = 0; i < consumers; i++) {
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(requests);
+                consumer.setMessageListener(this::onRequest);
+            }
+            connection.start();
+        } catch (JMSException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public SimulatedUSM getUSM() {
+        return usm;
+    }
+
+    @Override
+    public void close() throws JMSException {
+        repliers.shutdownNow();
+        // closing the connection closes its sessions
+        connection.close();
+    }
+
+    private void onRequest(Message message) {
+        try {
+            String request = message instanceof TextMessage ? ((TextMessage) message).getText() : message.getBody(String.class);
+            String messageId = message.getJMSMessageID();
+            Destination replyTo = message.getJMSReplyTo();
+            if (replyTo == null) {
+                LOG.warn("Discarding USM request {} without reply destination", messageId);
+                return;
+            }
+            repliers.schedule(() -> reply(request, messageId, replyTo), latency.nextMicros(), TimeUnit.MICROSECONDS);
+        } catch (JMSException e) {
+            LOG.error("Unable to read a USM request", e);
+        }
+    }
+
+    private void reply(String request, String messageId, Destination replyTo) {
+        try {
+            Replier current = replier.get();
+            TextMessage response = current.session.createTextMessage(usm.respond(request));
+            response.setJMSCorrelationID(messageId);
+            current.producer.send(replyTo, response);
+        } catch (JMSException | JAXBException | RuntimeException e) {
+            LOG.error("Unable to answer USM request {}", messageId, e);
+        }
+    }
+
+    private Replier createReplier() {
+        try {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            return new Replier(session, session.createProducer(null));
+        } catch (JMSException e) {
+            throw new IllegalStateException("Unable to create a session to answer USM requests", e);
+        }
+    }
+
+    private static final class Replier {
+        private final Session session;
+        private final MessageProducer producer;
+
+        private Replier(Session session, MessageProducer producer) {
+            this.session = session;
+            this.producer = producer;
+        }
+    }
+
+    private static final class ReplierThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "broker-usm-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
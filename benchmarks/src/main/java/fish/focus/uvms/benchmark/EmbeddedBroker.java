@@ -0,0 +1,78 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import javax.jms.ConnectionFactory;
+import javax.jms.Queue;
+import org.apache.activemq.artemis.api.jms.ActiveMQJMSClient;
+import org.apache.activemq.artemis.core.config.Configuration;
+import org.apache.activemq.artemis.core.config.impl.ConfigurationImpl;
+import org.apache.activemq.artemis.core.server.embedded.EmbeddedActiveMQ;
+import org.apache.activemq.artemis.jms.client.ActiveMQConnectionFactory;
+
+/**
+ * An Artemis broker running in this JVM, reached through the in-VM transport, without persistence or security. Queues
+ * are created on their first use, like on the UnionVMS brokers.
+ */
+public class EmbeddedBroker implements AutoCloseable {
+
+    public static final String URL = "vm://0";
+
+    private final EmbeddedActiveMQ server = new EmbeddedActiveMQ();
+    private final Path dataDirectory;
+
+    public EmbeddedBroker() throws Exception {
+        // only used when the broker pages messages out of memory
+        dataDirectory = Files.createTempDirectory("usm4uvms-broker");
+        Configuration configuration = new ConfigurationImpl()
+                .setPersistenceEnabled(false)
+                .setSecurityEnabled(false)
+                .setJMXManagementEnabled(false)
+                .setBrokerInstance(dataDirectory.toFile())
+                .addAcceptorConfiguration("in-vm", URL);
+        server.setConfiguration(configuration);
+        server.start();
+    }
+
+    public ConnectionFactory createConnectionFactory() {
+        return new ActiveMQConnectionFactory(URL);
+    }
+
+    /**
+     * @param jndiName the name the queue is looked up with in the application server, e.g.
+     *                 {@link fish.focus.uvms.commons.message.api.MessageConstants#QUEUE_USM}
+     */
+    public static Queue queue(String jndiName) {
+        return ActiveMQJMSClient.createQueue(jndiName.substring(jndiName.lastIndexOf('/') + 1));
+    }
+
+    @Override
+    public void close() throws Exception {
+        try {
+            server.stop();
+        } finally {
+            delete(dataDirectory);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+}
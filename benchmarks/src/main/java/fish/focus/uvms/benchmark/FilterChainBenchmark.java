@@ -0,0 +1,248 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.JwtClaimsCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.metrics.USMMetrics;
+import fish.focus.uvms.rest.security.AuthenticationFilter;
+import fish.focus.uvms.rest.security.AuthorizationFilter;
+import fish.focus.uvms.rest.security.UnionVMSFeature;
+import fish.focus.uvms.rest.security.UserSecurityContext;
+import fish.focus.uvms.rest.security.bean.ResolvedUserContext;
+import fish.focus.uvms.rest.security.bean.USMServiceBean;
+import fish.focus.uvms.usm.jwt.JwtTokenHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A request going through {@link AuthenticationFilter}, {@link AuthorizationFilter} and a resource checking a feature,
+ * with the beans of the library wired as the container would and USM answering in-VM through {@link InVmUSM}.
+ * <p>Every request is made by a random user in a random one of its contexts. With more users than the user context
+ * cache holds, most requests miss the cache and wait for USM; with fewer, they are served from the caches after the
+ * warm-up. Run it through {@link FilterChainScaling} to compare thread counts.
+ * <p>Each benchmark thread has its own request scoped beans and USMServiceBean, as a container thread would get from
+ * the request context and the EJB pool; the application scoped beans are shared.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FilterChainBenchmark {
+
+    private static final String PATH_INFO = "/vessel/list";
+
+    @State(Scope.Benchmark)
+    public static class Deployment {
+
+        @Param({"100", "5000"})
+        public int users;
+
+        @Param("10")
+        public int contexts;
+
+        @Param("2000")
+        public long usmLatencyMicros;
+
+        @Param("0")
+        public double usmFaultRate;
+
+        private ServletContext servletContext;
+        private String[] tokens;
+        private String[] roleNames;
+        private String[] scopeNames;
+        private String[] requiredFeatures;
+        private AuthenticationFilter authenticationFilter;
+        private InVmUSM usm;
+        private USMMessageClient messageClient;
+        private UserContextCache userContextCache;
+        private ApplicationDescriptorCache applicationDescriptorCache;
+        private DatasetCache datasetCache;
+        private USMCallGuard callGuard;
+        private USMMetrics metrics;
+
+        private final LongAdder requestCount = new LongAdder();
+        private final LongAdder forbiddenCount = new LongAdder();
+        private final LongAdder unauthorizedCount = new LongAdder();
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            servletContext = ServletMocks.servletContext(Collections.singletonMap("usmApplication", SyntheticUsers.APPLICATION_NAME));
+            Map<String, String> usernames = new HashMap<>();
+            tokens = new String[users];
+            for (int i = 0; i < users; i++) {
+                String username = "user-" + i;
+                tokens[i] = SyntheticUsers.token(username);
+                usernames.put(tokens[i], username);
+            }
+            roleNames = new String[contexts];
+            scopeNames = new String[contexts];
+            requiredFeatures = new String[contexts];
+            for (int i = 0; i < contexts; i++) {
+                roleNames[i] = SyntheticUsers.roleName(i);
+                scopeNames[i] = SyntheticUsers.scopeName(i);
+                requiredFeatures[i] = SyntheticUsers.grantedFeature(i).name();
+            }
+
+            metrics = new USMMetrics();
+            callGuard = new USMCallGuard();
+            userContextCache = new UserContextCache();
+            applicationDescriptorCache = new ApplicationDescriptorCache();
+            datasetCache = new DatasetCache();
+            usm = new InVmUSM(new SimulatedUSM(contexts, usmFaultRate), usmLatencyMicros);
+            messageClient = new USMMessageClient();
+            Wiring.inject(messageClient, "messageProducer", usm.getProducer());
+            Wiring.inject(messageClient, "responseDispatcher", usm.getDispatcher());
+            Wiring.inject(messageClient, "callGuard", callGuard);
+            Wiring.inject(messageClient, "metrics", metrics);
+
+            authenticationFilter = new AuthenticationFilter();
+            Wiring.inject(authenticationFilter, "tokenHandler", tokenHandler(usernames));
+            Wiring.inject(authenticationFilter, "claimsCache", new JwtClaimsCache());
+            Wiring.inject(authenticationFilter, "metrics", metrics);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            usm.close();
+            System.out.println();
+            System.out.println(requestCount.sum() + " requests, " + forbiddenCount.sum() + " forbidden, " + unauthorizedCount.sum()
+                    + " unauthorized, " + usm.getUSM().getRequestCount() + " USM requests of which " + usm.getUSM().getFaultCount() + " faults, "
+                    + callGuard.getBulkhead().getRejectedCount() + " refused by the bulkhead");
+        }
+
+        private void count(int status) {
+            requestCount.increment();
+            if (status == HttpServletResponse.SC_FORBIDDEN) {
+                forbiddenCount.increment();
+            } else if (status == HttpServletResponse.SC_UNAUTHORIZED) {
+                unauthorizedCount.increment();
+            }
+        }
+
+        /**
+         * Verifies the tokens made by {@link SyntheticUsers#token(String)}; every token grants all the features.
+         */
+        private static JwtTokenHandler tokenHandler(Map<String, String> usernames) {
+            List<Integer> featureIds = new ArrayList<>();
+            for (UnionVMSFeature feature : UnionVMSFeature.values()) {
+                featureIds.add(feature.getFeatureId());
+            }
+            return (JwtTokenHandler) Proxy.newProxyInstance(FilterChainBenchmark.class.getClassLoader(),
+                    new Class<?>[]{JwtTokenHandler.class}, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "parseToken":
+                                return usernames.get((String) args[0]);
+                            case "parseTokenFeatures":
+                                return featureIds;
+                            case "extendToken":
+                                return args[0];
+                            case "createToken":
+                                return SyntheticUsers.token((String) args[0]);
+                            default:
+                                throw new UnsupportedOperationException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class RequestThread {
+
+        private ResolvedUserContext resolvedUserContext;
+        private UserSecurityContext securityContext;
+        private FilterChain chain;
+        private String requiredFeature;
+
+        @Setup(Level.Trial)
+        public void setUp(Deployment deployment) {
+            resolvedUserContext = new ResolvedUserContext();
+            securityContext = new UserSecurityContext();
+            USMServiceBean service = new USMServiceBean();
+            Wiring.inject(service, "messageClient", deployment.messageClient);
+            Wiring.inject(service, "userContextCache", deployment.userContextCache);
+            Wiring.inject(service, "applicationDescriptorCache", deployment.applicationDescriptorCache);
+            Wiring.inject(service, "datasetCache", deployment.datasetCache);
+            Wiring.inject(service, "callGuard", deployment.callGuard);
+            Wiring.inject(service, "resolvedUserContext", resolvedUserContext);
+
+            AuthorizationFilter authorizationFilter = new AuthorizationFilter();
+            Wiring.inject(authorizationFilter, "usmService", service);
+            Wiring.inject(authorizationFilter, "securityContext", securityContext);
+            Wiring.inject(authorizationFilter, "metrics", deployment.metrics);
+
+            FilterChain resource = (request, response) -> {
+                if (!securityContext.isAuthorized() || !((HttpServletRequest) request).isUserInRole(requiredFeature)) {
+                    ((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN);
+                }
+            };
+            chain = (request, response) -> authorizationFilter.doFilter(request, response, resource);
+        }
+
+        /**
+         * Starts a new request, with empty request scoped beans.
+         */
+        private void begin(String requiredFeature) {
+            resolvedUserContext.clear();
+            securityContext.setAuthorization(null, null);
+            this.requiredFeature = requiredFeature;
+        }
+    }
+
+    @Benchmark
+    public int filterChain(Deployment deployment, RequestThread thread) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int user = random.nextInt(deployment.users);
+        int context = random.nextInt(deployment.contexts);
+        Map<String, String> headers = new HashMap<>(4);
+        headers.put(AuthConstants.HTTP_HEADER_AUTHORIZATION, deployment.tokens[user]);
+        headers.put(AuthConstants.HTTP_HEADER_ROLE_NAME, deployment.roleNames[context]);
+        headers.put(AuthConstants.HTTP_HEADER_SCOPE_NAME, deployment.scopeNames[context]);
+
+        thread.begin(deployment.requiredFeatures[context]);
+        HttpServletRequest request = ServletMocks.request(deployment.servletContext, PATH_INFO, headers);
+        ServletMocks.Response response = ServletMocks.response();
+        deployment.authenticationFilter.doFilter(request, response.getServletResponse(), thread.chain);
+        deployment.count(response.getStatus());
+        return response.getStatus();
+    }
+}
@@ -0,0 +1,117 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+/**
+ * Runs {@link FilterChainBenchmark} with 1, 4, 16 and 64 threads and prints, per workload, the throughput, how it
+ * scales compared to one thread, and the latency percentiles.
+ * <p>The thread counts can be changed with the <code>threads</code> system property, e.g.
+ * <code>-Dthreads=1,8,32</code>. The arguments are passed on to JMH, e.g. <code>-p users=5000</code>.
+ */
+public final class FilterChainScaling {
+
+    private static final String DEFAULT_THREADS = "1,4,16,64";
+
+    private FilterChainScaling() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options commandLine = new CommandLineOptions(args);
+        // workload -> threads -> results of that thread count
+        Map<String, Map<Integer, Row>> rows = new TreeMap<>();
+        for (String threads : System.getProperty("threads", DEFAULT_THREADS).split(",")) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(FilterChainBenchmark.class.getName() + ".filterChain")
+                    .threads(Integer.parseInt(threads.trim()))
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .build();
+            Collection<RunResult> results = new Runner(options).run();
+            for (RunResult result : results) {
+                BenchmarkParams params = result.getParams();
+                rows.computeIfAbsent(workload(params), workload -> new TreeMap<>())
+                        .computeIfAbsent(params.getThreads(), count -> new Row())
+                        .add(params.getMode(), result);
+            }
+        }
+        print(rows);
+    }
+
+    private static String workload(BenchmarkParams params) {
+        List<String> values = new ArrayList<>();
+        for (String key : params.getParamsKeys()) {
+            values.add(key + "=" + params.getParam(key));
+        }
+        return String.join(", ", values);
+    }
+
+    private static void print(Map<String, Map<Integer, Row>> rows) {
+        for (Map.Entry<String, Map<Integer, Row>> workload : rows.entrySet()) {
+            System.out.println();
+            System.out.println("Filter chain scaling, " + workload.getKey());
+            System.out.println(String.format("%8s %14s %9s %11s %11s %11s %11s %11s",
+                    "threads", "requests/s", "scaling", "p50 us", "p99 us", "p99.9 us", "p99.99 us", "max us"));
+            Double single = null;
+            for (Map.Entry<Integer, Row> entry : workload.getValue().entrySet()) {
+                Row row = entry.getValue();
+                if (single == null && entry.getKey() == 1) {
+                    single = row.throughput;
+                }
+                String scaling = single == null || row.throughput == null ? "" : String.format("%.2fx", row.throughput / single);
+                System.out.println(String.format("%8d %14s %9s %11s %11s %11s %11s %11s", entry.getKey(),
+                        row.throughput == null ? "" : String.format("%.0f", row.throughput), scaling,
+                        row.percentile(50), row.percentile(99), row.percentile(99.9), row.percentile(99.99), row.max()));
+            }
+        }
+    }
+
+    /**
+     * The results of one workload at one thread count.
+     */
+    private static final class Row {
+        // requests per second
+        private Double throughput;
+        // latencies in microseconds
+        private Statistics latencies;
+
+        private void add(Mode mode, RunResult result) {
+            if (mode == Mode.Throughput) {
+                throughput = result.getPrimaryResult().getScore() * TimeUnit.SECONDS.toMicros(1);
+            } else if (mode == Mode.SampleTime) {
+                latencies = result.getPrimaryResult().getStatistics();
+            }
+        }
+
+        private String percentile(double rank) {
+            return latencies == null ? "" : String.format("%.1f", latencies.getPercentile(rank));
+        }
+
+        private String max() {
+            return latencies == null ? "" : String.format("%.1f", latencies.getMax());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.jms.Destination;
+import javax.xml.bind.JAXBException;
+import fish.focus.uvms.jms.USMMessageProducer;
+import fish.focus.uvms.jms.USMResponseDispatcher;
+
+/**
+ * Puts a {@link SimulatedUSM} behind the producer and response dispatcher of the library, without a broker: a sent
+ * request is answered after a latency drawn from a {@link LatencyDistribution}, on a thread of this class, and its
+ * response handed to the dispatcher as the consumer of the reply queue would.
+ */
+public class InVmUSM implements AutoCloseable {
+
+    private final SimulatedUSM usm;
+    private final LatencyDistribution latency;
+    private final ScheduledExecutorService responders;
+    private final AtomicLong messageIds = new AtomicLong();
+    private final Producer producer = new Producer();
+    private final Dispatcher dispatcher = new Dispatcher();
+
+    /**
+     * @param latencyMicros how long USM takes to answer a request
+     */
+    public InVmUSM(SimulatedUSM usm, long latencyMicros) {
+        this(usm, LatencyDistribution.fixed(latencyMicros));
+    }
+
+    public InVmUSM(SimulatedUSM usm, LatencyDistribution latency) {
+        this.usm = usm;
+        this.latency = latency;
+        this.responders = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), new ResponderThreads());
+    }
+
+    public SimulatedUSM getUSM() {
+        return usm;
+    }
+
+    public USMMessageProducer getProducer() {
+        return producer;
+    }
+
+    public USMResponseDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    @Override
+    public void close() {
+        responders.shutdownNow();
+    }
+
+    private void respond(String messageId, String request) {
+        try {
+            dispatcher.getResponse(messageId).complete(usm.respond(request));
+        } catch (JAXBException | RuntimeException e) {
+            dispatcher.getResponse(messageId).completeExceptionally(e);
+        }
+    }
+
+    private final class Producer extends USMMessageProducer {
+        @Override
+        public Destination getDestination() {
+            return null;
+        }
+
+        @Override
+        public String sendMessage(String text, Destination replyTo) {
+            String messageId = "ID:in-vm-usm-" + messageIds.incrementAndGet();
+            responders.schedule(() -> respond(messageId, text), latency.nextMicros(), TimeUnit.MICROSECONDS);
+            return messageId;
+        }
+    }
+
+    private static final class Dispatcher extends USMResponseDispatcher {
+        @Override
+        public boolean isAvailable() {
+            return true;
+        }
+
+        @Override
+        public Destination getReplyDestination() {
+            return null;
+        }
+    }
+
+    private static final class ResponderThreads implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "in-vm-usm-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
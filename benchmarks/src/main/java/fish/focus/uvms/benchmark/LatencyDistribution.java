@@ -0,0 +1,83 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How long the simulated USM takes to answer a request, in microseconds.
+ * <p>{@link #parse(String)} reads a distribution from its description:
+ * <ul>
+ *     <li><code>fixed:2000</code> always 2 ms</li>
+ *     <li><code>uniform:1000-5000</code> between 1 and 5 ms</li>
+ *     <li><code>exponential:2000</code> 2 ms on average, with a long tail</li>
+ *     <li><code>lognormal:2000,0.5</code> a median of 2 ms and a shape of 0.5, the larger the longer the tail</li>
+ * </ul>
+ * Every distribution can be capped, e.g. <code>exponential:2000,max=50000</code>.
+ */
+@FunctionalInterface
+public interface LatencyDistribution {
+
+    long nextMicros(Random random);
+
+    default long nextMicros() {
+        return nextMicros(ThreadLocalRandom.current());
+    }
+
+    static LatencyDistribution fixed(long micros) {
+        return random -> micros;
+    }
+
+    static LatencyDistribution parse(String description) {
+        String[] kindAndValues = description.trim().split(":", 2);
+        if (kindAndValues.length != 2) {
+            throw new IllegalArgumentException("Latency distribution " + description + " is not like kind:values");
+        }
+        long max = Long.MAX_VALUE;
+        StringBuilder values = new StringBuilder();
+        for (String value : kindAndValues[1].split(",")) {
+            if (value.startsWith("max=")) {
+                max = Long.parseLong(value.substring("max=".length()));
+            } else {
+                values.append(values.length() == 0 ? "" : ",").append(value);
+            }
+        }
+        LatencyDistribution distribution = parse(kindAndValues[0], values.toString().split(","));
+        long cap = max;
+        return cap == Long.MAX_VALUE ? distribution : random -> Math.min(cap, distribution.nextMicros(random));
+    }
+
+    static LatencyDistribution parse(String kind, String[] values) {
+        switch (kind) {
+            case "fixed":
+                return fixed(Long.parseLong(values[0]));
+            case "uniform": {
+                String[] bounds = values[0].split("-");
+                long min = Long.parseLong(bounds[0]);
+                long max = Long.parseLong(bounds[1]);
+                return random -> min + (long) (random.nextDouble() * (max - min + 1));
+            }
+            case "exponential": {
+                double mean = Double.parseDouble(values[0]);
+                return random -> (long) (-mean * Math.log(1 - random.nextDouble()));
+            }
+            case "lognormal": {
+                double mu = Math.log(Double.parseDouble(values[0]));
+                double sigma = values.length > 1 ? Double.parseDouble(values[1]) : 0.5;
+                return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+            }
+            default:
+                throw new IllegalArgumentException("Unknown latency distribution " + kind + ", use fixed, uniform, exponential or lognormal");
+        }
+    }
+}
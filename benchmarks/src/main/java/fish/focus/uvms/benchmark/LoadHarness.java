@@ -0,0 +1,449 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.commons.message.api.MessageConstants;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.jms.USMMessageConsumer;
+import fish.focus.uvms.jms.USMMessageProducer;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.jms.USMResponseDispatcher;
+import fish.focus.uvms.jms.USMUnavailableException;
+import fish.focus.uvms.metrics.USMMetrics;
+import fish.focus.uvms.rest.security.bean.PreferenceWriteBehind;
+import fish.focus.uvms.rest.security.bean.ResolvedUserContext;
+import fish.focus.uvms.rest.security.bean.USMServiceBean;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.messaginghub.pooled.jms.JmsPoolConnectionFactory;
+
+/**
+ * Load test of {@link USMServiceBean} against a simulated USM, without a UnionVMS deployment.
+ * <p>An embedded Artemis broker carries the requests of the library, sent by the real {@link USMMessageProducer},
+ * to a {@link BrokerUSM} and its responses back to the {@link USMResponseDispatcher}, or to the selector based
+ * {@link USMMessageConsumer} with <code>--dispatcher=false</code>. Requests are started at a fixed rate whatever the
+ * time the previous ones take, and their response time is counted from when they should have started, so that a
+ * slow USM shows up as latency instead of as a lower request rate.
+ * <p>Settings are given as <code>--name=value</code> arguments, see {@link Settings}. The library is configured with
+ * its usual system properties, e.g. <code>-Dusm4uvms.jms.bulkhead.maxConcurrent=128</code>.
+ */
+public final class LoadHarness {
+
+    private final Settings settings;
+    private final Library library;
+    private final ThreadPoolExecutor workers;
+
+    private LoadHarness(Settings settings, Library library) {
+        this.settings = settings;
+        this.library = library;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(settings.concurrency, settings.concurrency, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "load-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public static void main(String[] args) throws Exception {
+        Settings settings = Settings.parse(args);
+        System.out.println("USM load harness: " + settings);
+        try (EmbeddedBroker broker = new EmbeddedBroker();
+             BrokerUSM usm = new BrokerUSM(new SimulatedUSM(settings.contexts, settings.faultRate), settings.latency,
+                     broker.createConnectionFactory(), EmbeddedBroker.queue(MessageConstants.QUEUE_USM), settings.responders);
+             Library library = new Library(broker, settings)) {
+            LoadHarness harness = new LoadHarness(settings, library);
+            harness.run(settings.warmup);
+            long usmRequests = usm.getUSM().getRequestCount();
+            long usmFaults = usm.getUSM().getFaultCount();
+            long bulkheadRejections = library.callGuard.getBulkhead().getRejectedCount();
+            long circuitBreakerRejections = library.callGuard.getCircuitBreaker().getRejectedCount();
+            Results results = harness.run(settings.duration);
+            harness.awaitCompletion();
+            results.print(settings);
+            System.out.println(String.format("USM answered %d requests, %d of them with a fault. The call guard refused %d requests because of the bulkhead and %d because of the circuit breaker, which is %s.",
+                    usm.getUSM().getRequestCount() - usmRequests, usm.getUSM().getFaultCount() - usmFaults,
+                    library.callGuard.getBulkhead().getRejectedCount() - bulkheadRejections,
+                    library.callGuard.getCircuitBreaker().getRejectedCount() - circuitBreakerRejections,
+                    library.callGuard.getCircuitBreaker().getState()));
+        }
+    }
+
+    /**
+     * Starts requests at the target rate for the given number of seconds.
+     *
+     * @return the results of the requests started, filled in as they complete
+     */
+    private Results run(long seconds) {
+        Results results = new Results();
+        Random random = new Random();
+        long interval = TimeUnit.SECONDS.toNanos(1) / settings.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        results.start = start;
+        for (long next = start; next - end < 0; next += interval) {
+            long intended = next;
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            LoadOperation operation = settings.next(random);
+            results.sent.increment();
+            workers.execute(() -> call(operation, intended, results));
+        }
+        return results;
+    }
+
+    private void awaitCompletion() throws InterruptedException {
+        workers.shutdown();
+        if (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+            System.out.println("Some requests were still running after one minute, they are not counted.");
+        }
+    }
+
+    private void call(LoadOperation operation, long intended, Results results) {
+        long started = System.nanoTime();
+        Outcome outcome;
+        try {
+            operation.execute(library.service(), ThreadLocalRandom.current(), settings);
+            outcome = Outcome.OK;
+        } catch (ServiceException e) {
+            outcome = Outcome.of(e);
+        } catch (RuntimeException e) {
+            outcome = Outcome.ERROR;
+        }
+        long done = System.nanoTime();
+        results.record(operation, outcome, done - intended, done - started);
+    }
+
+    /**
+     * How a call ended.
+     */
+    enum Outcome {
+        OK,
+        // USM answered with a UserFault, or its answer could not be read
+        FAULT,
+        // no answer from USM in time, or another JMS failure
+        TIMEOUT,
+        // not sent by the call guard, because of the bulkhead or the circuit breaker
+        REFUSED,
+        ERROR;
+
+        private static Outcome of(ServiceException exception) {
+            for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+                if (cause instanceof USMUnavailableException) {
+                    return REFUSED;
+                }
+                if (cause instanceof JMSException) {
+                    return TIMEOUT;
+                }
+            }
+            return FAULT;
+        }
+    }
+
+    /**
+     * The settings of a run, and their defaults.
+     */
+    static final class Settings {
+        // requests started per second
+        int rate = 200;
+        // seconds of measurement, after the warm-up
+        long duration = 60;
+        long warmup = 10;
+        // requests running at the same time, the others wait for their turn
+        int concurrency = 128;
+        int users = 100000;
+        int contexts = 10;
+        int applications = 10000;
+        int discriminators = 100000;
+        LatencyDistribution latency = LatencyDistribution.parse("lognormal:2000,0.5");
+        private String latencyDescription = "lognormal:2000,0.5";
+        double faultRate = 0;
+        // consumers of the simulated USM
+        int responders = 8;
+        boolean dispatcher = true;
+        private final Map<LoadOperation, Integer> mix = new EnumMap<>(LoadOperation.class);
+        private LoadOperation[] operations;
+        private int[] cumulativeWeights;
+
+        static Settings parse(String[] args) {
+            Map<String, String> values = new HashMap<>();
+            for (String arg : args) {
+                if (!arg.startsWith("--") || !arg.contains("=")) {
+                    throw new IllegalArgumentException("Settings are given as --name=value, not " + arg);
+                }
+                values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+            Settings settings = new Settings();
+            settings.rate = Integer.parseInt(values.getOrDefault("rate", String.valueOf(settings.rate)));
+            settings.duration = Long.parseLong(values.getOrDefault("duration", String.valueOf(settings.duration)));
+            settings.warmup = Long.parseLong(values.getOrDefault("warmup", String.valueOf(settings.warmup)));
+            settings.concurrency = Integer.parseInt(values.getOrDefault("concurrency", String.valueOf(settings.concurrency)));
+            settings.users = Integer.parseInt(values.getOrDefault("users", String.valueOf(settings.users)));
+            settings.contexts = Integer.parseInt(values.getOrDefault("contexts", String.valueOf(settings.contexts)));
+            settings.applications = Integer.parseInt(values.getOrDefault("applications", String.valueOf(settings.applications)));
+            settings.discriminators = Integer.parseInt(values.getOrDefault("discriminators", String.valueOf(settings.discriminators)));
+            settings.faultRate = Double.parseDouble(values.getOrDefault("faultRate", String.valueOf(settings.faultRate)));
+            settings.responders = Integer.parseInt(values.getOrDefault("responders", String.valueOf(settings.responders)));
+            settings.dispatcher = Boolean.parseBoolean(values.getOrDefault("dispatcher", String.valueOf(settings.dispatcher)));
+            if (values.containsKey("latency")) {
+                settings.latencyDescription = values.get("latency");
+                settings.latency = LatencyDistribution.parse(settings.latencyDescription);
+            }
+            if (values.containsKey("mix")) {
+                for (String weight : values.get("mix").split(",")) {
+                    String[] operationAndWeight = weight.split("=");
+                    settings.mix.put(LoadOperation.fromKey(operationAndWeight[0].trim()), Integer.parseInt(operationAndWeight[1].trim()));
+                }
+            } else {
+                for (LoadOperation operation : LoadOperation.values()) {
+                    settings.mix.put(operation, operation.getDefaultWeight());
+                }
+            }
+            settings.mix.values().removeIf(weight -> weight <= 0);
+            if (settings.mix.isEmpty() || settings.rate <= 0) {
+                throw new IllegalArgumentException("Nothing to do, the rate and at least one weight of the mix must be positive");
+            }
+            settings.operations = settings.mix.keySet().toArray(new LoadOperation[0]);
+            settings.cumulativeWeights = new int[settings.operations.length];
+            int total = 0;
+            for (int i = 0; i < settings.operations.length; i++) {
+                total += settings.mix.get(settings.operations[i]);
+                settings.cumulativeWeights[i] = total;
+            }
+            return settings;
+        }
+
+        private LoadOperation next(Random random) {
+            int draw = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+            int i = 0;
+            while (draw >= cumulativeWeights[i]) {
+                i++;
+            }
+            return operations[i];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder mixDescription = new StringBuilder();
+            for (Map.Entry<LoadOperation, Integer> weight : mix.entrySet()) {
+                mixDescription.append(mixDescription.length() == 0 ? "" : ",").append(weight.getKey().getKey()).append('=').append(weight.getValue());
+            }
+            return "rate=" + rate + "/s, duration=" + duration + "s, warmup=" + warmup + "s, concurrency=" + concurrency
+                    + ", users=" + users + ", contexts=" + contexts + ", applications=" + applications + ", discriminators=" + discriminators
+                    + ", latency=" + latencyDescription + ", faultRate=" + faultRate + ", responders=" + responders
+                    + ", dispatcher=" + dispatcher + ", mix=" + mixDescription;
+        }
+    }
+
+    /**
+     * The beans of the library, wired as the container would. Each load thread gets its own USMServiceBean and request
+     * scoped beans, as it would get from the EJB pool and the request context.
+     */
+    private static final class Library implements AutoCloseable {
+        private final JmsPoolConnectionFactory connectionFactory = new JmsPoolConnectionFactory();
+        private final USMCallGuard callGuard = new USMCallGuard();
+        private final USMResponseDispatcher dispatcher = new USMResponseDispatcher();
+        private final USMMessageClient messageClient = new USMMessageClient();
+        private final UserContextCache userContextCache = new UserContextCache();
+        private final ApplicationDescriptorCache applicationDescriptorCache = new ApplicationDescriptorCache();
+        private final DatasetCache datasetCache = new DatasetCache();
+        private final PreferenceWriteBehind preferenceWriteBehind = new PreferenceWriteBehind();
+        private final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+
+        private Library(EmbeddedBroker broker, Settings settings) {
+            // the application server pools the connections of java:/ConnectionFactory, the producer opens one per message
+            connectionFactory.setConnectionFactory(broker.createConnectionFactory());
+            connectionFactory.setMaxConnections(Math.max(1, settings.concurrency / 16));
+
+            USMMetrics metrics = new USMMetrics();
+            USMMessageProducer producer = new USMMessageProducer();
+            Wiring.inject(producer, "destination", EmbeddedBroker.queue(MessageConstants.QUEUE_USM));
+            Wiring.injectByType(producer, ConnectionFactory.class, connectionFactory);
+            USMMessageConsumer consumer = new USMMessageConsumer();
+            Wiring.inject(consumer, "destination", EmbeddedBroker.queue(MessageConstants.QUEUE_USM4UVMS));
+            Wiring.injectByType(consumer, ConnectionFactory.class, connectionFactory);
+
+            Wiring.injectByType(dispatcher, ConnectionFactory.class, broker.createConnectionFactory());
+            Wiring.inject(dispatcher, "threadFactory", (ManagedThreadFactory) runnable -> {
+                Thread thread = new Thread(runnable, "usm-response-dispatcher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (settings.dispatcher) {
+                dispatcher.start();
+            }
+
+            Wiring.inject(messageClient, "messageProducer", producer);
+            Wiring.inject(messageClient, "messageConsumer", consumer);
+            Wiring.inject(messageClient, "responseDispatcher", dispatcher);
+            Wiring.inject(messageClient, "callGuard", callGuard);
+            Wiring.inject(messageClient, "metrics", metrics);
+            System.out.println("USM responses are received by the " + (dispatcher.isAvailable() ? "response dispatcher" : "selector based consumer")
+                    + ", timeouts are " + USMOperation.GET_USER_CONTEXT.getTimeout() + " ms for user contexts");
+        }
+
+        private USMServiceBean service() {
+            Worker worker = workers.get();
+            // every call is a new request
+            worker.resolvedUserContext.clear();
+            return worker.service;
+        }
+
+        @Override
+        public void close() {
+            dispatcher.stop();
+            connectionFactory.stop();
+        }
+
+        private final class Worker {
+            private final ResolvedUserContext resolvedUserContext = new ResolvedUserContext();
+            private final USMServiceBean service = new USMServiceBean();
+
+            private Worker() {
+                Wiring.inject(service, "messageClient", messageClient);
+                Wiring.inject(service, "userContextCache", userContextCache);
+                Wiring.inject(service, "applicationDescriptorCache", applicationDescriptorCache);
+                Wiring.inject(service, "datasetCache", datasetCache);
+                Wiring.inject(service, "callGuard", callGuard);
+                Wiring.inject(service, "resolvedUserContext", resolvedUserContext);
+                Wiring.inject(service, "preferenceWriteBehind", preferenceWriteBehind);
+            }
+        }
+    }
+
+    /**
+     * What happened to the requests started during one phase of the run.
+     */
+    private static final class Results {
+        private final LongAdder sent = new LongAdder();
+        private final LongAccumulator lastCompletion = new LongAccumulator(Math::max, Long.MIN_VALUE);
+        private final Map<LoadOperation, OperationResults> operations = new EnumMap<>(LoadOperation.class);
+        private long start;
+
+        private Results() {
+            for (LoadOperation operation : LoadOperation.values()) {
+                operations.put(operation, new OperationResults());
+            }
+        }
+
+        private void record(LoadOperation operation, Outcome outcome, long responseNanos, long serviceNanos) {
+            operations.get(operation).record(outcome, responseNanos, serviceNanos);
+            lastCompletion.accumulate(System.nanoTime());
+        }
+
+        private void print(Settings settings) {
+            double seconds = (lastCompletion.get() - start) / (double) TimeUnit.SECONDS.toNanos(1);
+            OperationResults all = new OperationResults();
+            System.out.println();
+            System.out.println("Response times in ms of the successful calls, from when they should have started; service p99 from when they did start.");
+            System.out.println(String.format("%-22s %9s %9s %8s %9s %9s %7s %9s %9s %9s %9s %9s %11s",
+                    "operation", "calls", "ok", "faults", "timeouts", "refused", "errors", "p50", "p90", "p99", "p99.9", "max", "service p99"));
+            for (Map.Entry<LoadOperation, OperationResults> entry : operations.entrySet()) {
+                if (entry.getValue().count() > 0) {
+                    entry.getValue().print(entry.getKey().getKey());
+                    all.add(entry.getValue());
+                }
+            }
+            all.print("all");
+            System.out.println();
+            System.out.println(String.format("%d requests started in %ds at a target of %d/s, %.1f successful calls/s.",
+                    sent.sum(), settings.duration, settings.rate, seconds > 0 ? all.outcomes.get(Outcome.OK).sum() / seconds : 0d));
+        }
+    }
+
+    private static final class OperationResults {
+        private final Map<Outcome, LongAdder> outcomes = new EnumMap<>(Outcome.class);
+        private final Recorder responseTimes = new Recorder(3);
+        private final Recorder serviceTimes = new Recorder(3);
+        private Histogram responseHistogram;
+        private Histogram serviceHistogram;
+
+        private OperationResults() {
+            for (Outcome outcome : Outcome.values()) {
+                outcomes.put(outcome, new LongAdder());
+            }
+        }
+
+        private void record(Outcome outcome, long responseNanos, long serviceNanos) {
+            outcomes.get(outcome).increment();
+            if (outcome == Outcome.OK) {
+                responseTimes.recordValue(TimeUnit.NANOSECONDS.toMicros(responseNanos));
+                serviceTimes.recordValue(TimeUnit.NANOSECONDS.toMicros(serviceNanos));
+            }
+        }
+
+        private long count() {
+            long count = 0;
+            for (LongAdder outcome : outcomes.values()) {
+                count += outcome.sum();
+            }
+            return count;
+        }
+
+        private Histogram responseHistogram() {
+            if (responseHistogram == null) {
+                responseHistogram = responseTimes.getIntervalHistogram();
+            }
+            return responseHistogram;
+        }
+
+        private Histogram serviceHistogram() {
+            if (serviceHistogram == null) {
+                serviceHistogram = serviceTimes.getIntervalHistogram();
+            }
+            return serviceHistogram;
+        }
+
+        private void add(OperationResults other) {
+            for (Outcome outcome : Outcome.values()) {
+                outcomes.get(outcome).add(other.outcomes.get(outcome).sum());
+            }
+            responseHistogram().add(other.responseHistogram());
+            serviceHistogram().add(other.serviceHistogram());
+        }
+
+        private void print(String name) {
+            Histogram response = responseHistogram();
+            System.out.println(String.format("%-22s %9d %9d %8d %9d %9d %7d %9.2f %9.2f %9.2f %9.2f %9.2f %11.2f", name, count(),
+                    outcomes.get(Outcome.OK).sum(), outcomes.get(Outcome.FAULT).sum(), outcomes.get(Outcome.TIMEOUT).sum(),
+                    outcomes.get(Outcome.REFUSED).sum(), outcomes.get(Outcome.ERROR).sum(),
+                    millis(response.getValueAtPercentile(50)), millis(response.getValueAtPercentile(90)), millis(response.getValueAtPercentile(99)),
+                    millis(response.getValueAtPercentile(99.9)), millis(response.getMaxValue()), millis(serviceHistogram().getValueAtPercentile(99))));
+        }
+
+        private static double millis(long micros) {
+            return micros / 1000d;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.util.Random;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.rest.security.bean.USMService;
+
+/**
+ * The USMService calls made by {@link LoadHarness}. The users, applications and discriminators are drawn from
+ * populations larger than the caches of the library, so that most calls go to USM.
+ */
+public enum LoadOperation {
+
+    USER_CONTEXT("userContext", 70) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            int context = random.nextInt(settings.contexts);
+            service.getUserContext(user(random, settings), SyntheticUsers.APPLICATION_NAME,
+                    SyntheticUsers.roleName(context), SyntheticUsers.scopeName(context));
+        }
+    },
+    DEPLOYMENT_DESCRIPTOR("deploymentDescriptor", 10) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            service.getApplicationDefinition("application-" + random.nextInt(settings.applications));
+        }
+    },
+    FIND_DATASETS("findDatasets", 10) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            service.findDatasetsByDiscriminator(SyntheticUsers.APPLICATION_NAME, discriminator(random, settings));
+        }
+    },
+    PUT_PREFERENCE("putPreference", 5) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            int context = random.nextInt(settings.contexts);
+            service.putUserPreference("option-" + random.nextInt(SyntheticUsers.PREFERENCES_PER_CONTEXT), "{\"value\":" + random.nextInt() + "}",
+                    SyntheticUsers.APPLICATION_NAME, SyntheticUsers.scopeName(context), SyntheticUsers.roleName(context), user(random, settings));
+        }
+    },
+    CREATE_DATASET("createDataset", 3) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            String discriminator = discriminator(random, settings);
+            service.createDataset(SyntheticUsers.APPLICATION_NAME, discriminator + "-" + random.nextInt(1000), discriminator, "category", "load test");
+        }
+    },
+    DELETE_DATASET("deleteDataset", 2) {
+        @Override
+        void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException {
+            service.deleteDataset(SyntheticUsers.APPLICATION_NAME, discriminator(random, settings) + "-" + random.nextInt(1000));
+        }
+    };
+
+    private final String key;
+    private final int defaultWeight;
+
+    LoadOperation(String key, int defaultWeight) {
+        this.key = key;
+        this.defaultWeight = defaultWeight;
+    }
+
+    /**
+     * @return the name of the operation in the <code>mix</code> setting
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public int getDefaultWeight() {
+        return defaultWeight;
+    }
+
+    abstract void execute(USMService service, Random random, LoadHarness.Settings settings) throws ServiceException;
+
+    public static LoadOperation fromKey(String key) {
+        for (LoadOperation operation : values()) {
+            if (operation.key.equals(key)) {
+                return operation;
+            }
+        }
+        throw new IllegalArgumentException("Unknown operation " + key);
+    }
+
+    private static String user(Random random, LoadHarness.Settings settings) {
+        return "user-" + random.nextInt(settings.users);
+    }
+
+    private static String discriminator(Random random, LoadHarness.Settings settings) {
+        return "discriminator-" + random.nextInt(settings.discriminators);
+    }
+}
@@ -0,0 +1,166 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Servlet objects for driving the filters outside a container. Only what the filters use is implemented, every other
+ * method returns null, false or zero.
+ */
+public final class ServletMocks {
+
+    private ServletMocks() {
+    }
+
+    /**
+     * @param initParameters the init parameters of the web application
+     * @return a context shared by all requests, whose attributes can be written concurrently
+     */
+    public static ServletContext servletContext(Map<String, String> initParameters) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        return proxy(ServletContext.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getInitParameter":
+                    return initParameters.get((String) args[0]);
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return an unauthenticated GET request with the given headers
+     */
+    public static HttpServletRequest request(ServletContext servletContext, String pathInfo, Map<String, String> headers) {
+        Map<String, Object> attributes = new HashMap<>();
+        return proxy(HttpServletRequest.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getServletContext":
+                    return servletContext;
+                case "getHeader":
+                    return headers.get((String) args[0]);
+                case "getMethod":
+                    return "GET";
+                case "getPathInfo":
+                    return pathInfo;
+                case "getAttribute":
+                    return attributes.get((String) args[0]);
+                case "setAttribute":
+                    attributes.put((String) args[0], args[1]);
+                    return null;
+                case "removeAttribute":
+                    attributes.remove((String) args[0]);
+                    return null;
+                default:
+                    return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return a response remembering its status and headers
+     */
+    public static Response response() {
+        return new Response();
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(ServletMocks.class.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object defaultValue(Method method) {
+        Class<?> type = method.getReturnType();
+        if (!type.isPrimitive() || type == void.class) {
+            return null;
+        }
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == char.class) {
+            return '\0';
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == float.class) {
+            return 0f;
+        }
+        if (type == double.class) {
+            return 0d;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        return 0;
+    }
+
+    /**
+     * The response of one request. The status stays 200 unless an error is sent.
+     */
+    public static final class Response implements InvocationHandler {
+        private final Map<String, String> headers = new HashMap<>();
+        private final HttpServletResponse servletResponse = proxy(HttpServletResponse.class, this);
+        private int status = HttpServletResponse.SC_OK;
+
+        public HttpServletResponse getServletResponse() {
+            return servletResponse;
+        }
+
+        public int getStatus() {
+            return status;
+        }
+
+        public String getHeader(String name) {
+            return headers.get(name);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            switch (method.getName()) {
+                case "addHeader":
+                case "setHeader":
+                    headers.put((String) args[0], (String) args[1]);
+                    return null;
+                case "sendError":
+                case "setStatus":
+                    status = (Integer) args[0];
+                    return null;
+                case "getStatus":
+                    return status;
+                case "getHeader":
+                    return headers.get((String) args[0]);
+                default:
+                    return defaultValue(method);
+            }
+        }
+    }
+}
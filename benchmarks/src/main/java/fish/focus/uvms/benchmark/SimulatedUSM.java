@@ -0,0 +1,186 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.io.StringReader;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import fish.focus.uvms.rest.security.UnionVMSFeature;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.uvms.utils.UserFaults;
+import fish.focus.wsdl.user.module.CreateDatasetResponse;
+import fish.focus.wsdl.user.module.DeleteDatasetResponse;
+import fish.focus.wsdl.user.module.FilterDatasetResponse;
+import fish.focus.wsdl.user.module.GetDeploymentDescriptorRequest;
+import fish.focus.wsdl.user.module.GetDeploymentDescriptorResponse;
+import fish.focus.wsdl.user.module.GetUserContextRequest;
+import fish.focus.wsdl.user.module.PutPreferenceResponse;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.DatasetList;
+import fish.focus.wsdl.user.types.Feature;
+
+/**
+ * Answers USM requests the way USM does, from synthetic data: every user has the same contexts, built by
+ * {@link SyntheticUsers}, every application grants all the UnionVMS features and every discriminator has
+ * {@link #DATASETS_PER_DISCRIMINATOR} datasets. Preferences and dataset changes are acknowledged and forgotten.
+ * <p>A share of the requests, the fault rate, is answered with a UserFault instead. Requests USM would not understand
+ * are answered with a UserFault too. Instances are thread-safe.
+ */
+public class SimulatedUSM {
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = XMLInputFactory.newInstance();
+
+    private static final String GET_USER_CONTEXT = rootElementName(GetUserContextRequest.class);
+    private static final String GET_DEPLOYMENT_DESCRIPTOR = rootElementName(GetDeploymentDescriptorRequest.class);
+
+    public static final int DATASETS_PER_DISCRIMINATOR = 5;
+
+    private static final String OK = "OK";
+
+    // replaced by the user name of the request, which the synthetic user names never need escaping for
+    private static final String USERNAME_PLACEHOLDER = "__username__";
+
+    private final double faultRate;
+    private final String userContextTemplate;
+    private final String fault;
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder faultCount = new LongAdder();
+
+    /**
+     * @param contexts  the number of contexts of every user
+     * @param faultRate the share of requests answered with a UserFault, between 0 and 1
+     */
+    public SimulatedUSM(int contexts, double faultRate) throws JAXBException {
+        this.faultRate = faultRate;
+        this.userContextTemplate = SyntheticUsers.userContextResponse(USERNAME_PLACEHOLDER, contexts);
+        this.fault = SyntheticUsers.userFault("Simulated USM fault");
+    }
+
+    /**
+     * @return the response USM would send to the request
+     */
+    public String respond(String request) throws JAXBException {
+        requestCount.increment();
+        if (faultRate > 0 && ThreadLocalRandom.current().nextDouble() < faultRate) {
+            faultCount.increment();
+            return fault;
+        }
+        String requestType = UserFaults.peekRootElement(request);
+        if (GET_USER_CONTEXT.equals(requestType)) {
+            GetUserContextRequest userContextRequest = JAXBContextRegistry.unmarshal(request, GetUserContextRequest.class);
+            return userContextTemplate.replace(USERNAME_PLACEHOLDER, userContextRequest.getContextId().getUserName());
+        }
+        if (GET_DEPLOYMENT_DESCRIPTOR.equals(requestType)) {
+            GetDeploymentDescriptorRequest descriptorRequest = JAXBContextRegistry.unmarshal(request, GetDeploymentDescriptorRequest.class);
+            GetDeploymentDescriptorResponse response = new GetDeploymentDescriptorResponse();
+            response.setApplication(application(descriptorRequest.getApplicationName()));
+            return JAXBContextRegistry.marshal(response);
+        }
+        // the other requests are told apart by their name, as their types are only known to the request mapper
+        String name = requestType == null ? "" : requestType.toLowerCase(Locale.ROOT);
+        if (name.contains("preference")) {
+            PutPreferenceResponse response = new PutPreferenceResponse();
+            response.setResponse(OK);
+            return JAXBContextRegistry.marshal(response);
+        }
+        if (name.contains("dataset")) {
+            if (name.startsWith("create")) {
+                CreateDatasetResponse response = new CreateDatasetResponse();
+                response.setResponse(OK);
+                return JAXBContextRegistry.marshal(response);
+            }
+            if (name.startsWith("delete")) {
+                DeleteDatasetResponse response = new DeleteDatasetResponse();
+                response.setResponse(OK);
+                return JAXBContextRegistry.marshal(response);
+            }
+            FilterDatasetResponse response = new FilterDatasetResponse();
+            response.setDatasetList(datasets(elementText(request, "applicationName"), elementText(request, "discriminator")));
+            return JAXBContextRegistry.marshal(response);
+        }
+        faultCount.increment();
+        return SyntheticUsers.userFault("Unsupported request " + requestType);
+    }
+
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of requests answered with a UserFault
+     */
+    public long getFaultCount() {
+        return faultCount.sum();
+    }
+
+    private static Application application(String applicationName) {
+        Application application = new Application();
+        application.setName(applicationName);
+        for (UnionVMSFeature unionVMSFeature : UnionVMSFeature.values()) {
+            Feature feature = new Feature();
+            feature.setName(unionVMSFeature.name());
+            application.getFeature().add(feature);
+        }
+        return application;
+    }
+
+    private static DatasetList datasets(String applicationName, String discriminator) {
+        DatasetList datasets = new DatasetList();
+        for (int i = 0; i < DATASETS_PER_DISCRIMINATOR; i++) {
+            DatasetExtension dataset = new DatasetExtension();
+            dataset.setApplicationName(applicationName);
+            dataset.setDiscriminator(discriminator);
+            dataset.setName(discriminator + "-" + i);
+            dataset.setCategory("category-" + i % 3);
+            datasets.getList().add(dataset);
+        }
+        return datasets;
+    }
+
+    /**
+     * @return the text of the first element of the request with the given local name, or null if there is none
+     */
+    private static String elementText(String request, String localName) throws JAXBException {
+        try {
+            XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(request));
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT && localName.equals(reader.getLocalName())) {
+                        return reader.getElementText();
+                    }
+                }
+                return null;
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new JAXBException(e);
+        }
+    }
+
+    private static String rootElementName(Class<?> type) {
+        XmlRootElement rootElement = type.getAnnotation(XmlRootElement.class);
+        if (rootElement != null && !"##default".equals(rootElement.name())) {
+            return rootElement.name();
+        }
+        String name = type.getSimpleName();
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.JAXBException;
+import fish.focus.uvms.rest.security.UnionVMSFeature;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.wsdl.user.module.GetUserContextResponse;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.ContextSet;
+import fish.focus.wsdl.user.types.Dataset;
+import fish.focus.wsdl.user.types.Feature;
+import fish.focus.wsdl.user.types.Preference;
+import fish.focus.wsdl.user.types.Preferences;
+import fish.focus.wsdl.user.types.Role;
+import fish.focus.wsdl.user.types.Scope;
+import fish.focus.wsdl.user.types.UserContext;
+import fish.focus.wsdl.user.types.UserFault;
+
+/**
+ * Builds the users and USM replies the benchmarks work on. Every context has its own role and scope, the role grants
+ * {@link #FEATURES_PER_ROLE} features and the scope holds {@link #DATASETS_PER_SCOPE} datasets, which is about what
+ * the UnionVMS roles look like in production.
+ */
+public final class SyntheticUsers {
+
+    public static final String USERNAME = "bench_user";
+    public static final String APPLICATION_NAME = "Union-VMS";
+
+    public static final int FEATURES_PER_ROLE = 15;
+    public static final int DATASETS_PER_SCOPE = 10;
+    public static final int PREFERENCES_PER_CONTEXT = 5;
+
+    private SyntheticUsers() {
+    }
+
+    /**
+     * @return a user with the given number of contexts, named after their position
+     */
+    public static UserContext userContext(int contexts) {
+        return userContext(USERNAME, contexts);
+    }
+
+    public static UserContext userContext(String username, int contexts) {
+        UserContext userContext = new UserContext();
+        userContext.setUserName(username);
+        userContext.setApplicationName(APPLICATION_NAME);
+        ContextSet contextSet = new ContextSet();
+        for (int i = 0; i < contexts; i++) {
+            contextSet.getContexts().add(context(i));
+        }
+        userContext.setContextSet(contextSet);
+        return userContext;
+    }
+
+    public static Context context(int position) {
+        Role role = new Role();
+        role.setRoleName(roleName(position));
+        UnionVMSFeature[] features = UnionVMSFeature.values();
+        for (int i = 0; i < FEATURES_PER_ROLE; i++) {
+            Feature feature = new Feature();
+            feature.setName(features[(position + i) % features.length].name());
+            feature.setGroup("group-" + i % 4);
+            role.getFeature().add(feature);
+        }
+
+        Scope scope = new Scope();
+        scope.setScopeName(scopeName(position));
+        for (int i = 0; i < DATASETS_PER_SCOPE; i++) {
+            Dataset dataset = new Dataset();
+            dataset.setName("dataset-" + position + "-" + i);
+            dataset.setCategory("category-" + i % 3);
+            dataset.setDiscriminator("discriminator-" + i);
+            scope.getDataset().add(dataset);
+        }
+
+        Preferences preferences = new Preferences();
+        List<Preference> preferenceList = preferences.getPreference();
+        for (int i = 0; i < PREFERENCES_PER_CONTEXT; i++) {
+            Preference preference = new Preference();
+            preference.setApplicationName(APPLICATION_NAME);
+            preference.setOptionName("option-" + i);
+            preference.setOptionValue("{\"value\":" + i + "}");
+            preferenceList.add(preference);
+        }
+
+        Context context = new Context();
+        context.setRole(role);
+        context.setScope(scope);
+        context.setPreferences(preferences);
+        return context;
+    }
+
+    public static String roleName(int position) {
+        return "role-" + position;
+    }
+
+    public static String scopeName(int position) {
+        return "scope-" + position;
+    }
+
+    /**
+     * @return the feature granted by the role of every context
+     */
+    public static UnionVMSFeature grantedFeature(int position) {
+        UnionVMSFeature[] features = UnionVMSFeature.values();
+        return features[position % features.length];
+    }
+
+    /**
+     * @return a feature the role of the context does not grant
+     */
+    public static UnionVMSFeature deniedFeature(int position) {
+        UnionVMSFeature[] features = UnionVMSFeature.values();
+        return features[(position + FEATURES_PER_ROLE) % features.length];
+    }
+
+    /**
+     * @return the GetUserContextResponse USM sends for a user with the given number of contexts
+     */
+    public static String userContextResponse(int contexts) throws JAXBException {
+        return userContextResponse(USERNAME, contexts);
+    }
+
+    public static String userContextResponse(String username, int contexts) throws JAXBException {
+        GetUserContextResponse response = new GetUserContextResponse();
+        response.setContext(userContext(username, contexts));
+        return JAXBContextRegistry.marshal(response);
+    }
+
+    /**
+     * @return a token of the user that does not expire during a run. It is shaped like a JWT, but its signature is
+     * not checked by the benchmarks.
+     */
+    public static String token(String username) {
+        long expiry = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TimeUnit.DAYS.toSeconds(1);
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString("{\"alg\":\"HS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+                + encoder.encodeToString(("{\"userName\":\"" + username + "\",\"exp\":" + expiry + "}").getBytes(StandardCharsets.UTF_8))
+                + ".signature";
+    }
+
+    public static String userFault(String message) throws JAXBException {
+        UserFault fault = new UserFault();
+        fault.setCode(500);
+        fault.setFault(message);
+        return JAXBContextRegistry.marshal(fault);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.benchmark;
+
+import java.lang.reflect.Field;
+
+/**
+ * Sets the injected fields of the library beans, which the benchmarks create without a container.
+ */
+public final class Wiring {
+
+    private Wiring() {
+    }
+
+    /**
+     * Sets a field declared by the class of the target or one of its superclasses.
+     *
+     * @return the target
+     */
+    public static <T> T inject(T target, String fieldName, Object value) {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                field.set(target, value);
+                return target;
+            } catch (NoSuchFieldException e) {
+                // declared further up
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException("Unable to set " + fieldName + " of " + target.getClass().getName(), e);
+            }
+        }
+        throw new IllegalArgumentException(target.getClass().getName() + " has no field " + fieldName);
+    }
+
+    /**
+     * Sets every field of the given type declared by the class of the target or its superclasses, for the fields of
+     * classes outside this project whose names are not part of their API.
+     *
+     * @return the target
+     */
+    public static <T> T injectByType(T target, Class<?> fieldType, Object value) {
+        boolean injected = false;
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (field.getType() == fieldType) {
+                    field.setAccessible(true);
+                    try {
+                        field.set(target, value);
+                    } catch (IllegalAccessException e) {
+                        throw new IllegalStateException("Unable to set " + field.getName() + " of " + target.getClass().getName(), e);
+                    }
+                    injected = true;
+                }
+            }
+        }
+        if (!injected) {
+            throw new IllegalArgumentException(target.getClass().getName() + " has no field of type " + fieldType.getName());
+        }
+        return target;
+    }
+}
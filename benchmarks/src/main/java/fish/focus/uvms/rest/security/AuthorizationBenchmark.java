@@ -0,0 +1,161 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import fish.focus.uvms.benchmark.SyntheticUsers;
+import fish.focus.uvms.cache.JwtClaimsCache;
+import fish.focus.uvms.cache.VerifiedClaims;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Feature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The feature checks made on every request: {@link UserRoleRequestWrapper#isUserInRole(String)} for the servlet
+ * filters, and the {@link RequiresFeature} resolution and JWT claim matching of {@link UnionVMSFeatureFilter}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AuthorizationBenchmark {
+
+    private static final String TOKEN = SyntheticUsers.token(SyntheticUsers.USERNAME);
+
+    private UserRoleRequestWrapper authorizedRequest;
+    private UserRoleRequestWrapper roleSetRequest;
+    private AuthorizationSnapshot authorization;
+    private JwtClaimsCache claimsCache;
+    private VerifiedClaims claims;
+    private List<Integer> featureIds;
+    private String grantedFeature;
+    private String deniedFeature;
+    private Method methodFeature;
+    private Method classFeature;
+    private Method noFeature;
+
+    @Setup
+    public void setUp() throws Exception {
+        Context context = SyntheticUsers.context(0);
+        authorization = AuthorizationSnapshot.of(SyntheticUsers.USERNAME, context);
+        grantedFeature = SyntheticUsers.grantedFeature(0).name();
+        deniedFeature = SyntheticUsers.deniedFeature(0).name();
+
+        authorizedRequest = new UserRoleRequestWrapper(request(), SyntheticUsers.USERNAME);
+        authorizedRequest.setAuthorization(authorization);
+        roleSetRequest = new UserRoleRequestWrapper(SyntheticUsers.USERNAME, authorization.getFeatureNames(), request());
+
+        featureIds = new ArrayList<>();
+        for (Feature feature : context.getRole().getFeature()) {
+            featureIds.add(UnionVMSFeature.valueOf(feature.getName()).getFeatureId());
+        }
+        claimsCache = new JwtClaimsCache();
+        claims = claimsCache.getClaims(TOKEN, token -> SyntheticUsers.USERNAME, token -> featureIds);
+
+        methodFeature = FeatureResource.class.getMethod("methodFeature");
+        classFeature = FeatureResource.class.getMethod("classFeature");
+        noFeature = OpenResource.class.getMethod("noFeature");
+    }
+
+    @Benchmark
+    public boolean isUserInRole() {
+        return authorizedRequest.isUserInRole(grantedFeature);
+    }
+
+    @Benchmark
+    public boolean isUserInRoleDenied() {
+        return authorizedRequest.isUserInRole(deniedFeature);
+    }
+
+    @Benchmark
+    public boolean isUserInRoleFromRoleSet() {
+        return roleSetRequest.isUserInRole(grantedFeature);
+    }
+
+    @Benchmark
+    public UnionVMSFeature requiredFeatureOfMethod() {
+        return UnionVMSFeatureFilter.getRequiredFeature(FeatureResource.class, methodFeature);
+    }
+
+    @Benchmark
+    public UnionVMSFeature requiredFeatureOfClass() {
+        return UnionVMSFeatureFilter.getRequiredFeature(FeatureResource.class, classFeature);
+    }
+
+    @Benchmark
+    public UnionVMSFeature requiredFeatureOfOpenResource() {
+        return UnionVMSFeatureFilter.getRequiredFeature(OpenResource.class, noFeature);
+    }
+
+    @Benchmark
+    public boolean claimsHaveFeature() {
+        return claims.hasFeature(SyntheticUsers.grantedFeature(0).getFeatureId());
+    }
+
+    @Benchmark
+    public boolean snapshotHasFeature() {
+        return authorization.hasFeature(SyntheticUsers.grantedFeature(0));
+    }
+
+    /**
+     * What UnionVMSFeatureFilter does once the token is known: resolve the required feature, get the cached claims
+     * of the token and match them.
+     */
+    @Benchmark
+    public boolean authorizeResourceMethod() {
+        UnionVMSFeature feature = UnionVMSFeatureFilter.getRequiredFeature(FeatureResource.class, methodFeature);
+        VerifiedClaims tokenClaims = claimsCache.getClaims(TOKEN, token -> SyntheticUsers.USERNAME, token -> featureIds);
+        return tokenClaims != null && tokenClaims.hasFeature(feature.getFeatureId());
+    }
+
+    private static HttpServletRequest request() {
+        // only the attributes are written, nothing is read from the wrapped request
+        return (HttpServletRequest) Proxy.newProxyInstance(AuthorizationBenchmark.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> null);
+    }
+
+    @RequiresFeature(UnionVMSFeature.viewVesselsAndMobileTerminals)
+    public static class FeatureResource {
+
+        @RequiresFeature(UnionVMSFeature.manageVessels)
+        public String methodFeature() {
+            return "methodFeature";
+        }
+
+        public String classFeature() {
+            return "classFeature";
+        }
+    }
+
+    public static class OpenResource {
+
+        public String noFeature() {
+            return "noFeature";
+        }
+    }
+}
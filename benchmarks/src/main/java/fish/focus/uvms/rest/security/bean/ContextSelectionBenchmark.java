@@ -0,0 +1,93 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import fish.focus.uvms.benchmark.SyntheticUsers;
+import fish.focus.uvms.cache.CachedUserContext;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.UserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Picking the context of the request out of a cached user context, by scanning the contexts with isContextMatch or
+ * through the role and scope index of the cache entry, and reading the features it grants.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContextSelectionBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int contexts;
+
+    private final USMServiceBean service = new USMServiceBean();
+
+    private UserContext userContext;
+    private CachedUserContext cached;
+    private Context context;
+    private String roleName;
+    private String scopeName;
+
+    @Setup
+    public void setUp() throws Exception {
+        userContext = SyntheticUsers.userContext(contexts);
+        UserContextCache cache = new UserContextCache();
+        cache.put(SyntheticUsers.USERNAME, SyntheticUsers.APPLICATION_NAME, userContext);
+        cached = cache.getEntry(SyntheticUsers.USERNAME, SyntheticUsers.APPLICATION_NAME);
+        // the last context, so the scan goes through all of them
+        roleName = SyntheticUsers.roleName(contexts - 1).toUpperCase();
+        scopeName = SyntheticUsers.scopeName(contexts - 1);
+        context = USMServiceSupport.findContext(userContext, roleName, scopeName);
+    }
+
+    @Benchmark
+    public Context findContextByScan() throws Exception {
+        return USMServiceSupport.findContext(userContext, roleName, scopeName);
+    }
+
+    @Benchmark
+    public Context findContextByIndex() throws Exception {
+        return USMServiceSupport.findContext(cached, userContext, roleName, scopeName);
+    }
+
+    @Benchmark
+    public Set<String> getUserFeatures() throws Exception {
+        return service.getUserFeatures(SyntheticUsers.USERNAME, context);
+    }
+
+    @Benchmark
+    public Set<String> getCachedFeatureNames() {
+        return cached.getAuthorization(context).getFeatureNames();
+    }
+
+    @Benchmark
+    public AuthorizationSnapshot buildAuthorizationSnapshot() {
+        return AuthorizationSnapshot.of(SyntheticUsers.USERNAME, context);
+    }
+}
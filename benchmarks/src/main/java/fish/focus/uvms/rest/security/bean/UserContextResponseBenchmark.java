@@ -0,0 +1,86 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.concurrent.TimeUnit;
+import fish.focus.uvms.benchmark.SyntheticUsers;
+import fish.focus.uvms.utils.UserFaults;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.UserContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading the GetUserContextResponse of USM: the UserFault check every reply goes through, the unmarshalling of the
+ * whole user context and the streaming lookup of the one context of the request. The context looked up is the last
+ * one of the user, the worst case of the lookup, and a role the user does not have is read through every context.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserContextResponseBenchmark {
+
+    private static final String MESSAGE_ID = "ID:benchmark";
+
+    @Param({"1", "10", "100"})
+    public int contexts;
+
+    private String response;
+    private String fault;
+    private String roleName;
+    private String scopeName;
+
+    @Setup
+    public void setUp() throws Exception {
+        response = SyntheticUsers.userContextResponse(contexts);
+        fault = SyntheticUsers.userFault("User bench_user does not exist");
+        roleName = SyntheticUsers.roleName(contexts - 1);
+        scopeName = SyntheticUsers.scopeName(contexts - 1);
+    }
+
+    @Benchmark
+    public boolean isUserFault() {
+        return UserFaults.isUserFault(response);
+    }
+
+    @Benchmark
+    public boolean isUserFaultOfFault() {
+        return UserFaults.isUserFault(fault);
+    }
+
+    @Benchmark
+    public UserContext unmarshalUserContext() throws Exception {
+        return USMServiceSupport.toUserContext(response, MESSAGE_ID);
+    }
+
+    @Benchmark
+    public Context selectUnknownContext() throws Exception {
+        return USMServiceSupport.selectContext(response, "unknown_role", scopeName);
+    }
+
+    @Benchmark
+    public Context readContext() throws Exception {
+        return USMServiceSupport.toContext(response, MESSAGE_ID, roleName, scopeName);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.Option;
+
+/**
+ * An application descriptor as cached by {@link ApplicationDescriptorCache}, together with the default values of
+ * its options indexed by (case insensitive) option name.
+ */
+public class ApplicationDescriptor {
+
+    private final Application application;
+    private final Map<String, String> optionDefaultValues;
+
+    public ApplicationDescriptor(Application application) {
+        this.application = application;
+        Map<String, String> defaults = new HashMap<>();
+        for (Option option : application.getOption()) {
+            if (option.getName() != null) {
+                // the first option wins, as it did when the list was scanned
+                defaults.putIfAbsent(CaseFolding.fold(option.getName()), option.getDefaultValue());
+            }
+        }
+        this.optionDefaultValues = Collections.unmodifiableMap(defaults);
+    }
+
+    public Application getApplication() {
+        return application;
+    }
+
+    /**
+     * @return the default value of the option, or null if the application has no such option
+     */
+    public String getOptionDefaultValue(String optionName) {
+        return optionName == null ? null : optionDefaultValues.get(CaseFolding.fold(optionName));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import javax.enterprise.context.ApplicationScoped;
+import javax.xml.bind.JAXBException;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.wsdl.user.types.Application;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application wide cache of the application descriptors deployed in USM, keyed by application name ignoring case.
+ * <p>Size and time to live can be tuned with the {@link AuthConstants#CACHE_APP_MODULE_MAX_SIZE_PROPERTY} and
+ * {@link AuthConstants#CACHE_APP_MODULE_TTL_PROPERTY} system properties.
+ */
+@ApplicationScoped
+public class ApplicationDescriptorCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApplicationDescriptorCache.class);
+
+    private final TtlCache<String, ApplicationDescriptor> cache = new TtlCache<>(AuthConstants.CACHE_NAME_APP_MODULE,
+            Integer.getInteger(AuthConstants.CACHE_APP_MODULE_MAX_SIZE_PROPERTY, AuthConstants.CACHE_APP_MODULE_DEFAULT_MAX_SIZE),
+            Long.getLong(AuthConstants.CACHE_APP_MODULE_TTL_PROPERTY, AuthConstants.CACHE_APP_MODULE_DEFAULT_TTL));
+
+    private final SingleFlight<String, ApplicationDescriptor> loads = new SingleFlight<>();
+
+    public ApplicationDescriptor get(String applicationName) {
+        return cache.get(CaseFolding.fold(applicationName));
+    }
+
+    /**
+     * Gets the descriptor from the cache, or loads and caches it. Concurrent loads of the same application share one
+     * call to the loader. The loaded descriptor is cached under the requested name, whatever the case of the name USM
+     * returns.
+     *
+     * @return the descriptor, or null if the loader found no application
+     */
+    public ApplicationDescriptor get(String applicationName, SingleFlight.Loader<Application> loader) throws ServiceException {
+        String key = CaseFolding.fold(applicationName);
+        ApplicationDescriptor descriptor = cache.get(key);
+        if (descriptor == null) {
+            descriptor = loads.execute(key, () -> put(key, loader.load()));
+        }
+        return descriptor;
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(String, SingleFlight.Loader)}.
+     */
+    public CompletableFuture<ApplicationDescriptor> getAsync(String applicationName, Supplier<CompletableFuture<Application>> loader) {
+        String key = CaseFolding.fold(applicationName);
+        ApplicationDescriptor descriptor = cache.get(key);
+        if (descriptor != null) {
+            return CompletableFuture.completedFuture(descriptor);
+        }
+        return loads.executeAsync(key, () -> loader.get().thenApply(loaded -> put(key, loaded)));
+    }
+
+    /**
+     * Caches (or refreshes) the descriptor of an application deployed by the caller. The cache keeps its own copy,
+     * so that later changes of the caller to the given instance are not seen by the readers of the cache. When the
+     * copy cannot be made the application is evicted instead.
+     *
+     * @return the cached descriptor, or null if the application is null or could not be copied
+     */
+    public ApplicationDescriptor put(Application application) {
+        if (application == null || application.getName() == null) {
+            return null;
+        }
+        String key = CaseFolding.fold(application.getName());
+        try {
+            return put(key, JAXBContextRegistry.copy(application, Application.class));
+        } catch (JAXBException e) {
+            LOG.warn("Unable to copy the descriptor of application {}, it will be fetched from USM again.", application.getName(), e);
+            cache.invalidate(key);
+            return null;
+        }
+    }
+
+    private ApplicationDescriptor put(String key, Application application) {
+        if (application == null) {
+            return null;
+        }
+        ApplicationDescriptor descriptor = new ApplicationDescriptor(application);
+        cache.put(key, descriptor);
+        return descriptor;
+    }
+
+    public void evict(String applicationName) {
+        cache.invalidate(CaseFolding.fold(applicationName));
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public TtlCache<?, ?> getCache() {
+        return cache;
+    }
+}
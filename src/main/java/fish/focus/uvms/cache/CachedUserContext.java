@@ -0,0 +1,113 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.UserContext;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A user context as held by {@link UserContextCache}, together with what is derived from it once when it is fetched.
+ * Instances are never modified after construction.
+ */
+public final class CachedUserContext {
+
+    private final UserContext userContext;
+    private final long loadedAt;
+    private final Map<Context, AuthorizationSnapshot> authorizations;
+    private final Map<Context, ContextDescriptor> descriptors;
+    private final Map<String, RoleContexts> contextsByRole;
+
+    CachedUserContext(String username, UserContext userContext) {
+        this(username, userContext, System.currentTimeMillis());
+    }
+
+    CachedUserContext(String username, UserContext userContext, long loadedAt) {
+        this.userContext = userContext;
+        this.loadedAt = loadedAt;
+        // the generated types do not override equals, the contexts are looked up by identity
+        this.authorizations = new IdentityHashMap<>();
+        this.descriptors = new IdentityHashMap<>();
+        this.contextsByRole = new HashMap<>();
+        if (userContext.getContextSet() != null) {
+            for (Context context : userContext.getContextSet().getContexts()) {
+                authorizations.put(context, AuthorizationSnapshot.of(username, context));
+                descriptors.put(context, new ContextDescriptor(context));
+                index(context);
+            }
+        }
+    }
+
+    private void index(Context context) {
+        if (context.getRole() == null || context.getRole().getRoleName() == null) {
+            return;
+        }
+        RoleContexts roleContexts = contextsByRole.computeIfAbsent(CaseFolding.fold(context.getRole().getRoleName()), role -> new RoleContexts());
+        if (roleContexts.first == null) {
+            roleContexts.first = context;
+        }
+        // a context without a scope can only be selected by a request without a scope, through the first context
+        if (context.getScope() != null && context.getScope().getScopeName() != null) {
+            roleContexts.byScope.putIfAbsent(CaseFolding.fold(context.getScope().getScopeName()), context);
+        }
+    }
+
+    public UserContext getUserContext() {
+        return userContext;
+    }
+
+    /**
+     * @return when the context was fetched from USM, in milliseconds since the epoch
+     */
+    public long getLoadedAt() {
+        return loadedAt;
+    }
+
+    /**
+     * Finds the context of a role and scope, ignoring case, as the first matching context of the context set would be.
+     *
+     * @param scopeName the scope, or blank to take the first context of the role whatever its scope
+     * @return the context, or null if the user has no such context
+     */
+    public Context findContext(String roleName, String scopeName) {
+        RoleContexts roleContexts = roleName == null ? null : contextsByRole.get(CaseFolding.fold(roleName));
+        if (roleContexts == null) {
+            return null;
+        }
+        return StringUtils.isBlank(scopeName) ? roleContexts.first : roleContexts.byScope.get(CaseFolding.fold(scopeName));
+    }
+
+    /**
+     * @return the authorization snapshot of one of the contexts of this user context, or null if it is not one of them
+     */
+    public AuthorizationSnapshot getAuthorization(Context context) {
+        return authorizations.get(context);
+    }
+
+    /**
+     * @return the preference and dataset indexes of one of the contexts of this user context, or null if it is not one
+     * of them
+     */
+    public ContextDescriptor getDescriptor(Context context) {
+        return descriptors.get(context);
+    }
+
+    private static final class RoleContexts {
+        private Context first;
+        private final Map<String, Context> byScope = new HashMap<>();
+    }
+}
@@ -0,0 +1,99 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Dataset;
+import fish.focus.wsdl.user.types.Preference;
+
+/**
+ * A user context together with its preferences indexed by option name and its datasets indexed by (case insensitive)
+ * category and by name. Built once per context of a {@link CachedUserContext}; instances are never modified.
+ */
+public class ContextDescriptor {
+
+    private final Context context;
+    private final Map<String, String> preferences;
+    private final Map<String, List<Dataset>> datasetsByCategory;
+    private final Map<String, Map<String, Dataset>> datasetsByCategoryAndName;
+
+    public ContextDescriptor(Context context) {
+        this.context = context;
+        Map<String, String> values = new HashMap<>();
+        if (context.getPreferences() != null) {
+            for (Preference preference : context.getPreferences().getPreference()) {
+                if (preference.getOptionName() != null) {
+                    // the first preference wins, as it did when the list was scanned
+                    values.putIfAbsent(preference.getOptionName(), preference.getOptionValue());
+                }
+            }
+        }
+        this.preferences = Collections.unmodifiableMap(values);
+
+        Map<String, List<Dataset>> byCategory = new HashMap<>();
+        Map<String, Map<String, Dataset>> byCategoryAndName = new HashMap<>();
+        if (context.getScope() != null) {
+            for (Dataset dataset : context.getScope().getDataset()) {
+                if (dataset.getCategory() != null) {
+                    String category = CaseFolding.fold(dataset.getCategory());
+                    byCategory.computeIfAbsent(category, c -> new ArrayList<>()).add(dataset);
+                    if (dataset.getName() != null) {
+                        byCategoryAndName.computeIfAbsent(category, c -> new HashMap<>()).putIfAbsent(dataset.getName(), dataset);
+                    }
+                }
+            }
+        }
+        byCategory.replaceAll((category, datasets) -> Collections.unmodifiableList(datasets));
+        this.datasetsByCategory = byCategory;
+        this.datasetsByCategoryAndName = byCategoryAndName;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return the value of the preference, or null if the user has not set it in this context
+     */
+    public String getPreference(String optionName) {
+        return optionName == null ? null : preferences.get(optionName);
+    }
+
+    /**
+     * @return the value of every preference the user has set in this context, by option name, unmodifiable
+     */
+    public Map<String, String> getPreferences() {
+        return preferences;
+    }
+
+    /**
+     * @return the datasets of the category, ignoring case, unmodifiable
+     */
+    public List<Dataset> getDatasets(String category) {
+        List<Dataset> datasets = category == null ? null : datasetsByCategory.get(CaseFolding.fold(category));
+        return datasets == null ? Collections.<Dataset>emptyList() : datasets;
+    }
+
+    /**
+     * @return the dataset of the category (ignoring case) with the given name, or null
+     */
+    public Dataset getDataset(String category, String datasetName) {
+        Map<String, Dataset> datasets = category == null ? null : datasetsByCategoryAndName.get(CaseFolding.fold(category));
+        return datasets == null || datasetName == null ? null : datasets.get(datasetName);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import javax.enterprise.context.ApplicationScoped;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.wsdl.user.types.DatasetExtension;
+
+/**
+ * Application wide cache of the datasets found by discriminator, keyed by application name and discriminator.
+ * <p>The datasets of an application are evicted when a dataset of that application is created or deleted through
+ * this node; changes made elsewhere are seen once the entries expire. Size and time to live can be tuned with the
+ * {@link AuthConstants#CACHE_DATASETS_MAX_SIZE_PROPERTY} and {@link AuthConstants#CACHE_DATASETS_TTL_PROPERTY}
+ * system properties, hit and miss counts are available through {@link #getCache()}.
+ */
+@ApplicationScoped
+public class DatasetCache {
+
+    private final TtlCache<Key, List<DatasetExtension>> cache = new TtlCache<>(AuthConstants.CACHE_NAME_DATASETS,
+            Integer.getInteger(AuthConstants.CACHE_DATASETS_MAX_SIZE_PROPERTY, AuthConstants.CACHE_DATASETS_DEFAULT_MAX_SIZE),
+            Long.getLong(AuthConstants.CACHE_DATASETS_TTL_PROPERTY, AuthConstants.CACHE_DATASETS_DEFAULT_TTL));
+
+    private final SingleFlight<Key, List<DatasetExtension>> loads = new SingleFlight<>();
+
+    // bumped on every eviction, so that a load started before a write does not cache what it read
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * @return the cached datasets, or null if they are not cached
+     */
+    public List<DatasetExtension> get(String applicationName, String discriminator) {
+        return cache.get(new Key(applicationName, discriminator));
+    }
+
+    /**
+     * Gets the datasets from the cache, or loads and caches them. Concurrent loads of the same key share one call to
+     * the loader.
+     *
+     * @return the datasets, shared and unmodifiable, or null if USM did not answer with datasets
+     */
+    public List<DatasetExtension> get(String applicationName, String discriminator, SingleFlight.Loader<List<DatasetExtension>> loader) throws ServiceException {
+        Key key = new Key(applicationName, discriminator);
+        List<DatasetExtension> datasets = cache.get(key);
+        if (datasets != null) {
+            return datasets;
+        }
+        long loadGeneration = generation.get();
+        return loads.execute(key, () -> put(key, loader.load(), loadGeneration));
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(String, String, SingleFlight.Loader)}.
+     */
+    public CompletableFuture<List<DatasetExtension>> getAsync(String applicationName, String discriminator, Supplier<CompletableFuture<List<DatasetExtension>>> loader) {
+        Key key = new Key(applicationName, discriminator);
+        List<DatasetExtension> datasets = cache.get(key);
+        if (datasets != null) {
+            return CompletableFuture.completedFuture(datasets);
+        }
+        long loadGeneration = generation.get();
+        return loads.executeAsync(key, () -> loader.get().thenApply(loaded -> put(key, loaded, loadGeneration)));
+    }
+
+    /**
+     * Caches loaded datasets unless there was an eviction since the load started. Nothing is cached when the loader
+     * returned null, as USM did not answer with datasets, so that a transient fault is not taken for no datasets.
+     */
+    private List<DatasetExtension> put(Key key, List<DatasetExtension> loaded, long loadGeneration) {
+        if (loaded == null) {
+            return null;
+        }
+        List<DatasetExtension> datasets = Collections.unmodifiableList(loaded);
+        if (generation.get() == loadGeneration) {
+            cache.put(key, datasets);
+            // an eviction that ran between the check and the put did not see the datasets
+            if (generation.get() != loadGeneration) {
+                cache.invalidate(key);
+            }
+        }
+        return datasets;
+    }
+
+    /**
+     * Evicts the datasets of an application, whatever their discriminator.
+     */
+    public void evictApplication(String applicationName) {
+        generation.incrementAndGet();
+        cache.invalidateIf(key -> Objects.equals(key.applicationName, applicationName));
+    }
+
+    public void evictAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public TtlCache<?, ?> getCache() {
+        return cache;
+    }
+
+    private static final class Key {
+        private final String applicationName;
+        private final String discriminator;
+
+        private Key(String applicationName, String discriminator) {
+            this.applicationName = applicationName;
+            this.discriminator = discriminator;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(applicationName, other.applicationName) && Objects.equals(discriminator, other.discriminator);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(applicationName, discriminator);
+        }
+    }
+}
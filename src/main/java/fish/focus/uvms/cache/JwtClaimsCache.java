@@ -0,0 +1,134 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.enterprise.context.ApplicationScoped;
+import fish.focus.uvms.constants.AuthConstants;
+
+/**
+ * Application wide cache of the verified claims of JWT tokens, keyed by the SHA-256 digest of the token so that the
+ * tokens themselves are not kept in memory.
+ * <p>A token is verified once, by the parser given on a cache miss, and its claims are then reused until the token
+ * expires. Its features are read once too, by the first caller that needs them. Tokens without an <code>exp</code>
+ * claim are never cached. Size and time to live can be tuned with the
+ * {@link AuthConstants#CACHE_JWT_CLAIMS_MAX_SIZE_PROPERTY} and {@link AuthConstants#CACHE_JWT_CLAIMS_TTL_PROPERTY}
+ * system properties.
+ */
+@ApplicationScoped
+public class JwtClaimsCache {
+
+    private static final Pattern EXPIRY_CLAIM = Pattern.compile("\"exp\"\\s*:\\s*(\\d+)");
+
+    private final TtlCache<String, VerifiedClaims> cache;
+    private final LongSupplier clock;
+
+    public JwtClaimsCache() {
+        this(System::currentTimeMillis);
+    }
+
+    JwtClaimsCache(LongSupplier clock) {
+        this.cache = new TtlCache<>(AuthConstants.CACHE_NAME_JWT_CLAIMS,
+                Integer.getInteger(AuthConstants.CACHE_JWT_CLAIMS_MAX_SIZE_PROPERTY, AuthConstants.CACHE_JWT_CLAIMS_DEFAULT_MAX_SIZE),
+                Long.getLong(AuthConstants.CACHE_JWT_CLAIMS_TTL_PROPERTY, AuthConstants.CACHE_JWT_CLAIMS_DEFAULT_TTL), clock);
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the claims of a token, verifying it with the given parser if they are not cached. The features of the token
+     * are not read.
+     *
+     * @param usernameParser verifies the token and returns its user, or null if the token is not valid
+     * @return the claims, or null if there is no token or it is not valid
+     */
+    public VerifiedClaims getClaims(String token, Function<String, String> usernameParser) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        String key = digest(token);
+        VerifiedClaims claims = cache.get(key);
+        if (claims != null) {
+            return claims;
+        }
+        String username = usernameParser.apply(token);
+        if (username == null) {
+            return null;
+        }
+        long expiresAt = readExpiry(token);
+        claims = new VerifiedClaims(username, expiresAt);
+        if (expiresAt > clock.getAsLong()) {
+            cache.put(key, claims, expiresAt);
+        }
+        return claims;
+    }
+
+    /**
+     * Same as {@link #getClaims(String, Function)}, and reads the features of the token with the given parser the
+     * first time they are needed. Only the callers checking features pay for reading them.
+     *
+     * @param featuresParser returns the feature ids of a verified token
+     */
+    public VerifiedClaims getClaims(String token, Function<String, String> usernameParser, Function<String, List<Integer>> featuresParser) {
+        VerifiedClaims claims = getClaims(token, usernameParser);
+        if (claims != null && !claims.isFeaturesRead()) {
+            claims.setFeatureIds(featuresParser.apply(token));
+        }
+        return claims;
+    }
+
+    public void evictAll() {
+        cache.invalidateAll();
+    }
+
+    public TtlCache<?, ?> getCache() {
+        return cache;
+    }
+
+    /**
+     * Reads the <code>exp</code> claim of a token without verifying it, which is only safe once the token has been
+     * verified.
+     *
+     * @return the expiry in milliseconds since the epoch, or -1 if the token has none
+     */
+    static long readExpiry(String token) {
+        int payloadStart = token.indexOf('.');
+        int payloadEnd = payloadStart < 0 ? -1 : token.indexOf('.', payloadStart + 1);
+        if (payloadEnd < 0) {
+            return -1;
+        }
+        try {
+            byte[] payload = Base64.getUrlDecoder().decode(token.substring(payloadStart + 1, payloadEnd));
+            Matcher matcher = EXPIRY_CLAIM.matcher(new String(payload, StandardCharsets.UTF_8));
+            return matcher.find() ? Long.parseLong(matcher.group(1)) * 1000L : -1;
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    private static String digest(String token) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
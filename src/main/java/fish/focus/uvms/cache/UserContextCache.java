@@ -0,0 +1,412 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import javax.annotation.Resource;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.context.ApplicationScoped;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.UserContext;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Application wide cache of the USM user contexts, keyed by username and application name.
+ * <p>Size and time to live can be tuned with the {@link AuthConstants#CACHE_USER_SESSION_MAX_SIZE_PROPERTY} and
+ * {@link AuthConstants#CACHE_USER_SESSION_TTL_PROPERTY} system properties.
+ * <p>When {@link AuthConstants#CACHE_USER_SESSION_SOFT_TTL_PROPERTY} is set below the time to live, a context older
+ * than the soft TTL is still served, and one refresh per context is started in the background. Callers thereby do not
+ * wait for USM until a context reaches the time to live, which is then a hard limit.
+ * <p>The contexts read for one role and scope, without the rest of the user context, are kept apart with the same
+ * size and time to live, and are evicted with the user context.
+ */
+@ApplicationScoped
+public class UserContextCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserContextCache.class);
+
+    private final TtlCache<Key, CachedUserContext> cache;
+
+    private final TtlCache<ContextKey, Context> selectedContexts;
+
+    private final long softTtlMillis;
+
+    private final LongSupplier clock;
+
+    private final SingleFlight<Key, UserContext> loads = new SingleFlight<>();
+
+    private final SingleFlight<ContextKey, Context> contextLoads = new SingleFlight<>();
+
+    private final AtomicLong staleHitCount = new AtomicLong();
+
+    /**
+     * The loads in flight. An eviction marks those of the contexts it evicts, so that they do not cache what they
+     * loaded, while the loads of other users and applications are not affected.
+     */
+    private final Set<PendingLoad> pendingLoads = ConcurrentHashMap.newKeySet();
+
+    @Resource
+    private ManagedExecutorService executorService;
+
+    public UserContextCache() {
+        this(Integer.getInteger(AuthConstants.CACHE_USER_SESSION_MAX_SIZE_PROPERTY, AuthConstants.CACHE_USER_SESSION_DEFAULT_MAX_SIZE),
+                Long.getLong(AuthConstants.CACHE_USER_SESSION_TTL_PROPERTY, AuthConstants.CACHE_USER_SESSION_DEFAULT_TTL),
+                Long.getLong(AuthConstants.CACHE_USER_SESSION_SOFT_TTL_PROPERTY, -1L), System::currentTimeMillis);
+    }
+
+    UserContextCache(int maxSize, long ttlMillis, long softTtlMillis, LongSupplier clock) {
+        this.cache = new TtlCache<>(AuthConstants.CACHE_NAME_USER_SESSION, maxSize, ttlMillis, clock);
+        this.selectedContexts = new TtlCache<>(AuthConstants.CACHE_NAME_SELECTED_CONTEXT, maxSize, ttlMillis, clock);
+        // a soft TTL that is not below the TTL would never be reached
+        this.softTtlMillis = softTtlMillis >= 0 && softTtlMillis < ttlMillis ? softTtlMillis : -1L;
+        this.clock = clock;
+    }
+
+    public UserContext get(String username, String applicationName) {
+        CachedUserContext entry = cache.get(new Key(username, applicationName));
+        return entry == null ? null : entry.getUserContext();
+    }
+
+    /**
+     * @return the cached context with what is derived from it, or null if it is not cached
+     */
+    public CachedUserContext getEntry(String username, String applicationName) {
+        return cache.get(new Key(username, applicationName));
+    }
+
+    /**
+     * Same as {@link #getEntry(String, String)}, but refreshes the context in the background when it is past its
+     * soft TTL.
+     */
+    public CachedUserContext getEntry(String username, String applicationName, SingleFlight.Loader<UserContext> refresher) {
+        Key key = new Key(username, applicationName);
+        CachedUserContext entry = cache.get(key);
+        if (entry != null && isStale(entry)) {
+            refresh(key, username, refresher);
+        }
+        return entry;
+    }
+
+    /**
+     * Gets the context from the cache, or loads and caches it. Concurrent loads of the same context share one call
+     * to the loader. A context past its soft TTL is returned while the loader refreshes it on a managed thread.
+     */
+    public UserContext get(String username, String applicationName, SingleFlight.Loader<UserContext> loader) throws ServiceException {
+        Key key = new Key(username, applicationName);
+        CachedUserContext entry = cache.get(key);
+        if (entry != null) {
+            if (isStale(entry)) {
+                refresh(key, username, loader);
+            }
+            return entry.getUserContext();
+        }
+        return loads.execute(key, () -> load(key, username, loader));
+    }
+
+    /**
+     * Asynchronous variant of {@link #get(String, String, SingleFlight.Loader)}.
+     */
+    public CompletableFuture<UserContext> getAsync(String username, String applicationName, Supplier<CompletableFuture<UserContext>> loader) {
+        Key key = new Key(username, applicationName);
+        CachedUserContext entry = cache.get(key);
+        if (entry != null) {
+            if (isStale(entry)) {
+                staleHitCount.incrementAndGet();
+                if (!loads.isInFlight(key)) {
+                    loads.executeAsync(key, () -> loadAsync(key, username, loader)).whenComplete((loaded, error) -> logRefreshFailure(key, error));
+                }
+            }
+            return CompletableFuture.completedFuture(entry.getUserContext());
+        }
+        return loads.executeAsync(key, () -> loadAsync(key, username, loader));
+    }
+
+    /**
+     * @return the context read for the role and scope, or null if it is not cached
+     */
+    public Context getContext(String username, String applicationName, String roleName, String scopeName) {
+        return selectedContexts.get(new ContextKey(username, applicationName, roleName, scopeName));
+    }
+
+    /**
+     * Gets the context read for the role and scope from the cache, or loads and caches it. Concurrent loads of the
+     * same context share one call to the loader.
+     */
+    public Context getContext(String username, String applicationName, String roleName, String scopeName, SingleFlight.Loader<Context> loader) throws ServiceException {
+        ContextKey key = new ContextKey(username, applicationName, roleName, scopeName);
+        Context context = selectedContexts.get(key);
+        if (context != null) {
+            return context;
+        }
+        return contextLoads.execute(key, () -> {
+            PendingLoad load = startLoad(key.context);
+            try {
+                return putIfNotEvicted(selectedContexts, key, loader.load(), load);
+            } finally {
+                pendingLoads.remove(load);
+            }
+        });
+    }
+
+    /**
+     * Asynchronous variant of {@link #getContext(String, String, String, String, SingleFlight.Loader)}.
+     */
+    public CompletableFuture<Context> getContextAsync(String username, String applicationName, String roleName, String scopeName, Supplier<CompletableFuture<Context>> loader) {
+        ContextKey key = new ContextKey(username, applicationName, roleName, scopeName);
+        Context context = selectedContexts.get(key);
+        if (context != null) {
+            return CompletableFuture.completedFuture(context);
+        }
+        return contextLoads.executeAsync(key, () -> {
+            PendingLoad load = startLoad(key.context);
+            return loadAsync(load, loader).thenApply(loaded -> putIfNotEvicted(selectedContexts, key, loaded, load));
+        });
+    }
+
+    private boolean isStale(CachedUserContext entry) {
+        return softTtlMillis >= 0 && clock.getAsLong() - entry.getLoadedAt() >= softTtlMillis;
+    }
+
+    private void refresh(Key key, String username, SingleFlight.Loader<UserContext> loader) {
+        staleHitCount.incrementAndGet();
+        if (loads.isInFlight(key)) {
+            return;
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    loads.execute(key, () -> load(key, username, loader));
+                } catch (ServiceException | RuntimeException e) {
+                    logRefreshFailure(key, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Unable to schedule the refresh of the user context of {}, the stale context is served until it expires.", key, e);
+        }
+    }
+
+    private UserContext load(Key key, String username, SingleFlight.Loader<UserContext> loader) throws ServiceException {
+        PendingLoad load = startLoad(key);
+        try {
+            UserContext loaded = loader.load();
+            putIfNotEvicted(cache, key, wrap(username, loaded), load);
+            return loaded;
+        } finally {
+            pendingLoads.remove(load);
+        }
+    }
+
+    private CompletableFuture<UserContext> loadAsync(Key key, String username, Supplier<CompletableFuture<UserContext>> loader) {
+        PendingLoad load = startLoad(key);
+        return loadAsync(load, loader).thenApply(loaded -> {
+            putIfNotEvicted(cache, key, wrap(username, loaded), load);
+            return loaded;
+        });
+    }
+
+    private PendingLoad startLoad(Key key) {
+        PendingLoad load = new PendingLoad(key);
+        pendingLoads.add(load);
+        return load;
+    }
+
+    /**
+     * Runs an asynchronous load, which stops being pending once it has completed.
+     */
+    private <T> CompletableFuture<T> loadAsync(PendingLoad load, Supplier<CompletableFuture<T>> loader) {
+        CompletableFuture<T> loading;
+        try {
+            loading = loader.get();
+        } catch (RuntimeException e) {
+            pendingLoads.remove(load);
+            throw e;
+        }
+        return loading.whenComplete((loaded, error) -> pendingLoads.remove(load));
+    }
+
+    /**
+     * Caches a loaded value unless its context was evicted since the load started, as the value may then be outdated.
+     */
+    private <K, V> V putIfNotEvicted(TtlCache<K, V> target, K key, V loaded, PendingLoad load) {
+        if (!load.evicted) {
+            target.put(key, loaded);
+            // an eviction that ran between the check and the put did not see the value
+            if (load.evicted) {
+                target.invalidate(key);
+            }
+        }
+        return loaded;
+    }
+
+    private void evictLoads(Predicate<Key> evicted) {
+        for (PendingLoad load : pendingLoads) {
+            if (evicted.test(load.key)) {
+                load.evicted = true;
+            }
+        }
+    }
+
+    private static void logRefreshFailure(Key key, Throwable error) {
+        if (error != null) {
+            LOG.warn("Unable to refresh the user context of {}, the stale context is served until it expires.", key, error);
+        }
+    }
+
+    public void put(String username, String applicationName, UserContext userContext) {
+        cache.put(new Key(username, applicationName), wrap(username, userContext));
+    }
+
+    private CachedUserContext wrap(String username, UserContext userContext) {
+        return userContext == null ? null : new CachedUserContext(username, userContext, clock.getAsLong());
+    }
+
+    /**
+     * Evicts the context of one user in one application.
+     */
+    public void evict(String username, String applicationName) {
+        Key key = new Key(username, applicationName);
+        evictLoads(key::equals);
+        cache.invalidate(key);
+        selectedContexts.invalidateIf(contextKey -> contextKey.context.equals(key));
+    }
+
+    /**
+     * Evicts the contexts of a user in all applications.
+     */
+    public void evictUser(String username) {
+        evictLoads(key -> Objects.equals(key.username, username));
+        cache.invalidateIf(key -> Objects.equals(key.username, username));
+        selectedContexts.invalidateIf(key -> Objects.equals(key.context.username, username));
+    }
+
+    /**
+     * Evicts the contexts of all users of an application.
+     */
+    public void evictApplication(String applicationName) {
+        evictLoads(key -> Objects.equals(key.applicationName, applicationName));
+        cache.invalidateIf(key -> Objects.equals(key.applicationName, applicationName));
+        selectedContexts.invalidateIf(key -> Objects.equals(key.context.applicationName, applicationName));
+    }
+
+    public void evictAll() {
+        evictLoads(key -> true);
+        cache.invalidateAll();
+        selectedContexts.invalidateAll();
+    }
+
+    public TtlCache<?, ?> getCache() {
+        return cache;
+    }
+
+    public TtlCache<?, ?> getSelectedContextCache() {
+        return selectedContexts;
+    }
+
+    /**
+     * @return the number of lookups served with a context past its soft TTL
+     */
+    public long getStaleHitCount() {
+        return staleHitCount.get();
+    }
+
+    private static final class PendingLoad {
+        private final Key key;
+        private volatile boolean evicted;
+
+        private PendingLoad(Key key) {
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+        private final String username;
+        private final String applicationName;
+
+        private Key(String username, String applicationName) {
+            this.username = username;
+            this.applicationName = applicationName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(username, other.username) && Objects.equals(applicationName, other.applicationName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, applicationName);
+        }
+
+        @Override
+        public String toString() {
+            return username + "@" + applicationName;
+        }
+    }
+
+    /**
+     * Key of a context read for a role and scope. Roles and scopes are matched ignoring case, and a blank scope
+     * matches any context of the role.
+     */
+    private static final class ContextKey {
+        private final Key context;
+        private final String roleName;
+        private final String scopeName;
+
+        private ContextKey(String username, String applicationName, String roleName, String scopeName) {
+            this.context = new Key(username, applicationName);
+            this.roleName = roleName == null ? null : CaseFolding.fold(roleName);
+            this.scopeName = StringUtils.isBlank(scopeName) ? null : CaseFolding.fold(scopeName);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ContextKey)) {
+                return false;
+            }
+            ContextKey other = (ContextKey) o;
+            return context.equals(other.context) && Objects.equals(roleName, other.roleName) && Objects.equals(scopeName, other.scopeName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(context, roleName, scopeName);
+        }
+
+        @Override
+        public String toString() {
+            return roleName + "/" + scopeName + " of " + context;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The claims of a JWT token whose signature has been verified: the user, the expiry and the ids of the granted
+ * features. The features are only read when they are first needed, see
+ * {@link JwtClaimsCache#getClaims(String, java.util.function.Function, java.util.function.Function)}; once read,
+ * they do not change.
+ */
+public final class VerifiedClaims {
+
+    private final String username;
+    private final long expiresAt;
+    private volatile int[] featureIds;
+    private volatile boolean featuresRead;
+
+    VerifiedClaims(String username, long expiresAt) {
+        this.username = username;
+        this.expiresAt = expiresAt;
+    }
+
+    boolean isFeaturesRead() {
+        return featuresRead;
+    }
+
+    /**
+     * Sets the features read from the token. Concurrent readers of the same token read the same features, so the
+     * last one set wins.
+     */
+    void setFeatureIds(List<Integer> featureIds) {
+        if (featureIds == null) {
+            this.featureIds = null;
+        } else {
+            int[] ids = new int[featureIds.size()];
+            int count = 0;
+            for (Integer featureId : featureIds) {
+                if (featureId != null) {
+                    ids[count++] = featureId;
+                }
+            }
+            ids = Arrays.copyOf(ids, count);
+            Arrays.sort(ids);
+            this.featureIds = ids;
+        }
+        featuresRead = true;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the expiry of the token, in milliseconds since the epoch
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    /**
+     * @return true if the token expires before the given time, or if its expiry is not known
+     */
+    public boolean expiresBefore(long timeMillis) {
+        return expiresAt < 0 || expiresAt < timeMillis;
+    }
+
+    /**
+     * @return false if the token grants no feature claim at all, or its features have not been read
+     */
+    public boolean hasFeatures() {
+        return featureIds != null;
+    }
+
+    /**
+     * @return false if the token does not grant the feature, or its features have not been read
+     */
+    public boolean hasFeature(int featureId) {
+        int[] ids = featureIds;
+        return ids != null && Arrays.binarySearch(ids, featureId) >= 0;
+    }
+}
@@ -25,10 +25,45 @@ public interface AuthConstants {
 
     String JWTCALLBACK = "jwtcallback";
 
+    /**
+     * Request attribute holding the features of the user when they were given to the UserRoleRequestWrapper.
+     * It is no longer set on the ServletContext, use UserSecurityContext instead.
+     */
     String HTTP_SERVLET_CONTEXT_ATTR_FEATURES = "servletContextUserFeatures";
 
     String HTTP_SESSION_ATTR_ROLES_NAME = HTTP_SERVLET_CONTEXT_ATTR_FEATURES;
 
     String CACHE_NAME_USER_SESSION = "userSessionCache";
     String CACHE_NAME_APP_MODULE = "appModuleCache";
+    String CACHE_NAME_JWT_CLAIMS = "jwtClaimsCache";
+    String CACHE_NAME_DATASETS = "datasetCache";
+    String CACHE_NAME_SELECTED_CONTEXT = "selectedContextCache";
+
+    // system properties used to tune the caches, expressed in milliseconds and number of entries
+    String CACHE_USER_SESSION_TTL_PROPERTY = "usm4uvms.cache.userSession.ttl";
+    String CACHE_USER_SESSION_MAX_SIZE_PROPERTY = "usm4uvms.cache.userSession.maxSize";
+    long CACHE_USER_SESSION_DEFAULT_TTL = 60000L;
+    int CACHE_USER_SESSION_DEFAULT_MAX_SIZE = 1000;
+    // when set below the TTL, a user context older than this is served while it is refreshed in the background
+    String CACHE_USER_SESSION_SOFT_TTL_PROPERTY = "usm4uvms.cache.userSession.softTtl";
+    String CACHE_APP_MODULE_TTL_PROPERTY = "usm4uvms.cache.appModule.ttl";
+    String CACHE_APP_MODULE_MAX_SIZE_PROPERTY = "usm4uvms.cache.appModule.maxSize";
+    long CACHE_APP_MODULE_DEFAULT_TTL = 300000L;
+    int CACHE_APP_MODULE_DEFAULT_MAX_SIZE = 100;
+    // the claims of a token are never kept past the expiry of the token itself, whatever the TTL
+    String CACHE_JWT_CLAIMS_TTL_PROPERTY = "usm4uvms.cache.jwtClaims.ttl";
+    String CACHE_JWT_CLAIMS_MAX_SIZE_PROPERTY = "usm4uvms.cache.jwtClaims.maxSize";
+    long CACHE_JWT_CLAIMS_DEFAULT_TTL = 300000L;
+    int CACHE_JWT_CLAIMS_DEFAULT_MAX_SIZE = 10000;
+    String CACHE_DATASETS_TTL_PROPERTY = "usm4uvms.cache.datasets.ttl";
+    String CACHE_DATASETS_MAX_SIZE_PROPERTY = "usm4uvms.cache.datasets.maxSize";
+    long CACHE_DATASETS_DEFAULT_TTL = 60000L;
+    int CACHE_DATASETS_DEFAULT_MAX_SIZE = 1000;
+
+    // a JWT token is only extended by the AuthenticationFilter once it expires within this many milliseconds
+    long JWT_DEFAULT_REFRESH_THRESHOLD = 900000L;
+
+    // when true, a user context that is not cached is read by streaming the USM response for the requested role and scope,
+    // and only that context is cached, with the size and TTL of the user session cache
+    String USER_CONTEXT_STREAMING_PROPERTY = "usm4uvms.userContext.streaming";
 }
\ No newline at end of file
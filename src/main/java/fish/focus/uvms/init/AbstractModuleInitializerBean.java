@@ -15,6 +15,7 @@ import fish.focus.wsdl.user.module.DeployApplicationRequest;
 import fish.focus.wsdl.user.types.Application;
 import fish.focus.uvms.exception.ServiceException;
 import fish.focus.uvms.rest.security.bean.USMService;
+import fish.focus.uvms.utils.JAXBContextRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -23,7 +24,6 @@ import javax.ejb.EJB;
 import javax.ejb.Schedule;
 import javax.ejb.Timer;
 import javax.ejb.TimerService;
-import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import java.io.InputStream;
 import java.util.Iterator;
@@ -49,9 +49,7 @@ public abstract class AbstractModuleInitializerBean {
                 // do something on application startup
                 InputStream deploymentDescInStream = getDeploymentDescriptorRequest();
                 if (deploymentDescInStream != null) {
-                    JAXBContext jaxBcontext = JAXBContext.newInstance(DeployApplicationRequest.class);
-                    javax.xml.bind.Unmarshaller um = jaxBcontext.createUnmarshaller();
-                    DeployApplicationRequest applicationDefinition = (DeployApplicationRequest) um.unmarshal(deploymentDescInStream);
+                    DeployApplicationRequest applicationDefinition = JAXBContextRegistry.unmarshal(deploymentDescInStream, DeployApplicationRequest.class);
                     if (!isAppDeployed(applicationDefinition.getApplication())) {
                         usmService.deployApplicationDescriptor(applicationDefinition.getApplication());
                     } else if (mustRedeploy()) {
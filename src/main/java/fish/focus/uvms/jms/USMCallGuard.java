@@ -0,0 +1,197 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.context.ApplicationScoped;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Protects the application from a slow or unavailable USM: a {@link Bulkhead} caps the requests awaiting a response
+ * and a {@link CircuitBreaker} refuses new requests for a while after repeated timeouts, instead of letting every
+ * caller wait for the full timeout.
+ * <p>A call is reserved with {@link #acquire(USMOperation)} before its request is sent and ended with
+ * {@link #completed(String, boolean)} once its response arrived or timed out. Both are done by
+ * {@link USMMessageClient}.
+ */
+@ApplicationScoped
+public class USMCallGuard {
+
+    private static final Logger LOG = LoggerFactory.getLogger(USMCallGuard.class);
+
+    // consecutive failures after which USM is no longer called, zero or less to never stop calling it
+    public static final String FAILURE_THRESHOLD_PROPERTY = "usm4uvms.jms.circuitBreaker.failureThreshold";
+    // how long USM is no longer called before a probe request is let through, in milliseconds
+    public static final String OPEN_DURATION_PROPERTY = "usm4uvms.jms.circuitBreaker.openDuration";
+    public static final String MAX_CONCURRENT_PROPERTY = "usm4uvms.jms.bulkhead.maxConcurrent";
+    // how long a request over the concurrency cap waits for a free slot before being refused, in milliseconds
+    public static final String MAX_WAIT_PROPERTY = "usm4uvms.jms.bulkhead.maxWait";
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(Integer.getInteger(FAILURE_THRESHOLD_PROPERTY, 5),
+            Long.getLong(OPEN_DURATION_PROPERTY, 10000L));
+
+    private final Bulkhead bulkhead = new Bulkhead(Integer.getInteger(MAX_CONCURRENT_PROPERTY, 64), Long.getLong(MAX_WAIT_PROPERTY, 0L));
+
+    private final ConcurrentMap<String, Call> calls = new ConcurrentHashMap<>();
+
+    /**
+     * Reserves a call to USM before its request is sent. When the request could not be sent, the reservation must be
+     * given back with {@link #notSent()}.
+     *
+     * @throws USMUnavailableException if USM is considered down or too many requests are awaiting a response
+     */
+    public void acquire(USMOperation operation) throws USMUnavailableException {
+        if (!acquirePermit()) {
+            throw new USMUnavailableException("Too many requests are awaiting a response from USM, " + operation.getOperationName() + " is refused");
+        }
+        if (!circuitBreaker.tryAcquire()) {
+            bulkhead.release();
+            throw new USMUnavailableException("USM is not responding, " + operation.getOperationName() + " is refused until it recovers");
+        }
+    }
+
+    private boolean acquirePermit() {
+        try {
+            return bulkhead.tryAcquire() || releaseAbandonedCalls() && bulkhead.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Registers the request of a reserved call once it is sent.
+     *
+     * @param applicationName the application the request is about, kept for the metrics of its response
+     * @param dispatched whether the reply is sent to the queue of the {@link USMResponseDispatcher}, so that it is
+     * received where it was sent to even if the dispatcher starts or stops meanwhile
+     */
+    public void sent(String messageId, USMOperation operation, String applicationName, boolean dispatched) {
+        calls.put(messageId, new Call(operation, applicationName, dispatched, System.nanoTime()));
+    }
+
+    /**
+     * Gives back the reservation of a call whose request could not be sent.
+     */
+    public void notSent() {
+        bulkhead.release();
+        circuitBreaker.onFailure();
+    }
+
+    /**
+     * Ends the call of the given message. Only the first completion of a call is taken into account.
+     *
+     * @param responded true if USM responded, whatever the response, false if it timed out
+     * @return the time elapsed since the request was sent, in nanoseconds, or -1 if the call was already ended
+     */
+    public long completed(String messageId, boolean responded) {
+        Call call = calls.remove(messageId);
+        if (call == null) {
+            return -1L;
+        }
+        bulkhead.release();
+        if (responded) {
+            circuitBreaker.onSuccess();
+        } else {
+            circuitBreaker.onFailure();
+        }
+        return System.nanoTime() - call.sentAt;
+    }
+
+    /**
+     * @return the operation of the given message, which tells how long to wait for its response
+     */
+    public USMOperation getOperation(String messageId) {
+        Call call = calls.get(messageId);
+        return call == null ? USMOperation.OTHER : call.operation;
+    }
+
+    /**
+     * @return the application the given message is about, or null if it is unknown
+     */
+    public String getApplicationName(String messageId) {
+        Call call = calls.get(messageId);
+        return call == null ? null : call.applicationName;
+    }
+
+    /**
+     * @return whether the reply to the given message is sent to the queue of the {@link USMResponseDispatcher}, or
+     * null if the message is unknown
+     */
+    public Boolean isDispatched(String messageId) {
+        Call call = calls.get(messageId);
+        return call == null ? null : call.dispatched;
+    }
+
+    /**
+     * Frees the slots of the calls whose response nobody waited for, long after they timed out.
+     *
+     * @return true if a slot was freed
+     */
+    private boolean releaseAbandonedCalls() {
+        long now = System.nanoTime();
+        boolean released = false;
+        Iterator<Map.Entry<String, Call>> it = calls.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Call> entry = it.next();
+            if (now - entry.getValue().sentAt > TimeUnit.MILLISECONDS.toNanos(2 * entry.getValue().operation.getTimeout())
+                    && calls.remove(entry.getKey(), entry.getValue())) {
+                LOG.warn("Nobody waited for the USM response to message {}, its slot is released.", entry.getKey());
+                bulkhead.release();
+                released = true;
+            }
+        }
+        return released;
+    }
+
+    /**
+     * @return how many requests of a batch may await a response at the same time, half of the bulkhead so that a batch
+     * leaves room for the other callers
+     */
+    public int getBatchWindow() {
+        return Math.max(1, bulkhead.getMaxConcurrent() / 2);
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public Bulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    /**
+     * @return the number of requests awaiting a response
+     */
+    public int getPendingCount() {
+        return calls.size();
+    }
+
+    private static final class Call {
+        private final USMOperation operation;
+        private final String applicationName;
+        private final boolean dispatched;
+        private final long sentAt;
+
+        private Call(USMOperation operation, String applicationName, boolean dispatched, long sentAt) {
+            this.operation = operation;
+            this.applicationName = applicationName;
+            this.dispatched = dispatched;
+            this.sentAt = sentAt;
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Resource;
+import javax.ejb.Stateless;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import fish.focus.uvms.metrics.USMMetrics;
+import fish.focus.uvms.utils.UserFaults;
+
+/**
+ * Sends requests to USM and receives their responses, through the {@link USMResponseDispatcher} when it is available
+ * and through a selector based receive on {@link USMMessageConsumer} otherwise.
+ * <p>Every request goes through the {@link USMCallGuard}, which refuses it when USM is not responding or too many
+ * requests are awaiting a response. Its response is awaited for the timeout of its {@link USMOperation}.
+ */
+@Stateless
+public class USMMessageClient {
+
+    public static final long UVMS_USM_TIMEOUT = 30000L;
+
+    @Inject
+    private USMMessageProducer messageProducer;
+
+    @Inject
+    private USMMessageConsumer messageConsumer;
+
+    @Inject
+    private USMResponseDispatcher responseDispatcher;
+
+    @Inject
+    private USMCallGuard callGuard;
+
+    @Inject
+    private USMMetrics metrics;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
+    /**
+     * @return the JMSMessageID of the sent message
+     */
+    public String sendMessage(String payload) throws JMSException {
+        return sendMessage(payload, USMOperation.OTHER);
+    }
+
+    /**
+     * Sends a request whose response will be awaited for the timeout of the given operation.
+     *
+     * @return the JMSMessageID of the sent message
+     * @throws USMUnavailableException if the request is refused by the {@link USMCallGuard}
+     */
+    public String sendMessage(String payload, USMOperation operation) throws JMSException {
+        return sendMessage(payload, operation, null);
+    }
+
+    /**
+     * Same as {@link #sendMessage(String, USMOperation)}, the metrics of the request are also tagged with the
+     * application it is about.
+     *
+     * @param applicationName the application the request is about, or null if it is not about one
+     */
+    public String sendMessage(String payload, USMOperation operation, String applicationName) throws JMSException {
+        try {
+            callGuard.acquire(operation);
+        } catch (USMUnavailableException e) {
+            metrics.countRejection(operation, applicationName);
+            throw e;
+        }
+        long start = System.nanoTime();
+        String messageId;
+        boolean dispatched = responseDispatcher.isAvailable();
+        try {
+            Destination replyTo = dispatched ? responseDispatcher.getReplyDestination() : messageConsumer.getDestination();
+            messageId = messageProducer.sendMessage(payload, replyTo);
+        } catch (JMSException | RuntimeException e) {
+            callGuard.notSent();
+            throw e;
+        }
+        metrics.recordSend(operation, applicationName, System.nanoTime() - start);
+        callGuard.sent(messageId, operation, applicationName, dispatched);
+        return messageId;
+    }
+
+    /**
+     * Blocks until USM has responded to the given message.
+     *
+     * @return the body of the response
+     */
+    public String receiveResponse(String messageId) throws JMSException {
+        USMOperation operation = callGuard.getOperation(messageId);
+        String applicationName = callGuard.getApplicationName(messageId);
+        String response = null;
+        try {
+            if (isDispatched(messageId)) {
+                response = responseDispatcher.awaitResponse(messageId, operation.getTimeout());
+            } else {
+                response = messageConsumer.getMessageBody(messageId, String.class, operation.getTimeout());
+            }
+            return response;
+        } finally {
+            completed(messageId, operation, applicationName, response);
+        }
+    }
+
+    /**
+     * Gets the response to the given message without blocking.
+     * When the dispatcher is not available a managed thread waits for the response instead of the caller.
+     *
+     * @return a future completed with the body of the response, or exceptionally when USM does not respond in time
+     */
+    public CompletableFuture<String> getResponse(String messageId) {
+        USMOperation operation = callGuard.getOperation(messageId);
+        String applicationName = callGuard.getApplicationName(messageId);
+        CompletableFuture<String> response;
+        if (isDispatched(messageId)) {
+            response = responseDispatcher.getResponse(messageId)
+                    .orTimeout(operation.getTimeout(), TimeUnit.MILLISECONDS)
+                    .whenComplete((body, error) -> responseDispatcher.release(messageId));
+        } else {
+            response = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return messageConsumer.getMessageBody(messageId, String.class, operation.getTimeout());
+                } catch (JMSException e) {
+                    throw new CompletionException(e);
+                }
+            }, executorService);
+        }
+        return response.whenComplete((body, error) -> completed(messageId, operation, applicationName, body));
+    }
+
+    /**
+     * The reply is received where it was sent to, even if the dispatcher has started or stopped since.
+     */
+    private boolean isDispatched(String messageId) {
+        Boolean dispatched = callGuard.isDispatched(messageId);
+        return dispatched == null ? responseDispatcher.isAvailable() : dispatched;
+    }
+
+    private void completed(String messageId, USMOperation operation, String applicationName, String response) {
+        long elapsed = callGuard.completed(messageId, response != null);
+        if (elapsed >= 0 && metrics.isEnabled()) {
+            // the response is classified here once; USMServiceSupport only looks for a UserFault when it cannot read it
+            metrics.recordResponse(operation, applicationName, elapsed, response != null, response != null && UserFaults.isUserFault(response));
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+/**
+ * The requests sent to USM, each with its own response timeout.
+ * <p>The timeout of an operation is read from the <code>usm4uvms.jms.timeout.&lt;operation&gt;</code> system property,
+ * for example <code>usm4uvms.jms.timeout.getUserContext</code>, then from {@link #TIMEOUT_PROPERTY} and defaults to
+ * {@link USMMessageClient#UVMS_USM_TIMEOUT}. All values are in milliseconds and read once at start-up.
+ */
+public enum USMOperation {
+    GET_USER_CONTEXT("getUserContext"),
+    GET_DEPLOYMENT_DESCRIPTOR("getDeploymentDescriptor"),
+    DEPLOY_APPLICATION("deployApplication"),
+    REDEPLOY_APPLICATION("redeployApplication"),
+    PUT_PREFERENCE("putPreference"),
+    CREATE_DATASET("createDataset"),
+    DELETE_DATASET("deleteDataset"),
+    FIND_DATASETS("findDatasets"),
+    OTHER("other");
+
+    public static final String TIMEOUT_PROPERTY = "usm4uvms.jms.timeout";
+
+    private final String operationName;
+    private final long timeout;
+
+    USMOperation(String operationName) {
+        this.operationName = operationName;
+        this.timeout = Long.getLong(TIMEOUT_PROPERTY + "." + operationName, Long.getLong(TIMEOUT_PROPERTY, USMMessageClient.UVMS_USM_TIMEOUT));
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    /**
+     * @return how long to wait for the response of USM, in milliseconds
+     */
+    public long getTimeout() {
+        return timeout;
+    }
+}
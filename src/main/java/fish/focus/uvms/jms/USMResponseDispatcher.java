@@ -0,0 +1,270 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TextMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Demultiplexes the USM responses of this deployment.
+ * <p>Requests sent through {@link USMMessageProducer} with {@link #getReplyDestination()} as reply destination are
+ * answered on a temporary queue owned by this bean. A single long-lived consumer reads that queue, without a message
+ * selector, and completes the pending response registered under the JMSCorrelationID of the reply. Many in-flight
+ * USM calls thereby share one consumer instead of each opening a selector based receive on the shared
+ * {@link fish.focus.uvms.commons.message.api.MessageConstants#QUEUE_USM4UVMS} queue.
+ * <p>The dispatcher can be switched off with the {@link #ENABLED_PROPERTY} system property. When it is disabled, cannot
+ * be started or cannot reconnect after losing its connection, {@link #isAvailable()} returns false and callers fall
+ * back to {@link USMMessageConsumer}.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class USMResponseDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(USMResponseDispatcher.class);
+
+    public static final String ENABLED_PROPERTY = "usm4uvms.jms.responseDispatcher.enabled";
+
+    private static final long RECEIVE_TIMEOUT = 1000L;
+    private static final long ORPHAN_MAX_AGE = 60000L;
+
+    @Resource(mappedName = "java:/ConnectionFactory")
+    private ConnectionFactory connectionFactory;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private final Map<String, PendingResponse> pendingResponses = new ConcurrentHashMap<>();
+
+    private volatile Connection connection;
+    private volatile TemporaryQueue replyQueue;
+    private volatile Thread receiver;
+    private volatile boolean running;
+
+    @PostConstruct
+    public void start() {
+        if (!Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"))) {
+            LOG.info("USM response dispatcher is disabled, USM responses are received with a message selector.");
+            return;
+        }
+        try {
+            connect();
+        } catch (JMSException | RuntimeException e) {
+            LOG.warn("Unable to start the USM response dispatcher, USM responses are received with a message selector.", e);
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        Connection stopped;
+        synchronized (this) {
+            running = false;
+            stopped = connection;
+            connection = null;
+        }
+        if (receiver != null) {
+            receiver.interrupt();
+        }
+        // closed outside of the lock, an exception listener of the connection may be waiting for it
+        close(stopped);
+        failPendingResponses("USM response dispatcher is stopped");
+    }
+
+    /**
+     * Opens a connection with its temporary queue and starts receiving from it. When the connection is lost, as on a
+     * broker restart, a new connection and temporary queue replace it.
+     */
+    private synchronized void connect() throws JMSException {
+        Connection created = connectionFactory.createConnection();
+        try {
+            created.setExceptionListener(e -> reconnect(created, e));
+            Session session = created.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            TemporaryQueue queue = session.createTemporaryQueue();
+            MessageConsumer consumer = session.createConsumer(queue);
+            created.start();
+            connection = created;
+            replyQueue = queue;
+            running = true;
+            receiver = threadFactory.newThread(() -> receive(created, consumer));
+            receiver.start();
+        } catch (JMSException | RuntimeException e) {
+            running = false;
+            close(created);
+            throw e;
+        }
+        LOG.info("USM response dispatcher is listening on {}", replyQueue);
+    }
+
+    /**
+     * Replaces a lost connection. The responses still awaited were sent to its temporary queue, which no longer
+     * exists, so they fail at once instead of timing out. When no new connection can be opened, the dispatcher
+     * stops and callers fall back to {@link USMMessageConsumer}.
+     */
+    synchronized void reconnect(Connection failed, Exception cause) {
+        if (!running || failed != connection) {
+            // stopped, or the connection has already been replaced
+            return;
+        }
+        LOG.warn("The USM response dispatcher lost its connection, reconnecting.", cause);
+        close(failed);
+        connection = null;
+        failPendingResponses("The USM response dispatcher lost its connection");
+        try {
+            connect();
+        } catch (JMSException | RuntimeException e) {
+            running = false;
+            LOG.error("Unable to reconnect the USM response dispatcher, USM responses are received with a message selector.", e);
+        }
+    }
+
+    public boolean isAvailable() {
+        return running;
+    }
+
+    /**
+     * @return the destination USM must reply to, for the responses to reach this dispatcher
+     */
+    public Destination getReplyDestination() {
+        return replyQueue;
+    }
+
+    /**
+     * Gets the future completed with the body of the response to the given message. The future can be obtained
+     * before or after the response has arrived. Once the caller is done waiting, it must call {@link #release(String)}.
+     *
+     * @param messageId the JMSMessageID of the request, which USM returns as JMSCorrelationID of the response
+     */
+    public CompletableFuture<String> getResponse(String messageId) {
+        return pendingResponses.computeIfAbsent(messageId, id -> new PendingResponse()).future;
+    }
+
+    /**
+     * Forgets about the response to the given message.
+     */
+    public void release(String messageId) {
+        pendingResponses.remove(messageId);
+    }
+
+    /**
+     * Blocks until the response to the given message has arrived.
+     *
+     * @return the body of the response
+     * @throws JMSException if no response arrived within the timeout
+     */
+    public String awaitResponse(String messageId, long timeoutMillis) throws JMSException {
+        try {
+            return getResponse(messageId).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new JMSException("No response from USM to message " + messageId + " within " + timeoutMillis + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new JMSException("Interrupted while waiting for the USM response to message " + messageId);
+        } catch (ExecutionException e) {
+            throw new JMSException("Failed to receive the USM response to message " + messageId + ": " + e.getCause().getMessage());
+        } finally {
+            release(messageId);
+        }
+    }
+
+    public int getPendingCount() {
+        return pendingResponses.size();
+    }
+
+    private void receive(Connection owner, MessageConsumer consumer) {
+        long lastSweep = System.currentTimeMillis();
+        while (running && owner == connection) {
+            Message message;
+            try {
+                message = consumer.receive(RECEIVE_TIMEOUT);
+            } catch (JMSException e) {
+                // the receiver of the new connection takes over, if any
+                reconnect(owner, e);
+                return;
+            }
+            if (message != null) {
+                dispatch(message);
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastSweep > ORPHAN_MAX_AGE) {
+                sweepOrphans(now);
+                lastSweep = now;
+            }
+        }
+    }
+
+    private void dispatch(Message message) {
+        try {
+            String correlationId = message.getJMSCorrelationID();
+            if (correlationId == null) {
+                LOG.warn("Discarding USM response {} without correlation ID", message.getJMSMessageID());
+                return;
+            }
+            String body = message instanceof TextMessage ? ((TextMessage) message).getText() : message.getBody(String.class);
+            getResponse(correlationId).complete(body);
+        } catch (JMSException e) {
+            LOG.error("Unable to read a USM response, it is discarded.", e);
+        }
+    }
+
+    /**
+     * Drops the responses nobody waits for anymore, typically because they arrived after the caller timed out.
+     */
+    private void sweepOrphans(long now) {
+        pendingResponses.entrySet().removeIf(entry -> now - entry.getValue().createdAt > ORPHAN_MAX_AGE
+                && entry.getValue().future.isDone());
+    }
+
+    private void failPendingResponses(String reason) {
+        for (PendingResponse pending : pendingResponses.values()) {
+            pending.future.completeExceptionally(new JMSException(reason));
+        }
+        pendingResponses.clear();
+    }
+
+    private static void close(Connection connection) {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (JMSException e) {
+                LOG.warn("Unable to close the USM response dispatcher connection", e);
+            }
+        }
+    }
+
+    private static final class PendingResponse {
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private final long createdAt = System.currentTimeMillis();
+    }
+}
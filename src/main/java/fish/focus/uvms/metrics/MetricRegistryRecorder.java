@@ -0,0 +1,126 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.metrics;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+import javax.enterprise.inject.Instance;
+import fish.focus.uvms.cache.TtlCache;
+import fish.focus.uvms.jms.USMOperation;
+import org.eclipse.microprofile.metrics.Gauge;
+import org.eclipse.microprofile.metrics.Metadata;
+import org.eclipse.microprofile.metrics.MetricRegistry;
+import org.eclipse.microprofile.metrics.MetricType;
+import org.eclipse.microprofile.metrics.MetricUnits;
+import org.eclipse.microprofile.metrics.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the metrics of {@link USMMetrics} in a MicroProfile Metrics registry. All the uses of the MicroProfile
+ * Metrics API are kept here, so that the library deploys on servers that do not provide it; this class is not a bean.
+ */
+final class MetricRegistryRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MetricRegistryRecorder.class);
+
+    private static final String PREFIX = "usm4uvms.";
+    private static final String TAG_OPERATION = "operation";
+    private static final String TAG_APPLICATION = "application";
+    private static final String TAG_FILTER = "filter";
+    private static final String TAG_CACHE = "cache";
+    private static final String UNKNOWN = "unknown";
+
+    private final MetricRegistry registry;
+
+    private MetricRegistryRecorder(MetricRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * @return a recorder for the application registry, or null if there is none
+     */
+    static MetricRegistryRecorder lookup(Instance<Object> beans) {
+        Instance<MetricRegistry> registries = beans.select(MetricRegistry.class);
+        return registries.isResolvable() ? new MetricRegistryRecorder(registries.get()) : null;
+    }
+
+    void recordServiceCall(String operation, String applicationName, long nanos, boolean failed) {
+        Tag[] tags = {new Tag(TAG_OPERATION, operation), new Tag(TAG_APPLICATION, tagValue(applicationName))};
+        registry.timer(PREFIX + "service.duration", tags).update(Duration.ofNanos(nanos));
+        if (failed) {
+            registry.counter(PREFIX + "service.failures", tags).inc();
+        }
+    }
+
+    void recordSend(USMOperation operation, String applicationName, long nanos) {
+        registry.timer(PREFIX + "jms.send.duration", jmsTags(operation, applicationName)).update(Duration.ofNanos(nanos));
+    }
+
+    void recordResponse(USMOperation operation, String applicationName, long nanos, boolean responded, boolean fault) {
+        Tag[] tags = jmsTags(operation, applicationName);
+        if (!responded) {
+            registry.counter(PREFIX + "jms.timeouts", tags).inc();
+            return;
+        }
+        registry.timer(PREFIX + "jms.response.duration", tags).update(Duration.ofNanos(nanos));
+        if (fault) {
+            registry.counter(PREFIX + "jms.faults", tags).inc();
+        }
+    }
+
+    void countRejection(USMOperation operation, String applicationName) {
+        registry.counter(PREFIX + "jms.rejections", jmsTags(operation, applicationName)).inc();
+    }
+
+    void recordFilter(String filter, String applicationName, long nanos, int status) {
+        Tag filterTag = new Tag(TAG_FILTER, filter);
+        Tag applicationTag = new Tag(TAG_APPLICATION, tagValue(applicationName));
+        registry.timer(PREFIX + "filter.duration", filterTag, applicationTag).update(Duration.ofNanos(nanos));
+        if (status != 0) {
+            registry.counter(PREFIX + "filter.refusals", filterTag, applicationTag, new Tag("status", Integer.toString(status))).inc();
+        }
+    }
+
+    void registerCache(TtlCache<?, ?> cache) {
+        registerCacheGauge("cache.hits", cache, cache::getHitCount);
+        registerCacheGauge("cache.misses", cache, cache::getMissCount);
+        registerCacheGauge("cache.evictions", cache, cache::getEvictionCount);
+        registerCacheGauge("cache.size", cache, cache::size);
+    }
+
+    void registerCacheGauge(String name, TtlCache<?, ?> cache, Supplier<? extends Number> value) {
+        register(name, value, new Tag(TAG_CACHE, cache.getName()));
+    }
+
+    void registerGauge(String name, Supplier<? extends Number> value) {
+        register(name, value);
+    }
+
+    private void register(String name, Supplier<? extends Number> value, Tag... tags) {
+        Metadata metadata = Metadata.builder().withName(PREFIX + name).withType(MetricType.GAUGE).withUnit(MetricUnits.NONE).build();
+        Gauge<Number> gauge = value::get;
+        try {
+            registry.register(metadata, gauge, tags);
+        } catch (IllegalArgumentException e) {
+            LOG.debug("Gauge {} is already registered", metadata.getName(), e);
+        }
+    }
+
+    private static Tag[] jmsTags(USMOperation operation, String applicationName) {
+        return new Tag[]{new Tag(TAG_OPERATION, operation.getOperationName()), new Tag(TAG_APPLICATION, tagValue(applicationName))};
+    }
+
+    private static String tagValue(String value) {
+        return value == null || value.isEmpty() ? UNKNOWN : value;
+    }
+}
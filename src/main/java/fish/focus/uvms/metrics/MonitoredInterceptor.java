@@ -0,0 +1,83 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.metrics;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Priority;
+import javax.inject.Inject;
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.Interceptor;
+import javax.interceptor.InvocationContext;
+import fish.focus.wsdl.user.types.Application;
+
+/**
+ * Records the duration of each call to a {@link Monitored} bean, tagged with the method name as operation and with
+ * the application the call is about, taken from its <code>applicationName</code> or {@link Application} parameter.
+ */
+@Monitored
+@Interceptor
+@Priority(Interceptor.Priority.LIBRARY_BEFORE)
+public class MonitoredInterceptor {
+
+    private static final String APPLICATION_NAME_PARAMETER = "applicationName";
+
+    // the position of the parameter holding the application, or -1, resolved once per method
+    private static final ConcurrentMap<Method, Integer> APPLICATION_PARAMETERS = new ConcurrentHashMap<>();
+
+    @Inject
+    private USMMetrics metrics;
+
+    @AroundInvoke
+    public Object monitor(InvocationContext invocation) throws Exception {
+        if (!metrics.isEnabled()) {
+            return invocation.proceed();
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            Method method = invocation.getMethod();
+            metrics.recordServiceCall(method.getName(), applicationName(method, invocation.getParameters()), System.nanoTime() - start, failed);
+        }
+    }
+
+    static String applicationName(Method method, Object[] parameters) {
+        int index = APPLICATION_PARAMETERS.computeIfAbsent(method, MonitoredInterceptor::findApplicationParameter);
+        if (index < 0 || parameters == null || parameters[index] == null) {
+            return null;
+        }
+        Object parameter = parameters[index];
+        return parameter instanceof Application ? ((Application) parameter).getName() : parameter.toString();
+    }
+
+    /**
+     * The parameter names are only known when the bean is compiled with <code>-parameters</code>, which this library
+     * is.
+     */
+    private static int findApplicationParameter(Method method) {
+        Parameter[] parameters = method.getParameters();
+        for (int i = 0; i < parameters.length; i++) {
+            Parameter parameter = parameters[i];
+            if (Application.class.equals(parameter.getType())
+                    || String.class.equals(parameter.getType()) && parameter.isNamePresent() && APPLICATION_NAME_PARAMETER.equals(parameter.getName())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
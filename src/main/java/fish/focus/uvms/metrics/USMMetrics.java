@@ -0,0 +1,161 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.metrics;
+
+import java.util.function.ToLongFunction;
+import javax.annotation.PostConstruct;
+import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.inject.Instance;
+import javax.inject.Inject;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.JwtClaimsCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the metrics of the library to the MicroProfile Metrics application registry.
+ * <p>Timers and counters are tagged with the operation or filter they measure and, when it is known, with the
+ * application name, so that they can be aggregated per application. Metrics can be switched off with the
+ * {@link #ENABLED_PROPERTY} system property; they are also skipped when the MicroProfile Metrics API is not on the
+ * class path or no registry is available. This class does not refer to that API itself, only
+ * {@link MetricRegistryRecorder} does, and it is only loaded once the API has been found.
+ */
+@ApplicationScoped
+public class USMMetrics {
+
+    private static final Logger LOG = LoggerFactory.getLogger(USMMetrics.class);
+
+    public static final String ENABLED_PROPERTY = "usm4uvms.metrics.enabled";
+
+    private static final boolean ENABLED = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+
+    private static final String METRIC_REGISTRY_CLASS = "org.eclipse.microprofile.metrics.MetricRegistry";
+
+    @Inject
+    private Instance<Object> beans;
+
+    @Inject
+    private UserContextCache userContextCache;
+
+    @Inject
+    private ApplicationDescriptorCache applicationDescriptorCache;
+
+    @Inject
+    private JwtClaimsCache jwtClaimsCache;
+
+    @Inject
+    private DatasetCache datasetCache;
+
+    @Inject
+    private USMCallGuard callGuard;
+
+    private MetricRegistryRecorder recorder;
+
+    @PostConstruct
+    void init() {
+        MetricRegistryRecorder created = ENABLED && isMetricsApiAvailable() ? MetricRegistryRecorder.lookup(beans) : null;
+        if (created == null) {
+            LOG.info("USM4UVMS metrics are disabled.");
+            return;
+        }
+        created.registerCache(userContextCache.getCache());
+        created.registerCache(userContextCache.getSelectedContextCache());
+        created.registerCache(applicationDescriptorCache.getCache());
+        created.registerCache(jwtClaimsCache.getCache());
+        created.registerCache(datasetCache.getCache());
+        created.registerCacheGauge("cache.staleHits", userContextCache.getCache(), userContextCache::getStaleHitCount);
+        created.registerGauge("jms.pending", callGuard::getPendingCount);
+        created.registerGauge("jms.bulkhead.rejections", () -> callGuard.getBulkhead().getRejectedCount());
+        created.registerGauge("jms.circuitBreaker.rejections", () -> callGuard.getCircuitBreaker().getRejectedCount());
+        created.registerGauge("jms.circuitBreaker.state", () -> callGuard.getCircuitBreaker().getState().ordinal());
+        // message types are registered when first used, so the pools are reported over all types
+        registerJaxbGauge(created, "jaxb.pool.hits", JAXBContextRegistry.Statistics::getHitCount);
+        registerJaxbGauge(created, "jaxb.pool.misses", JAXBContextRegistry.Statistics::getMissCount);
+        registerJaxbGauge(created, "jaxb.pool.marshallers", JAXBContextRegistry.Statistics::getPooledMarshallers);
+        registerJaxbGauge(created, "jaxb.pool.unmarshallers", JAXBContextRegistry.Statistics::getPooledUnmarshallers);
+        recorder = created;
+    }
+
+    public boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * Records a call to a USMService operation, and counts it as a failure if it threw.
+     */
+    public void recordServiceCall(String operation, String applicationName, long nanos, boolean failed) {
+        if (recorder != null) {
+            recorder.recordServiceCall(operation, applicationName, nanos, failed);
+        }
+    }
+
+    /**
+     * Records the time taken to put a request on the USM queue.
+     */
+    public void recordSend(USMOperation operation, String applicationName, long nanos) {
+        if (recorder != null) {
+            recorder.recordSend(operation, applicationName, nanos);
+        }
+    }
+
+    /**
+     * Records the round-trip of a request, from its sending to its response, or counts a timeout.
+     *
+     * @param responded false if USM did not respond in time
+     * @param fault whether USM answered with a UserFault, as classified by the caller
+     */
+    public void recordResponse(USMOperation operation, String applicationName, long nanos, boolean responded, boolean fault) {
+        if (recorder != null) {
+            recorder.recordResponse(operation, applicationName, nanos, responded, fault);
+        }
+    }
+
+    /**
+     * Counts a request refused by the circuit breaker or the bulkhead.
+     */
+    public void countRejection(USMOperation operation, String applicationName) {
+        if (recorder != null) {
+            recorder.countRejection(operation, applicationName);
+        }
+    }
+
+    /**
+     * Records the time a security filter spent on a request, not counting the rest of the chain, and counts the
+     * requests it refused.
+     *
+     * @param status the HTTP status the filter answered with, or 0 if it let the request through
+     */
+    public void recordFilter(String filter, String applicationName, long nanos, int status) {
+        if (recorder != null) {
+            recorder.recordFilter(filter, applicationName, nanos, status);
+        }
+    }
+
+    private static void registerJaxbGauge(MetricRegistryRecorder recorder, String name, ToLongFunction<JAXBContextRegistry.Statistics> value) {
+        recorder.registerGauge(name, () -> JAXBContextRegistry.getStatistics().stream().mapToLong(value).sum());
+    }
+
+    private static boolean isMetricsApiAvailable() {
+        try {
+            Class.forName(METRIC_REGISTRY_CLASS, false, USMMetrics.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            LOG.debug("The MicroProfile Metrics API is not available", e);
+            return false;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package fish.focus.uvms.rest.security;
 
 import java.io.IOException;
 import javax.ejb.EJB;
+import javax.inject.Inject;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.ServletException;
@@ -14,23 +15,39 @@ import javax.ws.rs.core.HttpHeaders;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import fish.focus.uvms.usm.jwt.JwtTokenHandler;
+import fish.focus.uvms.cache.JwtClaimsCache;
+import fish.focus.uvms.cache.VerifiedClaims;
 import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.metrics.USMMetrics;
 
 /**
  * Filters incoming requests, converting JWT token to a remote user identity (if
  * the request does not already reference a remote user), extending the duration
  * of the JWT token (if present).
+ * <p>A token is only extended once its remaining lifetime drops below {@link #REFRESH_THRESHOLD_PROPERTY}
+ * milliseconds ({@link AuthConstants#JWT_DEFAULT_REFRESH_THRESHOLD} if not set); until then the incoming token is sent
+ * back as is.
  */
-public class AuthenticationFilter implements Filter {
+public class AuthenticationFilter extends AbstractUSMHandler implements Filter {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AuthenticationFilter.class);
     private static final String CHALLENGEAUTH = "/challengeauth";
     private static final String AUTHENTICATE = "/authenticate";
     private static final String PING = "/ping";
 
+    public static final String REFRESH_THRESHOLD_PROPERTY = "usm4uvms.jwt.refreshThreshold";
+
+    private static final long REFRESH_THRESHOLD = Long.getLong(REFRESH_THRESHOLD_PROPERTY, AuthConstants.JWT_DEFAULT_REFRESH_THRESHOLD);
+
     @EJB
     private JwtTokenHandler tokenHandler;
 
+    @Inject
+    private JwtClaimsCache claimsCache;
+
+    @Inject
+    private USMMetrics metrics;
+
     /**
      * Creates a new instance
      */
@@ -56,15 +73,18 @@ public class AuthenticationFilter implements Filter {
     public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
         HttpServletRequest httpRequest = (HttpServletRequest) request;
         HttpServletResponse httpResponse = (HttpServletResponse) response;
+        long start = System.nanoTime();
         LOGGER.debug("doFilter(" + httpRequest.getMethod() + ", " + httpRequest.getPathInfo() + ") - (ENTER)");
         Boolean tokenIsUsed = false;
+        VerifiedClaims claims = null;
         String remoteUser = httpRequest.getRemoteUser();
         String jwtToken = httpRequest.getHeader(AuthConstants.HTTP_HEADER_AUTHORIZATION);
         LOGGER.debug("httpRequest.getRemoteUser(): " + remoteUser);
         if (remoteUser == null) {
             tokenIsUsed = true;
-            // decode token
-            remoteUser = tokenHandler.parseToken(jwtToken);
+            // decode token, its signature is only verified the first time it is seen; features are left to UnionVMSFeatureFilter
+            claims = claimsCache.getClaims(jwtToken, tokenHandler::parseToken);
+            remoteUser = claims == null ? null : claims.getUsername();
         }
         LOGGER.debug("remoteUser: " + remoteUser);
         // check whether is an authenticated request or not
@@ -72,7 +92,7 @@ public class AuthenticationFilter implements Filter {
             UserRoleRequestWrapper arequest = new UserRoleRequestWrapper(httpRequest, remoteUser);
             String refreshedToken;
             if (tokenIsUsed) {
-                refreshedToken = tokenHandler.extendToken(jwtToken);
+                refreshedToken = claims.expiresBefore(System.currentTimeMillis() + REFRESH_THRESHOLD) ? tokenHandler.extendToken(jwtToken) : jwtToken;
             } else {
                 // we have a remote user but no token was provided
                 refreshedToken = tokenHandler.createToken(remoteUser);
@@ -92,20 +112,29 @@ public class AuthenticationFilter implements Filter {
                     }
                 }
             }
+            recordFilter(httpRequest, start, 0);
             chain.doFilter(arequest, httpResponse);
         } else {
             String pathInfo = httpRequest.getPathInfo();
 
             if (AUTHENTICATE.equals(pathInfo) || CHALLENGEAUTH.equals(pathInfo)) {
                 // if there is an authentication request proceed
+                recordFilter(httpRequest, start, 0);
                 chain.doFilter(httpRequest, response);
             } else {
                 // Send 403 error
+                recordFilter(httpRequest, start, HttpServletResponse.SC_FORBIDDEN);
                 httpResponse.sendError(HttpServletResponse.SC_FORBIDDEN);
             }
         }
     }
 
+    private void recordFilter(HttpServletRequest request, long start, int status) {
+        if (metrics.isEnabled()) {
+            metrics.recordFilter("authentication", getApplicationName(request.getServletContext()), System.nanoTime() - start, status);
+        }
+    }
+
     @Override
     public void destroy() {
         // NOP
@@ -11,13 +11,13 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package fish.focus.uvms.rest.security;
 
-import fish.focus.wsdl.user.types.Context;
 import fish.focus.uvms.constants.AuthConstants;
 import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.metrics.USMMetrics;
 import fish.focus.uvms.rest.security.bean.USMService;
 import java.io.IOException;
-import java.util.Set;
 import javax.ejb.EJB;
+import javax.inject.Inject;
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
@@ -38,6 +38,12 @@ public class AuthorizationFilter extends AbstractUSMHandler implements Filter, A
     @EJB
     private USMService usmService;
 
+    @Inject
+    private UserSecurityContext securityContext;
+
+    @Inject
+    private USMMetrics metrics;
+
     @Override
     public void init(FilterConfig filterConfig) throws ServletException {
 
@@ -48,29 +54,31 @@ public class AuthorizationFilter extends AbstractUSMHandler implements Filter, A
             throws ServletException, IOException {
         if (request instanceof UserRoleRequestWrapper) {
             UserRoleRequestWrapper requestWrapper = (UserRoleRequestWrapper) request;
-            Set<String> featuresStr = null;
+            long start = System.nanoTime();
+            AuthorizationSnapshot authorization;
             String applicationName = getApplicationName(request.getServletContext());
             String currentScope = requestWrapper.getHeader(HTTP_HEADER_SCOPE_NAME); // get it from the header
             String currentRole = requestWrapper.getHeader(HTTP_HEADER_ROLE_NAME); // get it from the header
             LOGGER.debug("Current requests is with scope '{}', and role '{}'", currentScope, currentRole);
             try {
-                Context userContext = usmService.getUserContext(requestWrapper.getRemoteUser(), applicationName, currentRole, currentScope);
-                if (userContext == null) {
+                authorization = usmService.getAuthorization(requestWrapper.getRemoteUser(), applicationName, currentRole, currentScope);
+                if (authorization == null) {
                     ((HttpServletResponse) response).sendError(HttpServletResponse.SC_FORBIDDEN);
-                } else {
-                    featuresStr = usmService.getUserFeatures(requestWrapper.getRemoteUser(), userContext);
                 }
             } catch (ServiceException | IOException e) {
+                recordFilter(applicationName, start, HttpServletResponse.SC_UNAUTHORIZED);
                 ((HttpServletResponse) response).sendError(HttpServletResponse.SC_UNAUTHORIZED, "Unable to get user context and/or user features.");
                 return;
             }
-            if (featuresStr == null) {
+            if (authorization == null) {
                 LOGGER.warn(
                         "Unauthorized attempt to access resource with scope '{}' and role '{}', which don't exist for the current user.",
                         currentScope, currentRole);
             } else {
-                requestWrapper.setRoles(featuresStr);
+                requestWrapper.setAuthorization(authorization);
+                securityContext.setAuthorization(applicationName, authorization);
             }
+            recordFilter(applicationName, start, authorization == null ? HttpServletResponse.SC_FORBIDDEN : 0);
         }
         try {
             chain.doFilter(request, response);
@@ -79,6 +87,12 @@ public class AuthorizationFilter extends AbstractUSMHandler implements Filter, A
         }
     }
 
+    private void recordFilter(String applicationName, long start, int status) {
+        if (metrics.isEnabled()) {
+            metrics.recordFilter("authorization", applicationName, System.nanoTime() - start, status);
+        }
+    }
+
     @Override
     public void destroy() {
     }
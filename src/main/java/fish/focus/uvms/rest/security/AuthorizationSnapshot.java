@@ -0,0 +1,102 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Feature;
+
+/**
+ * Immutable view of what a user may do in one context (role and scope), built once when the context is fetched.
+ * <p>Feature membership is kept as a bitset indexed by {@link FeatureIndex}, so checking a feature costs one table
+ * lookup and one bit test, without allocating.
+ */
+public final class AuthorizationSnapshot {
+
+    private final String username;
+    private final Context context;
+    private final long[] features;
+    private final Set<String> featureNames;
+
+    private AuthorizationSnapshot(String username, Context context, long[] features, Set<String> featureNames) {
+        this.username = username;
+        this.context = context;
+        this.features = features;
+        this.featureNames = featureNames;
+    }
+
+    /**
+     * Builds the snapshot of the features granted by the role of the context.
+     */
+    public static AuthorizationSnapshot of(String username, Context context) {
+        List<Feature> contextFeatures = context.getRole() == null ? Collections.<Feature>emptyList() : context.getRole().getFeature();
+        Set<String> names = new HashSet<>(contextFeatures.size());
+        long[] bits = new long[0];
+        for (Feature feature : contextFeatures) {
+            if (feature.getName() == null) {
+                continue;
+            }
+            names.add(feature.getName());
+            int index = FeatureIndex.register(feature.getName());
+            int word = index >>> 6;
+            if (word >= bits.length) {
+                long[] grown = new long[word + 1];
+                System.arraycopy(bits, 0, grown, 0, bits.length);
+                bits = grown;
+            }
+            bits[word] |= 1L << index;
+        }
+        return new AuthorizationSnapshot(username, context, bits, Collections.unmodifiableSet(names));
+    }
+
+    public boolean hasFeature(String featureName) {
+        int index = FeatureIndex.indexOf(featureName);
+        if (index < 0) {
+            return false;
+        }
+        int word = index >>> 6;
+        return word < features.length && (features[word] & 1L << index) != 0;
+    }
+
+    public boolean hasFeature(UnionVMSFeature feature) {
+        return hasFeature(feature.name());
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRoleName() {
+        return context.getRole() == null ? null : context.getRole().getRoleName();
+    }
+
+    /**
+     * @return the scope of the context, null if it has none
+     */
+    public String getScopeName() {
+        return context.getScope() == null ? null : context.getScope().getScopeName();
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    /**
+     * @return the names of the granted features, unmodifiable
+     */
+    public Set<String> getFeatureNames() {
+        return featureNames;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Application wide table of the feature names, giving each name a small, stable index used as its position in the
+ * feature bitsets of {@link AuthorizationSnapshot}.
+ * <p>The known {@link UnionVMSFeature}s are registered first; any other feature name received from USM is appended
+ * when it is first seen. Names are never removed, USM only knows a limited set of features.
+ */
+public final class FeatureIndex {
+
+    private static final ConcurrentMap<String, Integer> INDEXES = new ConcurrentHashMap<>();
+    private static final AtomicInteger NEXT_INDEX = new AtomicInteger();
+
+    static {
+        for (UnionVMSFeature feature : UnionVMSFeature.values()) {
+            register(feature.name());
+        }
+    }
+
+    private FeatureIndex() {
+    }
+
+    /**
+     * @return the index of the feature, registering it if needed
+     */
+    public static int register(String featureName) {
+        Integer index = INDEXES.get(featureName);
+        if (index == null) {
+            index = INDEXES.computeIfAbsent(featureName.intern(), name -> NEXT_INDEX.getAndIncrement());
+        }
+        return index;
+    }
+
+    /**
+     * @return the index of the feature, or -1 if no context ever had it
+     */
+    public static int indexOf(String featureName) {
+        Integer index = featureName == null ? null : INDEXES.get(featureName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return the number of registered features
+     */
+    public static int size() {
+        return NEXT_INDEX.get();
+    }
+}
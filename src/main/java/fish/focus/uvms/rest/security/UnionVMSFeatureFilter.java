@@ -11,10 +11,15 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package fish.focus.uvms.rest.security;
 
+import fish.focus.uvms.cache.JwtClaimsCache;
+import fish.focus.uvms.cache.VerifiedClaims;
+import fish.focus.uvms.metrics.USMMetrics;
 import fish.focus.uvms.usm.jwt.JwtTokenHandler;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 
 import javax.ejb.EJB;
+import javax.inject.Inject;
+import javax.servlet.ServletContext;
 import javax.faces.context.ExceptionHandler;
 import javax.ws.rs.container.ContainerRequestContext;
 import javax.ws.rs.container.ContainerRequestFilter;
@@ -24,53 +29,104 @@ import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.ext.Provider;
-import java.util.List;
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Provider
 public class UnionVMSFeatureFilter extends AbstractUSMHandler implements ContainerRequestFilter {
 
+    /**
+     * The feature required by each resource method, resolved on the first request to it. Kept per resource class,
+     * since a method inherited by several resources may get its requirement from each resource's own annotation.
+     */
+    private static final ClassValue<ConcurrentMap<Method, Optional<UnionVMSFeature>>> REQUIRED_FEATURES =
+            new ClassValue<ConcurrentMap<Method, Optional<UnionVMSFeature>>>() {
+                @Override
+                protected ConcurrentMap<Method, Optional<UnionVMSFeature>> computeValue(Class<?> resourceClass) {
+                    return new ConcurrentHashMap<>();
+                }
+            };
+
     @EJB
     private JwtTokenHandler jwtTokenHandler;
 
+    @Inject
+    private JwtClaimsCache claimsCache;
+
     @Context
     private ResourceInfo resourceInfo;
 
+    @Context
+    private ServletContext servletContext;
+
+    @Inject
+    private USMMetrics metrics;
+
 
     @Override
     public void filter(ContainerRequestContext requestContext) {
-        UnionVMSFeature feature;
-        if (resourceInfo.getResourceMethod().isAnnotationPresent(RequiresFeature.class)) {
-            feature = resourceInfo.getResourceMethod().getAnnotation(RequiresFeature.class).value();
-        } else if (resourceInfo.getResourceClass().isAnnotationPresent(RequiresFeature.class)) {
-            feature = resourceInfo.getResourceClass().getAnnotation(RequiresFeature.class).value();
-        } else {
+        UnionVMSFeature feature = getRequiredFeature(resourceInfo.getResourceClass(), resourceInfo.getResourceMethod());
+        if (feature == null) {
+            // methods without a required feature are neither checked nor measured
             return;
         }
+        long start = System.nanoTime();
+        int status = authorize(requestContext, feature);
+        if (metrics.isEnabled()) {
+            metrics.recordFilter("feature", getApplicationName(servletContext), System.nanoTime() - start, status);
+        }
+    }
 
+    /**
+     * @return the status the request was aborted with, or 0 if it may go on
+     */
+    private int authorize(ContainerRequestContext requestContext, UnionVMSFeature feature) {
         try {
             String authorizationHeader = requestContext.getHeaderString(HttpHeaders.AUTHORIZATION);
             if(authorizationHeader == null || authorizationHeader.isEmpty()){
-                sendAccessForbidden(requestContext);
-                return;
+                return sendAccessForbidden(requestContext);
             }
 
-            List<Integer> featuresThisUserHas = jwtTokenHandler.parseTokenFeatures(authorizationHeader);
-            if (featuresThisUserHas == null || featuresThisUserHas.stream().noneMatch(f -> f.equals(feature.getFeatureId()))) {
-                sendAccessForbidden(requestContext);
-                return;
+            VerifiedClaims claims = claimsCache.getClaims(authorizationHeader, jwtTokenHandler::parseToken, jwtTokenHandler::parseTokenFeatures);
+            if (claims == null || !claims.hasFeature(feature.getFeatureId())) {
+                return sendAccessForbidden(requestContext);
             }
         }catch(Exception e){
             requestContext.abortWith(Response.status(Response.Status.INTERNAL_SERVER_ERROR).header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
                     .entity(ExceptionUtils.getRootCause(e)).build());
-            return;
+            return Response.Status.INTERNAL_SERVER_ERROR.getStatusCode();
 
         }
+        return 0;
     }
 
 
-    private void sendAccessForbidden(ContainerRequestContext requestContext) {
+    /**
+     * @return the feature required by the method, or by its resource class if the method does not say, or null
+     */
+    static UnionVMSFeature getRequiredFeature(Class<?> resourceClass, Method resourceMethod) {
+        ConcurrentMap<Method, Optional<UnionVMSFeature>> requiredFeatures = REQUIRED_FEATURES.get(resourceClass);
+        Optional<UnionVMSFeature> feature = requiredFeatures.get(resourceMethod);
+        if (feature == null) {
+            feature = requiredFeatures.computeIfAbsent(resourceMethod, method -> Optional.ofNullable(resolveRequiredFeature(resourceClass, method)));
+        }
+        return feature.orElse(null);
+    }
+
+    private static UnionVMSFeature resolveRequiredFeature(Class<?> resourceClass, Method resourceMethod) {
+        RequiresFeature requiresFeature = resourceMethod.getAnnotation(RequiresFeature.class);
+        if (requiresFeature == null) {
+            requiresFeature = resourceClass.getAnnotation(RequiresFeature.class);
+        }
+        return requiresFeature == null ? null : requiresFeature.value();
+    }
+
+    private int sendAccessForbidden(ContainerRequestContext requestContext) {
         requestContext.abortWith(Response.status(Response.Status.FORBIDDEN).header(HttpHeaders.CONTENT_TYPE, MediaType.TEXT_PLAIN)
                 .entity("User cannot access the resource.").build());
+        return Response.Status.FORBIDDEN.getStatusCode();
     }
 
 }
\ No newline at end of file
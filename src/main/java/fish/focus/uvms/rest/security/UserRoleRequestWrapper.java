@@ -12,6 +12,7 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
 package fish.focus.uvms.rest.security;
 
 import java.security.Principal;
+import java.util.Objects;
 import java.util.Set;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletRequestWrapper;
@@ -29,7 +30,9 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
 
     private String user;
     private Set<String> roles = null;
+    private AuthorizationSnapshot authorization;
     private HttpServletRequest realRequest;
+    private final Principal principal;
 
     /**
      * a constructor which allows us to insert the available roles into the current request
@@ -42,8 +45,10 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
         super(request);
         this.user = user;
         this.setRoles(roles);
-        request.getServletContext().setAttribute(AuthConstants.HTTP_SERVLET_CONTEXT_ATTR_FEATURES, roles); //this is needed, because RESTEasy creates proxy objects and in a rest method, I cannot cast to this wrapper and call wrapper.getRoles();
+        // kept on the request, not on the ServletContext shared by all requests; resources should use UserSecurityContext
+        request.setAttribute(AuthConstants.HTTP_SERVLET_CONTEXT_ATTR_FEATURES, roles);
         this.realRequest = request;
+        this.principal = user == null ? null : new UserPrincipal(user);
     }
 
     /**
@@ -55,6 +60,8 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
     public UserRoleRequestWrapper(HttpServletRequest delegate, String remoteUser) {
         super(delegate);
         this.user = remoteUser;
+        this.realRequest = delegate;
+        this.principal = remoteUser == null ? null : new UserPrincipal(remoteUser);
     }
 
     @Override
@@ -70,6 +77,9 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
 
     @Override
     public boolean isUserInRole(String role) {
+        if (authorization != null) {
+            return authorization.hasFeature(role);
+        }
         if (getRoles() == null) {
             return this.realRequest.isUserInRole(role);
         }
@@ -81,13 +91,7 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
         if (this.user == null) {
             return realRequest.getUserPrincipal();
         }
-        // make an anonymous implementation to just return our user
-        return new Principal() {
-            @Override
-            public String getName() {
-                return user;
-            }
-        };
+        return principal;
     }
 
     private Set<String> getRoles() {
@@ -98,4 +102,46 @@ public class UserRoleRequestWrapper extends HttpServletRequestWrapper {
         this.roles = roles;
     }
 
+    public AuthorizationSnapshot getAuthorization() {
+        return authorization;
+    }
+
+    /**
+     * Sets what the user may do in the current context; once set, it answers {@link #isUserInRole(String)}.
+     */
+    public void setAuthorization(AuthorizationSnapshot authorization) {
+        this.authorization = authorization;
+    }
+
+    /**
+     * Principal that just returns our user, created once per request.
+     */
+    private static final class UserPrincipal implements Principal {
+        private final String name;
+
+        private UserPrincipal(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof UserPrincipal && Objects.equals(name, ((UserPrincipal) o).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(name);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,86 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import java.util.Collections;
+import java.util.Set;
+import javax.enterprise.context.RequestScoped;
+import fish.focus.wsdl.user.types.Context;
+
+/**
+ * The security context of the current request, as decided by the {@link AuthorizationFilter}: who the user is and
+ * which role, scope and features apply.
+ * <p>Resources inject it to read the features of the user instead of the former
+ * {@link fish.focus.uvms.constants.AuthConstants#HTTP_SERVLET_CONTEXT_ATTR_FEATURES} ServletContext attribute, which
+ * was shared by all the requests of the application. The features are read from the shared, immutable
+ * {@link AuthorizationSnapshot}; nothing is copied.
+ */
+@RequestScoped
+public class UserSecurityContext {
+
+    private String applicationName;
+    private AuthorizationSnapshot authorization;
+
+    /**
+     * @return true once the AuthorizationFilter has found the context of the user
+     */
+    public boolean isAuthorized() {
+        return authorization != null;
+    }
+
+    public String getUsername() {
+        return authorization == null ? null : authorization.getUsername();
+    }
+
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    public String getRoleName() {
+        return authorization == null ? null : authorization.getRoleName();
+    }
+
+    public String getScopeName() {
+        return authorization == null ? null : authorization.getScopeName();
+    }
+
+    /**
+     * @return the names of the features of the user in the current context, unmodifiable
+     */
+    public Set<String> getFeatures() {
+        return authorization == null ? Collections.<String>emptySet() : authorization.getFeatureNames();
+    }
+
+    public boolean hasFeature(String featureName) {
+        return authorization != null && authorization.hasFeature(featureName);
+    }
+
+    public boolean hasFeature(UnionVMSFeature feature) {
+        return authorization != null && authorization.hasFeature(feature);
+    }
+
+    /**
+     * @return the USM context of the user, shared and not to be modified, or null if the request is not authorized
+     */
+    public Context getContext() {
+        return authorization == null ? null : authorization.getContext();
+    }
+
+    public AuthorizationSnapshot getAuthorization() {
+        return authorization;
+    }
+
+    public void setAuthorization(String applicationName, AuthorizationSnapshot authorization) {
+        this.applicationName = applicationName;
+        this.authorization = authorization;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.UserContext;
+
+/**
+ * Non blocking counterpart of {@link USMService}.
+ * <p>The requests are sent to USM before the methods return, the returned futures complete once USM has responded.
+ * Several lookups can thereby be run concurrently by one thread. When a call fails the future completes exceptionally
+ * with a {@link java.util.concurrent.CompletionException} caused by a {@link fish.focus.uvms.exception.ServiceException}.
+ * The same caches as {@link USMService} are used and kept up to date.
+ */
+public interface AsyncUSMService {
+
+    CompletableFuture<UserContext> getFullUserContext(String remoteUser, String applicationName);
+
+    CompletableFuture<Context> getUserContext(String username,
+                                              String applicationName,
+                                              String currentRole,
+                                              String currentScope);
+
+    CompletableFuture<Application> getApplicationDefinition(String applicationName);
+
+    CompletableFuture<List<DatasetExtension>> findDatasetsByDiscriminator(String applicationName, String discriminator);
+
+    CompletableFuture<Void> deployApplicationDescriptor(Application descriptor);
+
+    CompletableFuture<Void> redeployApplicationDescriptor(Application deploymentDescriptor);
+
+    CompletableFuture<Void> setOptionDefaultValue(String keyOption, String defaultValue, String applicationName);
+
+    CompletableFuture<Void> putUserPreference(String keyOption, String userDefinedValue, String applicationName, String scopeName, String roleName, String username);
+
+    CompletableFuture<Void> createDataset(String applicationName, String datasetName, String discriminator, String category, String description);
+
+    CompletableFuture<Void> deleteDataset(String applicationName, String datasetName);
+
+    /**
+     * @see USMService#createDatasets(List)
+     */
+    CompletableFuture<List<DatasetOperationResult>> createDatasets(List<DatasetExtension> datasets);
+
+    /**
+     * @see USMService#deleteDatasets(List)
+     */
+    CompletableFuture<List<DatasetOperationResult>> deleteDatasets(List<DatasetExtension> datasets);
+}
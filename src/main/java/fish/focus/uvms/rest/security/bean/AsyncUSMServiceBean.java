@@ -0,0 +1,307 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import javax.annotation.Resource;
+import javax.ejb.Stateless;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+import javax.jms.JMSException;
+import javax.xml.bind.JAXBException;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.user.model.exception.ModelMarshallException;
+import fish.focus.uvms.user.model.mapper.UserModuleRequestMapper;
+import fish.focus.wsdl.user.module.CreateDatasetResponse;
+import fish.focus.wsdl.user.module.DeleteDatasetResponse;
+import fish.focus.wsdl.user.module.DeployApplicationResponse;
+import fish.focus.wsdl.user.module.PutPreferenceResponse;
+import fish.focus.wsdl.user.module.RedeployApplicationResponse;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.UserContext;
+import fish.focus.wsdl.user.types.UserPreference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+@Stateless
+public class AsyncUSMServiceBean implements AsyncUSMService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncUSMServiceBean.class);
+
+    @Inject
+    private USMMessageClient messageClient;
+
+    @Inject
+    private UserContextCache userContextCache;
+
+    @Inject
+    private ApplicationDescriptorCache applicationDescriptorCache;
+
+    @Inject
+    private DatasetCache datasetCache;
+
+    @Inject
+    private USMCallGuard callGuard;
+
+    @Inject
+    private PreferenceWriteBehind preferenceWriteBehind;
+
+    @Resource
+    private ManagedExecutorService executorService;
+
+    @Override
+    public CompletableFuture<UserContext> getFullUserContext(String remoteUser, String applicationName) {
+        LOG.debug("START getFullUserContext({}, {})", remoteUser, applicationName);
+        return userContextCache.getAsync(remoteUser, applicationName,
+                () -> request(USMOperation.GET_USER_CONTEXT, applicationName, () -> USMServiceSupport.getUserContextRequest(remoteUser, applicationName),
+                        USMServiceSupport::toUserContext, "Unexpected exception while trying to get user context."));
+    }
+
+    @Override
+    public CompletableFuture<Context> getUserContext(String username, String applicationName, String currentRole, String currentScope) {
+        LOG.debug("START getUserContext({}, {}, {}, {})", username, applicationName, currentRole, currentScope);
+        if (USMServiceSupport.USER_CONTEXT_STREAMING && userContextCache.get(username, applicationName) == null) {
+            return userContextCache.getContextAsync(username, applicationName, currentRole, currentScope,
+                    () -> request(USMOperation.GET_USER_CONTEXT, applicationName, () -> USMServiceSupport.getUserContextRequest(username, applicationName),
+                            (response, messageId) -> USMServiceSupport.toContext(response, messageId, currentRole, currentScope),
+                            "Unexpected exception while trying to get user context."));
+        }
+        return getFullUserContext(username, applicationName).thenApply(fullContext -> {
+            try {
+                return USMServiceSupport.findContext(userContextCache.getEntry(username, applicationName), fullContext, currentRole, currentScope);
+            } catch (ServiceException e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Application> getApplicationDefinition(String applicationName) {
+        LOG.debug("START getApplicationDefinition({})", applicationName);
+        return applicationDescriptorCache.getAsync(applicationName, () -> fetchApplicationDefinition(applicationName))
+                .thenApply(descriptor -> descriptor == null ? null : descriptor.getApplication());
+    }
+
+    private CompletableFuture<Application> fetchApplicationDefinition(String applicationName) {
+        return request(USMOperation.GET_DEPLOYMENT_DESCRIPTOR, applicationName, () -> USMServiceSupport.getDeploymentDescriptorRequest(applicationName),
+                USMServiceSupport::toApplication, "Unable to get Application Definition");
+    }
+
+    @Override
+    public CompletableFuture<List<DatasetExtension>> findDatasetsByDiscriminator(String applicationName, String discriminator) {
+        LOG.debug("START findDatasetByDiscriminator({}, {}", applicationName, discriminator);
+        return datasetCache.getAsync(applicationName, discriminator,
+                () -> request(USMOperation.FIND_DATASETS, applicationName, () -> USMServiceSupport.findDatasetsRequest(applicationName, discriminator),
+                        USMServiceSupport::toDatasets, "Unable to update Dataset."));
+    }
+
+    @Override
+    public CompletableFuture<Void> deployApplicationDescriptor(Application descriptor) {
+        LOG.debug("START deployApplicationDescriptor({})", descriptor);
+        return request(USMOperation.DEPLOY_APPLICATION, descriptor.getName(), () -> USMServiceSupport.deployApplicationRequest(descriptor),
+                (response, messageId) -> {
+                    USMServiceSupport.checkRegistered(response, messageId, DeployApplicationResponse.class, DeployApplicationResponse::getResponse);
+                    applicationDescriptorCache.put(descriptor);
+                    return null;
+                }, "Unable to deploy Application descriptor");
+    }
+
+    @Override
+    public CompletableFuture<Void> redeployApplicationDescriptor(Application deploymentDescriptor) {
+        LOG.debug("START redeployApplicationDescriptor({})", deploymentDescriptor);
+        return request(USMOperation.REDEPLOY_APPLICATION, deploymentDescriptor.getName(), () -> UserModuleRequestMapper.mapToRedeployApplicationRequest(deploymentDescriptor),
+                (response, messageId) -> {
+                    USMServiceSupport.checkRegistered(response, messageId, RedeployApplicationResponse.class, RedeployApplicationResponse::getResponse);
+                    applicationDescriptorCache.put(deploymentDescriptor);
+                    return null;
+                }, "Unable to deploy Application descriptor");
+    }
+
+    @Override
+    public CompletableFuture<Void> setOptionDefaultValue(String keyOption, String defaultValue, String applicationName) {
+        LOG.debug("START setOptionDefaultValue({}, {}, {})", keyOption, defaultValue, applicationName);
+        // the descriptor is modified below, so never work on the cached instance
+        return fetchApplicationDefinition(applicationName).thenCompose(application -> {
+            if (application == null) {
+                throw new CompletionException(new ServiceException("Application " + applicationName + " is not deployed in USM."));
+            }
+            USMServiceSupport.setOptionDefaultValue(application, keyOption, defaultValue);
+            return redeployApplicationDescriptor(application);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putUserPreference(String keyOption, String userDefinedValue, String applicationName, String scopeName, String roleName, String username) {
+        LOG.debug("START putUserPreference({} , {}, {}, {}, {}, {})", keyOption, userDefinedValue, applicationName, scopeName, roleName, username);
+        UserPreference userPreference = USMServiceSupport.userPreference(keyOption, userDefinedValue, applicationName, scopeName, roleName, username);
+        if (preferenceWriteBehind.enqueue(userPreference, userDefinedValue)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return request(USMOperation.PUT_PREFERENCE, applicationName, () -> UserModuleRequestMapper.mapToPutUserPreferenceRequest(userPreference),
+                (response, messageId) -> {
+                    USMServiceSupport.logResponse(response, messageId, PutPreferenceResponse.class, PutPreferenceResponse::getResponse);
+                    userContextCache.evict(username, applicationName);
+                    return null;
+                }, "Unable to set user preference into USM.");
+    }
+
+    @Override
+    public CompletableFuture<Void> createDataset(String applicationName, String datasetName, String discriminator, String category, String description) {
+        LOG.debug("START createDataset({}, {}, {}, {}, {})", applicationName, datasetName, discriminator, category, description);
+        return this.<Void>request(USMOperation.CREATE_DATASET, applicationName, () -> USMServiceSupport.createDatasetRequest(applicationName, datasetName, discriminator, category, description),
+                (response, messageId) -> {
+                    USMServiceSupport.logResponse(response, messageId, CreateDatasetResponse.class, CreateDatasetResponse::getResponse);
+                    return null;
+                }, "Unable to update Dataset.")
+                .whenComplete((result, error) -> evictApplication(applicationName));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteDataset(String applicationName, String datasetName) {
+        LOG.debug("START deleteDataset({}, {}", applicationName, datasetName);
+        return this.<Void>request(USMOperation.DELETE_DATASET, applicationName, () -> USMServiceSupport.deleteDatasetRequest(applicationName, datasetName),
+                (response, messageId) -> {
+                    USMServiceSupport.logResponse(response, messageId, DeleteDatasetResponse.class, DeleteDatasetResponse::getResponse);
+                    return null;
+                }, "Unable to update Dataset.")
+                .whenComplete((result, error) -> evictApplication(applicationName));
+    }
+
+    @Override
+    public CompletableFuture<List<DatasetOperationResult>> createDatasets(List<DatasetExtension> datasets) {
+        LOG.debug("START createDatasets({} datasets)", datasets.size());
+        return updateDatasets(datasets, dataset -> request(USMOperation.CREATE_DATASET, dataset.getApplicationName(), () -> USMServiceSupport.createDatasetRequest(dataset),
+                (response, messageId) -> USMServiceSupport.responseStatus(response, messageId, CreateDatasetResponse.class, CreateDatasetResponse::getResponse, "Unable to update Dataset."),
+                "Unable to update Dataset."));
+    }
+
+    @Override
+    public CompletableFuture<List<DatasetOperationResult>> deleteDatasets(List<DatasetExtension> datasets) {
+        LOG.debug("START deleteDatasets({} datasets)", datasets.size());
+        return updateDatasets(datasets, dataset -> request(USMOperation.DELETE_DATASET, dataset.getApplicationName(), () -> USMServiceSupport.deleteDatasetRequest(dataset),
+                (response, messageId) -> USMServiceSupport.responseStatus(response, messageId, DeleteDatasetResponse.class, DeleteDatasetResponse::getResponse, "Unable to update Dataset."),
+                "Unable to update Dataset."));
+    }
+
+    /**
+     * Runs the operation of the datasets with at most the batch window of the call guard awaiting a reply, and
+     * completes when all of them have an outcome.
+     */
+    private CompletableFuture<List<DatasetOperationResult>> updateDatasets(List<DatasetExtension> datasets, Function<DatasetExtension, CompletableFuture<String>> operation) {
+        DatasetOperationResult[] results = new DatasetOperationResult[datasets.size()];
+        AtomicInteger next = new AtomicInteger();
+        int window = Math.min(datasets.size(), callGuard.getBatchWindow());
+        List<CompletableFuture<Void>> workers = new ArrayList<>(window);
+        for (int i = 0; i < window; i++) {
+            workers.add(updateNextDataset(datasets, next, operation, results));
+        }
+        return CompletableFuture.allOf(workers.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Set<String> applicationNames = new HashSet<>();
+            for (DatasetExtension dataset : datasets) {
+                applicationNames.add(dataset.getApplicationName());
+            }
+            applicationNames.forEach(this::evictApplication);
+            return Arrays.asList(results);
+        });
+    }
+
+    /**
+     * Runs the operation of the next dataset of the batch, then of the one after it once it has an outcome, and so on.
+     * Datasets whose outcome is known at once, as when the call guard refuses them, are handled in a loop rather than
+     * through nested stages, so that a batch failing at once does not grow the stack.
+     */
+    private CompletableFuture<Void> updateNextDataset(List<DatasetExtension> datasets, AtomicInteger next,
+                                                      Function<DatasetExtension, CompletableFuture<String>> operation, DatasetOperationResult[] results) {
+        for (int index = next.getAndIncrement(); index < datasets.size(); index = next.getAndIncrement()) {
+            int current = index;
+            DatasetExtension dataset = datasets.get(current);
+            CompletableFuture<String> status;
+            try {
+                status = operation.apply(dataset);
+            } catch (IllegalArgumentException e) {
+                status = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<Void> outcome = status.handle((result, error) -> {
+                results[current] = error == null ? DatasetOperationResult.success(dataset, result) : DatasetOperationResult.failure(dataset, toServiceException(error));
+                return null;
+            });
+            if (!outcome.isDone()) {
+                return outcome.thenCompose(done -> updateNextDataset(datasets, next, operation, results));
+            }
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
+    private void evictApplication(String applicationName) {
+        userContextCache.evictApplication(applicationName);
+        datasetCache.evictApplication(applicationName);
+    }
+
+    private static ServiceException toServiceException(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof ServiceException ? (ServiceException) cause : new ServiceException("Unable to update Dataset.", cause);
+    }
+
+    /**
+     * Sends a request to USM and handles its response on a managed thread once it has arrived.
+     *
+     * @param applicationName the application the request is about, as the metrics of the request are tagged with it
+     */
+    private <T> CompletableFuture<T> request(USMOperation operation, String applicationName, RequestPayload payload, ResponseHandler<T> handler, String errorMessage) {
+        String messageId;
+        try {
+            messageId = messageClient.sendMessage(payload.get(), operation, applicationName);
+            LOG.debug("JMS message with ID: {} is sent to USM.", messageId);
+        } catch (ModelMarshallException | JAXBException | JMSException e) {
+            return CompletableFuture.failedFuture(new ServiceException(errorMessage, e));
+        }
+        return messageClient.getResponse(messageId).handleAsync((response, error) -> {
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                throw new CompletionException(new ServiceException(errorMessage, cause));
+            }
+            try {
+                return handler.handle(response, messageId);
+            } catch (ServiceException e) {
+                throw new CompletionException(e);
+            } catch (JAXBException e) {
+                throw new CompletionException(new ServiceException(errorMessage, e));
+            }
+        }, executorService);
+    }
+
+    @FunctionalInterface
+    private interface RequestPayload {
+        String get() throws ModelMarshallException, JAXBException;
+    }
+
+    @FunctionalInterface
+    private interface ResponseHandler<T> {
+        T handle(String response, String messageId) throws ServiceException, JAXBException;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.wsdl.user.types.DatasetExtension;
+
+/**
+ * Outcome of the creation or deletion of one dataset of a batch.
+ */
+public final class DatasetOperationResult {
+
+    private final DatasetExtension dataset;
+    private final String status;
+    private final ServiceException error;
+
+    private DatasetOperationResult(DatasetExtension dataset, String status, ServiceException error) {
+        this.dataset = dataset;
+        this.status = status;
+        this.error = error;
+    }
+
+    static DatasetOperationResult success(DatasetExtension dataset, String status) {
+        return new DatasetOperationResult(dataset, status, null);
+    }
+
+    static DatasetOperationResult failure(DatasetExtension dataset, ServiceException error) {
+        return new DatasetOperationResult(dataset, null, error);
+    }
+
+    /**
+     * @return the dataset as given in the batch
+     */
+    public DatasetExtension getDataset() {
+        return dataset;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    /**
+     * @return the status USM answered with, or null if the operation failed
+     */
+    public String getStatus() {
+        return status;
+    }
+
+    /**
+     * @return why the operation failed, or null if it succeeded
+     */
+    public ServiceException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return "DatasetOperationResult{application=" + dataset.getApplicationName() + ", name=" + dataset.getName()
+                + (error == null ? ", status=" + status : ", error=" + error.getMessage()) + '}';
+    }
+}
@@ -0,0 +1,314 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.DependsOn;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
+import javax.jms.JMSException;
+import javax.xml.bind.JAXBException;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.jms.USMUnavailableException;
+import fish.focus.uvms.user.model.exception.ModelMarshallException;
+import fish.focus.uvms.user.model.mapper.UserModuleRequestMapper;
+import fish.focus.uvms.utils.CaseFolding;
+import fish.focus.wsdl.user.module.PutPreferenceResponse;
+import fish.focus.wsdl.user.types.UserPreference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Optional write-behind of the user preferences.
+ * <p>When enabled with the {@link #ENABLED_PROPERTY} system property, {@link USMServiceBean#putUserPreference} only
+ * records the preference here. Writes of the same user, application, role, scope and option within
+ * {@link #WINDOW_PROPERTY} milliseconds are coalesced and only the latest value is sent to USM. All the pending
+ * preferences are then sent together, and their responses awaited together.
+ * <p>A preference stays pending until USM has responded to it. Preferences that could not be sent, or that USM did not
+ * respond to, are sent again with the next flush. Until a preference has been written, {@link #getPendingValue}
+ * returns it so that readers of this node see their own writes. The pending preferences are flushed when the
+ * application stops, before the responses to USM stop being dispatched.
+ */
+@Singleton
+@DependsOn("USMResponseDispatcher")
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class PreferenceWriteBehind {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PreferenceWriteBehind.class);
+
+    public static final String ENABLED_PROPERTY = "usm4uvms.preferences.writeBehind.enabled";
+    public static final String WINDOW_PROPERTY = "usm4uvms.preferences.writeBehind.window";
+
+    private final boolean enabled;
+    private final long window;
+
+    @Inject
+    private USMMessageClient messageClient;
+
+    @Inject
+    private UserContextCache userContextCache;
+
+    @Inject
+    private USMCallGuard callGuard;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private final Map<Key, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    public PreferenceWriteBehind() {
+        this(Boolean.getBoolean(ENABLED_PROPERTY), Long.getLong(WINDOW_PROPERTY, 500L));
+    }
+
+    PreferenceWriteBehind(boolean enabled, long window) {
+        this.enabled = enabled;
+        this.window = window;
+    }
+
+    /**
+     * Records a preference to be written later.
+     *
+     * @return false if write-behind is disabled or stopped, the caller then has to write the preference itself
+     */
+    public boolean enqueue(UserPreference userPreference, String value) {
+        if (!enabled || closed) {
+            return false;
+        }
+        pendingWrites.put(new Key(userPreference.getUserName(), userPreference.getApplicationName(),
+                userPreference.getRoleName(), userPreference.getScopeName(), userPreference.getOptionName()), new PendingWrite(userPreference, value));
+        scheduleFlush();
+        return true;
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // the preferences stay pending until the next flush, at the latest when the application stops
+                flushScheduled.set(false);
+                LOG.warn("Unable to schedule the write of the user preferences to USM.", e);
+            }
+        }
+    }
+
+    /**
+     * @return the value of a preference that has not been written to USM yet, or null
+     */
+    public String getPendingValue(String username, String applicationName, String roleName, String scopeName, String optionName) {
+        if (pendingWrites.isEmpty()) {
+            return null;
+        }
+        PendingWrite pendingWrite = pendingWrites.get(new Key(username, applicationName, roleName, scopeName, optionName));
+        return pendingWrite == null ? null : pendingWrite.value;
+    }
+
+    public int getPendingCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * Writes all the pending preferences to USM and waits for their responses. As a batch of datasets, at most
+     * {@link USMCallGuard#getBatchWindow()} preferences await a response at the same time. Flushes do not overlap, so a
+     * preference is not sent twice. The preferences USM did not respond to, or that the call guard refused, stay
+     * pending and another flush is scheduled.
+     */
+    public synchronized void flush() {
+        flushScheduled.set(false);
+        List<Map.Entry<Key, PendingWrite>> batch = new ArrayList<>(pendingWrites.entrySet());
+        if (batch.isEmpty()) {
+            return;
+        }
+        Deque<SentWrite> inFlight = new ArrayDeque<>();
+        int window = callGuard.getBatchWindow();
+        int written = 0;
+        for (Map.Entry<Key, PendingWrite> entry : batch) {
+            if (inFlight.size() >= window && acknowledge(inFlight.poll())) {
+                written++;
+            }
+            try {
+                SentWrite sentWrite = send(entry.getKey(), entry.getValue());
+                if (sentWrite != null) {
+                    inFlight.add(sentWrite);
+                }
+            } catch (USMUnavailableException e) {
+                // the following preferences would be refused as well
+                LOG.warn("USM is unavailable, {} user preferences are sent again with the next flush.", pendingWrites.size(), e);
+                break;
+            }
+        }
+        for (SentWrite sentWrite : inFlight) {
+            if (acknowledge(sentWrite)) {
+                written++;
+            }
+        }
+        LOG.debug("Flushed {} of {} user preferences to USM.", written, batch.size());
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            LOG.error("{} user preferences could not be written to USM before stopping: {}", pendingWrites.size(), pendingWrites.keySet());
+        } else {
+            scheduleFlush();
+        }
+    }
+
+    /**
+     * @return the sent preference, or null if it could not be sent
+     * @throws USMUnavailableException if the call guard refused the preference
+     */
+    private SentWrite send(Key key, PendingWrite pendingWrite) throws USMUnavailableException {
+        try {
+            String messageId = messageClient.sendMessage(UserModuleRequestMapper.mapToPutUserPreferenceRequest(pendingWrite.userPreference), USMOperation.PUT_PREFERENCE, key.applicationName);
+            return new SentWrite(key, pendingWrite, messageId, messageClient.getResponse(messageId));
+        } catch (ModelMarshallException e) {
+            // sending it again would fail the same way
+            LOG.error("Unable to marshal user preference {}, it is dropped.", key, e);
+            pendingWrites.remove(key, pendingWrite);
+        } catch (USMUnavailableException e) {
+            throw e;
+        } catch (JMSException | RejectedExecutionException e) {
+            LOG.warn("Unable to send user preference {} to USM, it is sent again with the next flush.", key, e);
+        }
+        return null;
+    }
+
+    /**
+     * Removes a preference from the pending writes once USM has responded to it.
+     *
+     * @return true if USM has responded to the preference
+     */
+    private boolean acknowledge(SentWrite sentWrite) {
+        if (!awaitResponse(sentWrite)) {
+            return false;
+        }
+        // once the context is refetched it holds the written value, then the pending value is no longer needed
+        userContextCache.evict(sentWrite.key.username, sentWrite.key.applicationName);
+        pendingWrites.remove(sentWrite.key, sentWrite.pendingWrite);
+        return true;
+    }
+
+    /**
+     * @return true if USM has responded to the preference
+     */
+    private boolean awaitResponse(SentWrite sentWrite) {
+        try {
+            USMServiceSupport.logResponse(sentWrite.response.get(USMOperation.PUT_PREFERENCE.getTimeout(), TimeUnit.MILLISECONDS), sentWrite.messageId,
+                    PutPreferenceResponse.class, PutPreferenceResponse::getResponse);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Interrupted while writing user preference {} to USM, it is sent again with the next flush.", sentWrite.key, e);
+        } catch (ExecutionException | TimeoutException e) {
+            LOG.warn("No response from USM to user preference {}, it is sent again with the next flush.", sentWrite.key, e);
+        } catch (ServiceException | JAXBException e) {
+            // USM has responded, sending the same preference again would not change its response
+            LOG.error("Unable to write user preference {} to USM.", sentWrite.key, e);
+            return true;
+        }
+        return false;
+    }
+
+    @PreDestroy
+    public void stop() {
+        closed = true;
+        flush();
+    }
+
+    private static final class Key {
+        private final String username;
+        private final String applicationName;
+        private final String roleName;
+        private final String scopeName;
+        private final String optionName;
+
+        private Key(String username, String applicationName, String roleName, String scopeName, String optionName) {
+            this.username = username;
+            this.applicationName = applicationName;
+            // role and scope are matched ignoring case, as when the context is selected
+            this.roleName = roleName == null ? null : CaseFolding.fold(roleName);
+            this.scopeName = scopeName == null || scopeName.trim().isEmpty() ? null : CaseFolding.fold(scopeName);
+            this.optionName = optionName;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return Objects.equals(username, other.username) && Objects.equals(applicationName, other.applicationName)
+                    && Objects.equals(roleName, other.roleName) && Objects.equals(scopeName, other.scopeName)
+                    && Objects.equals(optionName, other.optionName);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(username, applicationName, roleName, scopeName, optionName);
+        }
+
+        @Override
+        public String toString() {
+            return optionName + " of " + username + " in " + applicationName + " (" + roleName + ", " + scopeName + ")";
+        }
+    }
+
+    private static final class PendingWrite {
+        private final UserPreference userPreference;
+        private final String value;
+
+        private PendingWrite(UserPreference userPreference, String value) {
+            this.userPreference = userPreference;
+            this.value = value;
+        }
+    }
+
+    private static final class SentWrite {
+        private final Key key;
+        private final PendingWrite pendingWrite;
+        private final String messageId;
+        private final CompletableFuture<String> response;
+
+        private SentWrite(Key key, PendingWrite pendingWrite, String messageId, CompletableFuture<String> response) {
+            this.key = key;
+            this.pendingWrite = pendingWrite;
+            this.messageId = messageId;
+            this.response = response;
+        }
+    }
+}
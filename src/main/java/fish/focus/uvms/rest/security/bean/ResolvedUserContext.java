@@ -0,0 +1,128 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.Objects;
+import javax.enterprise.context.RequestScoped;
+import fish.focus.uvms.cache.ContextDescriptor;
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
+import fish.focus.wsdl.user.types.Context;
+
+/**
+ * Remembers, for the duration of a request, the context last resolved by {@link USMServiceBean}, so that the
+ * AuthorizationFilter and the resources it protects resolve the same user, application, role and scope only once.
+ * <p>A context is only returned for exactly the same username, application, role and scope as it was resolved for.
+ */
+@RequestScoped
+public class ResolvedUserContext {
+
+    private String username;
+    private String applicationName;
+    private String roleName;
+    private String scopeName;
+    private Context context;
+    private AuthorizationSnapshot authorization;
+    private ContextDescriptor descriptor;
+
+    /**
+     * @return the context resolved earlier in this request, or null
+     */
+    public Context getContext(String username, String applicationName, String roleName, String scopeName) {
+        return matches(username, applicationName, roleName, scopeName) ? context : null;
+    }
+
+    /**
+     * @return the authorization resolved earlier in this request, or null
+     */
+    public AuthorizationSnapshot getAuthorization(String username, String applicationName, String roleName, String scopeName) {
+        return matches(username, applicationName, roleName, scopeName) ? authorization : null;
+    }
+
+    /**
+     * @return the authorization of the context resolved earlier in this request, or null if it is another context
+     */
+    public AuthorizationSnapshot getAuthorization(Context context) {
+        return context != null && this.context == context ? authorization : null;
+    }
+
+    /**
+     * @return true if the given context is the one resolved in this request
+     */
+    public boolean isResolved(Context context) {
+        return context != null && this.context == context;
+    }
+
+    /**
+     * @return the user of the context resolved in this request
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the application of the context resolved in this request
+     */
+    public String getApplicationName() {
+        return applicationName;
+    }
+
+    /**
+     * @return the indexes of the context resolved earlier in this request, or null if it is another context
+     */
+    public ContextDescriptor getDescriptor(Context context) {
+        return context != null && this.context == context ? descriptor : null;
+    }
+
+    public void setContext(String username, String applicationName, String roleName, String scopeName, Context context) {
+        if (!matches(username, applicationName, roleName, scopeName) || this.context != context) {
+            this.authorization = null;
+            this.descriptor = null;
+        }
+        this.username = username;
+        this.applicationName = applicationName;
+        this.roleName = roleName;
+        this.scopeName = scopeName;
+        this.context = context;
+    }
+
+    public void setAuthorization(String username, String applicationName, String roleName, String scopeName, AuthorizationSnapshot authorization) {
+        setContext(username, applicationName, roleName, scopeName, authorization.getContext());
+        this.authorization = authorization;
+    }
+
+    /**
+     * Sets the indexes of the context resolved in this request.
+     */
+    public void setDescriptor(ContextDescriptor descriptor) {
+        if (descriptor != null && descriptor.getContext() == context) {
+            this.descriptor = descriptor;
+        }
+    }
+
+    /**
+     * Forgets the resolved context, after it has been changed in USM.
+     */
+    public void clear() {
+        username = null;
+        applicationName = null;
+        roleName = null;
+        scopeName = null;
+        context = null;
+        authorization = null;
+        descriptor = null;
+    }
+
+    private boolean matches(String username, String applicationName, String roleName, String scopeName) {
+        return context != null && Objects.equals(this.username, username) && Objects.equals(this.applicationName, applicationName)
+                && Objects.equals(this.roleName, roleName) && Objects.equals(this.scopeName, scopeName);
+    }
+}
@@ -11,6 +11,7 @@ copy of the GNU General Public License along with the IFDM Suite. If not, see <h
  */
 package fish.focus.uvms.rest.security.bean;
 
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
 import fish.focus.wsdl.user.types.Application;
 import fish.focus.wsdl.user.types.Context;
 import fish.focus.wsdl.user.types.Dataset;
@@ -18,6 +19,7 @@ import fish.focus.wsdl.user.types.DatasetExtension;
 import fish.focus.wsdl.user.types.UserContext;
 import fish.focus.uvms.exception.ServiceException;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.transaction.Transactional;
 
@@ -55,13 +57,48 @@ public interface USMService {
                              String currentRole,
                              String currentScope) throws ServiceException;
 
+    /**
+     * Gets what the user may do in the context matching the role and scope.
+     * The snapshot is built once per fetched user context and shared, so checking a feature does not allocate.
+     *
+     * @param username
+     * @param applicationName
+     * @param currentRole
+     * @param currentScope
+     * @return the authorization snapshot of the context
+     * @throws ServiceException if the user context cannot be fetched or has no such context
+     */
+    AuthorizationSnapshot getAuthorization(String username,
+                                           String applicationName,
+                                           String currentRole,
+                                           String currentScope) throws ServiceException;
+
     String getUserPreference(String preferenceName, Context userContext) throws ServiceException;
 
+    /**
+     * Gets several preferences of a context at once.
+     *
+     * @param preferenceNames
+     * @param userContext
+     * @return the value of each preference the user has set, by preference name
+     * @throws ServiceException
+     */
+    Map<String, String> getUserPreferences(Set<String> preferenceNames, Context userContext) throws ServiceException;
+
     Context getUserContext(String username,
                            String applicationName,
                            String currentRole,
                            String currentScope) throws ServiceException;
 
+    /**
+     * Gets the descriptor of an application as deployed in USM.
+     * The descriptor is cached per application for a limited time (see ApplicationDescriptorCache) and refreshed when
+     * it is (re)deployed from this node, so the returned object is shared and must not be modified.
+     *
+     * @param applicationName
+     * @return the descriptor, or null if the application is not deployed
+     * @throws ServiceException
+     */
     Application getApplicationDefinition(String applicationName) throws ServiceException;
 
     void deployApplicationDescriptor(Application descriptor) throws ServiceException;
@@ -75,20 +112,82 @@ public interface USMService {
 
     List<Dataset> getDatasetsPerCategory(String category, String username, String applicationName, String currentRole, String currentScope) throws ServiceException;
 
+    /**
+     * Gets the datasets of a category (ignoring case) in a context.
+     * The datasets are indexed once per fetched context, so the returned list is shared and cannot be modified.
+     *
+     * @param category
+     * @param userContext
+     * @return
+     * @throws ServiceException
+     */
     List<Dataset> getDatasetsPerCategory(String category, Context userContext) throws ServiceException;
 
+    /**
+     * Gets the datasets of several categories at once, see {@link #getDatasetsPerCategory(String, Context)}.
+     *
+     * @param categories
+     * @param userContext
+     * @return the datasets of each category, by category as given
+     * @throws ServiceException
+     */
+    Map<String, List<Dataset>> getDatasetsPerCategories(Set<String> categories, Context userContext) throws ServiceException;
+
+    /**
+     * Tells whether the scope of a context holds a dataset.
+     *
+     * @param category    the category of the dataset, ignoring case
+     * @param datasetName
+     * @param userContext
+     * @return
+     * @throws ServiceException
+     */
+    boolean hasDataset(String category, String datasetName, Context userContext) throws ServiceException;
+
     @Transactional
     void createDataset(String applicationName, String datasetName, String discriminator, String category, String description)  throws ServiceException;
 
     @Transactional
     void deleteDataset(String applicationName, String datasetName) throws ServiceException;
 
+    /**
+     * Creates several datasets at once: the requests are sent to USM without waiting for the replies to the previous
+     * ones, up to the batch window of the USMCallGuard, so the batch takes a few round-trips instead of one per dataset.
+     *
+     * @param datasets the datasets to create, each with at least its application and name
+     * @return the outcome of each dataset, in the order given; a failed dataset does not stop the others
+     * @throws ServiceException
+     */
+    @Transactional
+    List<DatasetOperationResult> createDatasets(List<DatasetExtension> datasets) throws ServiceException;
+
+    /**
+     * Deletes several datasets at once, see {@link #createDatasets(List)}.
+     *
+     * @param datasets the datasets to delete, identified by their application and name
+     * @return the outcome of each dataset, in the order given
+     * @throws ServiceException
+     */
+    @Transactional
+    List<DatasetOperationResult> deleteDatasets(List<DatasetExtension> datasets) throws ServiceException;
+
 
+    /**
+     * Finds the datasets of an application by discriminator.
+     * The result is cached per application and discriminator for a limited time (see DatasetCache) and evicted when
+     * a dataset of the application is created or deleted through this service, so the returned list is shared and
+     * unmodifiable
+     * @param applicationName
+     * @param discriminator
+     * @return
+     * @throws ServiceException
+     */
     List<DatasetExtension> findDatasetsByDiscriminator(String applicationName, String discriminator) throws ServiceException;
 
     /**
      * This contains all user contexts available in USM for the given user.
-     * Be aware that the UserContext object is not cached and each call does a JMS call to USM
+     * The UserContext is cached per user and application for a limited time (see UserContextCache), so the
+     * returned object is shared and must not be modified
      * @param remoteUser
      * @param applicationName
      * @return
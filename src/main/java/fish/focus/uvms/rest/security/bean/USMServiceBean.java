@@ -17,88 +17,135 @@ import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.transaction.Transactional;
 import javax.xml.bind.JAXBException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import fish.focus.uvms.commons.message.impl.JAXBUtils;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+import fish.focus.uvms.cache.ApplicationDescriptor;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.CachedUserContext;
+import fish.focus.uvms.cache.ContextDescriptor;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.UserContextCache;
 import fish.focus.uvms.user.model.exception.ModelMarshallException;
 import fish.focus.uvms.user.model.mapper.UserModuleRequestMapper;
 import fish.focus.wsdl.user.module.CreateDatasetResponse;
 import fish.focus.wsdl.user.module.DeleteDatasetResponse;
 import fish.focus.wsdl.user.module.DeployApplicationResponse;
-import fish.focus.wsdl.user.module.FilterDatasetResponse;
-import fish.focus.wsdl.user.module.GetDeploymentDescriptorRequest;
-import fish.focus.wsdl.user.module.GetDeploymentDescriptorResponse;
-import fish.focus.wsdl.user.module.GetUserContextResponse;
 import fish.focus.wsdl.user.module.PutPreferenceResponse;
 import fish.focus.wsdl.user.module.RedeployApplicationResponse;
-import fish.focus.wsdl.user.module.UserModuleMethod;
 import fish.focus.wsdl.user.types.Application;
 import fish.focus.wsdl.user.types.Context;
 import fish.focus.wsdl.user.types.Dataset;
 import fish.focus.wsdl.user.types.DatasetExtension;
-import fish.focus.wsdl.user.types.DatasetFilter;
-import fish.focus.wsdl.user.types.Feature;
-import fish.focus.wsdl.user.types.Option;
-import fish.focus.wsdl.user.types.Preference;
 import fish.focus.wsdl.user.types.UserContext;
-import fish.focus.wsdl.user.types.UserContextId;
-import fish.focus.wsdl.user.types.UserFault;
 import fish.focus.wsdl.user.types.UserPreference;
 import fish.focus.uvms.exception.ServiceException;
-import fish.focus.uvms.jms.USMMessageConsumer;
-import fish.focus.uvms.jms.USMMessageProducer;
-import org.apache.commons.lang3.StringUtils;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.metrics.Monitored;
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Stateless
+@Monitored
 public class USMServiceBean implements USMService {
 
     private static final Logger LOG = LoggerFactory.getLogger(USMServiceBean.class);
-    private static final Long UVMS_USM_TIMEOUT = 30000L;
+
+    private static final String DATASET_ERROR = "Unable to update Dataset.";
+
+    @Inject
+    private USMMessageClient messageClient;
+
+    @Inject
+    private UserContextCache userContextCache;
+
+    @Inject
+    private ApplicationDescriptorCache applicationDescriptorCache;
+
+    @Inject
+    private DatasetCache datasetCache;
 
     @Inject
-    private USMMessageProducer messageProducer;
+    private USMCallGuard callGuard;
 
     @Inject
-    private USMMessageConsumer messageConsumer;
+    private ResolvedUserContext resolvedUserContext;
+
+    @Inject
+    private PreferenceWriteBehind preferenceWriteBehind;
 
     @Override
     public String getOptionDefaultValue(String optionName, String applicationName) throws ServiceException {
         LOG.debug("START getOptionDefaultValue({}, {})", optionName, applicationName);
-        Application application = getApplicationDefinition(applicationName);
-        String defaultOptionValue = null;
-        List<Option> allOptions = application.getOption();
-        for (Option opt : allOptions) {
-            if (opt.getName().equalsIgnoreCase(optionName)) {
-                defaultOptionValue = opt.getDefaultValue();
-                break;
-            }
+        ApplicationDescriptor descriptor = getApplicationDescriptor(applicationName);
+        if (descriptor == null) {
+            throw new ServiceException("Application " + applicationName + " is not deployed in USM.");
         }
-        return defaultOptionValue;
+        return descriptor.getOptionDefaultValue(optionName);
     }
 
     @Override
     public Context getUserContext(String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
         LOG.debug("START getUserContext({}, {}, {}, {})", username, applicationName, currentRole, currentScope);
-        Context context = null;
-        UserContext fullContext = getFullUserContext(username, applicationName);
-        if (fullContext != null) {
-            for (Context usmCtx : fullContext.getContextSet().getContexts()) {
-                if (isContextMatch(usmCtx, currentRole, currentScope)) {
-                   context = usmCtx;
-                   break;
-                }
-            }
-        }
+        Context context = resolvedUserContext.getContext(username, applicationName, currentRole, currentScope);
         if (context == null) {
-            throw new ServiceException("Context with the provided username, role and scope is not found.");
+            context = resolveUserContext(username, applicationName, currentRole, currentScope);
+            resolvedUserContext.setContext(username, applicationName, currentRole, currentScope, context);
+            CachedUserContext cached = userContextCache.getEntry(username, applicationName);
+            if (cached != null) {
+                resolvedUserContext.setDescriptor(cached.getDescriptor(context));
+            }
         }
         return context;
     }
 
+    private Context resolveUserContext(String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
+        CachedUserContext cached = userContextCache.getEntry(username, applicationName, () -> fetchFullUserContext(username, applicationName));
+        UserContext fullContext;
+        if (cached != null) {
+            fullContext = cached.getUserContext();
+        } else {
+            if (USMServiceSupport.USER_CONTEXT_STREAMING) {
+                return userContextCache.getContext(username, applicationName, currentRole, currentScope,
+                        () -> fetchUserContext(username, applicationName, currentRole, currentScope));
+            }
+            fullContext = getFullUserContext(username, applicationName);
+            cached = userContextCache.getEntry(username, applicationName);
+        }
+        return USMServiceSupport.findContext(cached, fullContext, currentRole, currentScope);
+    }
+
+    @Override
+    public AuthorizationSnapshot getAuthorization(String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
+        LOG.debug("START getAuthorization({}, {}, {}, {})", username, applicationName, currentRole, currentScope);
+        AuthorizationSnapshot authorization = resolvedUserContext.getAuthorization(username, applicationName, currentRole, currentScope);
+        if (authorization == null) {
+            Context userContext = getUserContext(username, applicationName, currentRole, currentScope);
+            CachedUserContext cached = userContextCache.getEntry(username, applicationName);
+            authorization = cached == null ? null : cached.getAuthorization(userContext);
+            if (authorization == null) {
+                // a streamed context is cached without its user context, and an evicted one is no longer cached
+                authorization = AuthorizationSnapshot.of(username, userContext);
+            }
+            resolvedUserContext.setAuthorization(username, applicationName, currentRole, currentScope, authorization);
+        }
+        return authorization;
+    }
+
     @Override
     public String getUserPreference(String preferenceName, String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
         LOG.debug("START getUserPreference({}, {}, {}, {}, {})", preferenceName, username, applicationName, currentRole, currentScope);
@@ -110,49 +157,90 @@ public class USMServiceBean implements USMService {
 
     @Override
     public String getUserPreference(String preferenceName, Context userContext) throws ServiceException {
-        String userPrefValue = null;
-        if (userContext != null) {
-            if (userContext.getPreferences() != null) {
-                List<Preference> listPrefs = userContext.getPreferences().getPreference();
-                for (Preference pref : listPrefs) {
-                    if (pref.getOptionName().equals(preferenceName)) {
-                        userPrefValue = pref.getOptionValue();
-                        break;
-                    }
-                }
+        if (userContext == null) {
+            return null;
+        }
+        String pendingValue = getPendingPreference(preferenceName, userContext);
+        return pendingValue != null ? pendingValue : describe(userContext).getPreference(preferenceName);
+    }
+
+    @Override
+    public Map<String, String> getUserPreferences(Set<String> preferenceNames, Context userContext) throws ServiceException {
+        LOG.debug("START getUserPreferences({}, {})", preferenceNames, userContext);
+        if (userContext == null) {
+            return Collections.emptyMap();
+        }
+        ContextDescriptor descriptor = describe(userContext);
+        Map<String, String> values = new HashMap<>();
+        for (String preferenceName : preferenceNames) {
+            String value = getPendingPreference(preferenceName, userContext);
+            if (value == null) {
+                value = descriptor.getPreference(preferenceName);
+            }
+            if (value != null) {
+                values.put(preferenceName, value);
             }
         }
-        return userPrefValue;
+        return values;
+    }
+
+    /**
+     * @return the value of a preference of the context resolved in this request that is still to be written to USM
+     */
+    private String getPendingPreference(String preferenceName, Context userContext) {
+        if (preferenceWriteBehind.getPendingCount() == 0 || !resolvedUserContext.isResolved(userContext)) {
+            return null;
+        }
+        return preferenceWriteBehind.getPendingValue(resolvedUserContext.getUsername(), resolvedUserContext.getApplicationName(),
+                userContext.getRole() == null ? null : userContext.getRole().getRoleName(),
+                userContext.getScope() == null ? null : userContext.getScope().getScopeName(), preferenceName);
+    }
+
+    /**
+     * @return the cached user context of the user and application resolved in this request, which holds the
+     * authorizations and descriptors of its contexts, or null
+     */
+    private CachedUserContext getResolvedEntry() {
+        String username = resolvedUserContext.getUsername();
+        return username == null ? null : userContextCache.getEntry(username, resolvedUserContext.getApplicationName());
+    }
+
+    /**
+     * @return the indexes of the context, precomputed by the cached user context when it is one of its contexts
+     */
+    private ContextDescriptor describe(Context userContext) {
+        ContextDescriptor descriptor = resolvedUserContext.getDescriptor(userContext);
+        if (descriptor == null) {
+            CachedUserContext cached = getResolvedEntry();
+            descriptor = cached == null ? null : cached.getDescriptor(userContext);
+            if (descriptor == null) {
+                descriptor = new ContextDescriptor(userContext);
+            }
+            resolvedUserContext.setDescriptor(descriptor);
+        }
+        return descriptor;
     }
 
     @Override
     public Application getApplicationDefinition(String applicationName) throws ServiceException {
         LOG.debug("START getApplicationDefinition({})", applicationName);
-        Application application = null;
-        GetDeploymentDescriptorRequest getDeploymentDescriptorRequest = new GetDeploymentDescriptorRequest();
-        getDeploymentDescriptorRequest.setMethod(UserModuleMethod.GET_DEPLOYMENT_DESCRIPTOR);
-        getDeploymentDescriptorRequest.setApplicationName(applicationName);
+        ApplicationDescriptor descriptor = getApplicationDescriptor(applicationName);
+        return descriptor == null ? null : descriptor.getApplication();
+    }
+
+    private ApplicationDescriptor getApplicationDescriptor(String applicationName) throws ServiceException {
+        return applicationDescriptorCache.get(applicationName, () -> fetchApplicationDefinition(applicationName));
+    }
+
+    private Application fetchApplicationDefinition(String applicationName) throws ServiceException {
         try {
-            String msgId = messageProducer.sendMessage(JAXBUtils.marshallJaxBObjectToString(getDeploymentDescriptorRequest), messageConsumer.getDestination());
+            String msgId = messageClient.sendMessage(USMServiceSupport.getDeploymentDescriptorRequest(applicationName), USMOperation.GET_DEPLOYMENT_DESCRIPTOR, applicationName);
             LOG.debug("JMS message with ID: {} is sent to USM.", msgId);
-            String response = messageConsumer.getMessageBody(msgId, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                GetDeploymentDescriptorResponse getDeploymentDescriptorResponse = JAXBUtils.unMarshallMessage(response, GetDeploymentDescriptorResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received.", msgId);
-                application = getDeploymentDescriptorResponse.getApplication();
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", msgId);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                    throw new ServiceException("Unable to receive a response from USM.");
-                }
-            }
+            String response = messageClient.receiveResponse(msgId);
+            return USMServiceSupport.toApplication(response, msgId);
         } catch (JMSException | JAXBException e) {
             throw new ServiceException("Unable to get Application Definition", e);
         }
-        return application;
     }
 
     @Override
@@ -160,29 +248,12 @@ public class USMServiceBean implements USMService {
     public void deployApplicationDescriptor(Application descriptor) throws ServiceException {
         LOG.debug("START deployApplicationDescriptor({})", descriptor);
         try {
-            String descriptorString = UserModuleRequestMapper.mapToDeployApplicationRequest(descriptor);
-            String msgId = messageProducer.sendMessage(descriptorString, messageConsumer.getDestination());
-            String response = messageConsumer.getMessageBody(msgId, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                DeployApplicationResponse deployApplicationResponse = JAXBUtils.unMarshallMessage(response, DeployApplicationResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received.", msgId);
-                if ("OK".equalsIgnoreCase(deployApplicationResponse.getResponse())) {
-                    LOG.info("Application successfully registered into USM.");
-                } else {
-                    throw new ServiceException("Unable to register into USM.");
-                }
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", msgId);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                    throw new ServiceException("Unable to register into USM.");
-                } else {
-                    throw new ServiceException("Unable to register into USM.");
-                }
-            }
-        } catch (JMSException | JAXBException | ModelMarshallException e) {
+            String descriptorString = USMServiceSupport.deployApplicationRequest(descriptor);
+            String msgId = messageClient.sendMessage(descriptorString, USMOperation.DEPLOY_APPLICATION, descriptor.getName());
+            String response = messageClient.receiveResponse(msgId);
+            USMServiceSupport.checkRegistered(response, msgId, DeployApplicationResponse.class, DeployApplicationResponse::getResponse);
+            applicationDescriptorCache.put(descriptor);
+        } catch (JMSException | JAXBException e) {
             throw new ServiceException("Unable to deploy Application descriptor", e);
         }
     }
@@ -192,30 +263,12 @@ public class USMServiceBean implements USMService {
         LOG.debug("START redeployApplicationDescriptor({})", deploymentDescriptor);
         try {
             String descriptorString = UserModuleRequestMapper.mapToRedeployApplicationRequest(deploymentDescriptor);
-            String msgId = messageProducer.sendMessage(descriptorString, messageConsumer.getDestination());
+            String msgId = messageClient.sendMessage(descriptorString, USMOperation.REDEPLOY_APPLICATION, deploymentDescriptor.getName());
             LOG.debug("JMS message with ID: {} is sent to USM.", msgId);
 
-            String response = messageConsumer.getMessageBody(msgId, String.class, UVMS_USM_TIMEOUT);
-
-            if (response != null && !isUserFault(response)) {
-                RedeployApplicationResponse redeployApplicationResponse = JAXBUtils.unMarshallMessage(response, RedeployApplicationResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received.", msgId);
-                if ("OK".equalsIgnoreCase(redeployApplicationResponse.getResponse())) {
-                    LOG.info("Application successfully registered into USM.");
-                } else {
-                    throw new ServiceException("Unable to register into USM.");
-                }
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", msgId);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                    throw new ServiceException("Unable to register into USM.");
-                } else {
-                    throw new ServiceException("Unable to register into USM.");
-                }
-            }
+            String response = messageClient.receiveResponse(msgId);
+            USMServiceSupport.checkRegistered(response, msgId, RedeployApplicationResponse.class, RedeployApplicationResponse::getResponse);
+            applicationDescriptorCache.put(deploymentDescriptor);
         } catch (JMSException | JAXBException | ModelMarshallException e) {
             throw new ServiceException("Unable to deploy Application descriptor", e);
         }
@@ -226,22 +279,9 @@ public class USMServiceBean implements USMService {
     @Transactional
     public void setOptionDefaultValue(String keyOption, String defaultValue, String applicationName) throws ServiceException {
         LOG.debug("START setOptionDefaultValue({}, {}, {})", keyOption, defaultValue, applicationName);
-        Application application = getApplicationDefinition(applicationName);
-        List<Option> optionList = application.getOption();
-        boolean isOptionAdd = true;
-        for (Option option : optionList) {
-            if (option.getName().equals(keyOption)) {
-                isOptionAdd = false;
-                option.setDefaultValue(defaultValue);
-                break;
-            }
-        }
-        if (isOptionAdd) {
-            Option option = new Option();
-            option.setName(keyOption);
-            option.setDefaultValue(defaultValue);
-            application.getOption().add(option);
-        }
+        // the descriptor is modified below, so never work on the cached instance
+        Application application = fetchApplicationDefinition(applicationName);
+        USMServiceSupport.setOptionDefaultValue(application, keyOption, defaultValue);
         redeployApplicationDescriptor(application);
     }
 
@@ -249,14 +289,14 @@ public class USMServiceBean implements USMService {
     @Transactional
     public void putUserPreference(String keyOption, String userDefinedValue, String applicationName, String scopeName, String roleName, String username) throws ServiceException {
         LOG.debug("START putUserPreference({} , {}, {}, {}, {}, {})", keyOption, userDefinedValue, applicationName, scopeName, roleName, username);
-        UserPreference userPreference = new UserPreference();
-        userPreference.setApplicationName(applicationName);
-        userPreference.setOptionName(keyOption);
-        userPreference.setOptionValue(userDefinedValue.getBytes());
-        userPreference.setScopeName(scopeName);
-        userPreference.setUserName(username);
-        userPreference.setRoleName(roleName);
+        UserPreference userPreference = USMServiceSupport.userPreference(keyOption, userDefinedValue, applicationName, scopeName, roleName, username);
+        if (preferenceWriteBehind.enqueue(userPreference, userDefinedValue)) {
+            LOG.debug("User preference {} will be written to USM with the next flush.", keyOption);
+            return;
+        }
         putUserPreference(userPreference);
+        userContextCache.evict(username, applicationName);
+        resolvedUserContext.clear();
     }
 
     private void putUserPreference(UserPreference userPreference) throws ServiceException {
@@ -264,20 +304,10 @@ public class USMServiceBean implements USMService {
         String payload;
         try {
             payload = UserModuleRequestMapper.mapToPutUserPreferenceRequest(userPreference);
-            String messageID = messageProducer.sendMessage(payload, messageConsumer.getDestination());
+            String messageID = messageClient.sendMessage(payload, USMOperation.PUT_PREFERENCE, userPreference.getApplicationName());
             LOG.debug("JMS message with ID: {} is successfully sent to USM.", messageID);
-            String response = messageConsumer.getMessageBody(messageID, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                PutPreferenceResponse putPreferenceResponse = JAXBUtils.unMarshallMessage(response, PutPreferenceResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received. The response is: {}", messageID, putPreferenceResponse.getResponse());
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", messageID);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                }
-            }
+            String response = messageClient.receiveResponse(messageID);
+            USMServiceSupport.logResponse(response, messageID, PutPreferenceResponse.class, PutPreferenceResponse::getResponse);
         } catch (ModelMarshallException | JMSException | JAXBException e) {
             throw new ServiceException("Unable to set user preference into USM.", e);
         }
@@ -294,51 +324,43 @@ public class USMServiceBean implements USMService {
     @Override
     public List<Dataset> getDatasetsPerCategory(String category, Context userContext) throws ServiceException {
         LOG.debug("START getDatasetsPerCategory({}, {})", category, userContext);
-        List<Dataset> filteredDatasets = new LinkedList<>();
-        if (userContext != null) {
-            List<Dataset> datasetList = userContext.getScope().getDataset();
-
-            for (Dataset dataset : datasetList) {
-                if (dataset.getCategory().equalsIgnoreCase(category)) {
-                    filteredDatasets.add(dataset);
-                }
-            }
-        }
+        List<Dataset> filteredDatasets = userContext == null ? Collections.<Dataset>emptyList() : describe(userContext).getDatasets(category);
         LOG.debug("END getDatasetsPerCategory(...), return {} datasets.", filteredDatasets.size());
         return filteredDatasets;
     }
 
+    @Override
+    public Map<String, List<Dataset>> getDatasetsPerCategories(Set<String> categories, Context userContext) throws ServiceException {
+        LOG.debug("START getDatasetsPerCategories({}, {})", categories, userContext);
+        Map<String, List<Dataset>> datasets = new HashMap<>();
+        ContextDescriptor descriptor = userContext == null ? null : describe(userContext);
+        for (String category : categories) {
+            datasets.put(category, descriptor == null ? Collections.<Dataset>emptyList() : descriptor.getDatasets(category));
+        }
+        return datasets;
+    }
+
+    @Override
+    public boolean hasDataset(String category, String datasetName, Context userContext) throws ServiceException {
+        return userContext != null && describe(userContext).getDataset(category, datasetName) != null;
+    }
+
     @Override
     @Transactional
     public void createDataset(String applicationName, String datasetName, String discriminator, String category, String description) throws ServiceException {
         LOG.debug("START createDataset({}, {}, {}, {}, {})", applicationName, datasetName, discriminator, category, description);
-        if (StringUtils.isEmpty(applicationName) || StringUtils.isEmpty(datasetName)) {
-            throw new IllegalArgumentException("Application name, nor dataset name cannot be null");
-        }
         try {
-            DatasetExtension dataset = new DatasetExtension();
-            dataset.setApplicationName(applicationName);
-            dataset.setDiscriminator(discriminator);
-            dataset.setName(datasetName);
-            dataset.setCategory(category);
-            dataset.setDescription(description);
-            String payload = UserModuleRequestMapper.mapToCreateDatasetRequest(dataset);
-            String messageID = messageProducer.sendMessage(payload, messageConsumer.getDestination());
+            String payload = USMServiceSupport.createDatasetRequest(applicationName, datasetName, discriminator, category, description);
+            String messageID = messageClient.sendMessage(payload, USMOperation.CREATE_DATASET, applicationName);
             LOG.debug("JMS message with ID: {} is sent to USM.", messageID);
-            String response = messageConsumer.getMessageBody(messageID, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                CreateDatasetResponse createDatasetResponse = JAXBUtils.unMarshallMessage(response, CreateDatasetResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received. The response is: {}", messageID, createDatasetResponse.getResponse());
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", messageID);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                }
-            }
+            String response = messageClient.receiveResponse(messageID);
+            USMServiceSupport.logResponse(response, messageID, CreateDatasetResponse.class, CreateDatasetResponse::getResponse);
         } catch (ModelMarshallException | JMSException | JAXBException e) {
             throw new ServiceException("Unable to update Dataset.", e);
+        } finally {
+            userContextCache.evictApplication(applicationName);
+            datasetCache.evictApplication(applicationName);
+            resolvedUserContext.clear();
         }
     }
 
@@ -347,25 +369,85 @@ public class USMServiceBean implements USMService {
     public void deleteDataset(String applicationName, String datasetName) throws ServiceException {
         LOG.debug("START deleteDataset({}, {}", applicationName, datasetName);
         try {
-            DatasetExtension dataset = new DatasetExtension();
-            dataset.setApplicationName(applicationName);
-            dataset.setName(datasetName);
-            String payload = UserModuleRequestMapper.mapToDeleteDatasetRequest(dataset);
-            String messageID = messageProducer.sendMessage(payload, messageConsumer.getDestination());
+            String payload = USMServiceSupport.deleteDatasetRequest(applicationName, datasetName);
+            String messageID = messageClient.sendMessage(payload, USMOperation.DELETE_DATASET, applicationName);
             LOG.debug("JMS message with ID: {} is sent to USM.", messageID);
-            String response = messageConsumer.getMessageBody(messageID, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                DeleteDatasetResponse deleteDatasetResponse = JAXBUtils.unMarshallMessage(response, DeleteDatasetResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received. The response is: {}", messageID, deleteDatasetResponse.getResponse());
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", messageID);
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                }
-            }
+            String response = messageClient.receiveResponse(messageID);
+            USMServiceSupport.logResponse(response, messageID, DeleteDatasetResponse.class, DeleteDatasetResponse::getResponse);
         } catch (ModelMarshallException | JMSException | JAXBException e) {
             throw new ServiceException("Unable to update Dataset.", e);
+        } finally {
+            userContextCache.evictApplication(applicationName);
+            datasetCache.evictApplication(applicationName);
+            resolvedUserContext.clear();
+        }
+    }
+
+    @Override
+    @Transactional
+    public List<DatasetOperationResult> createDatasets(List<DatasetExtension> datasets) {
+        LOG.debug("START createDatasets({} datasets)", datasets.size());
+        return updateDatasets(datasets, USMOperation.CREATE_DATASET, USMServiceSupport::createDatasetRequest, CreateDatasetResponse.class, CreateDatasetResponse::getResponse);
+    }
+
+    @Override
+    @Transactional
+    public List<DatasetOperationResult> deleteDatasets(List<DatasetExtension> datasets) {
+        LOG.debug("START deleteDatasets({} datasets)", datasets.size());
+        return updateDatasets(datasets, USMOperation.DELETE_DATASET, USMServiceSupport::deleteDatasetRequest, DeleteDatasetResponse.class, DeleteDatasetResponse::getResponse);
+    }
+
+    /**
+     * Sends the requests without waiting for their replies, with at most the batch window of the call guard awaiting
+     * a reply, then collects the remaining replies.
+     */
+    private <T> List<DatasetOperationResult> updateDatasets(List<DatasetExtension> datasets, USMOperation operation, DatasetRequest request, Class<T> responseType, Function<T, String> status) {
+        List<DatasetOperationResult> results = new ArrayList<>(Collections.nCopies(datasets.size(), null));
+        Deque<PendingDataset> inFlight = new ArrayDeque<>();
+        int window = callGuard.getBatchWindow();
+        Set<String> applicationNames = new HashSet<>();
+        try {
+            for (int i = 0; i < datasets.size(); i++) {
+                if (inFlight.size() >= window) {
+                    PendingDataset pending = inFlight.poll();
+                    results.set(pending.index, awaitDataset(pending, responseType, status));
+                }
+                DatasetExtension dataset = datasets.get(i);
+                applicationNames.add(dataset.getApplicationName());
+                try {
+                    String messageId = messageClient.sendMessage(request.get(dataset), operation, dataset.getApplicationName());
+                    LOG.debug("JMS message with ID: {} is sent to USM.", messageId);
+                    inFlight.add(new PendingDataset(i, dataset, messageId, messageClient.getResponse(messageId),
+                            System.currentTimeMillis() + operation.getTimeout()));
+                } catch (ModelMarshallException | JMSException | IllegalArgumentException e) {
+                    results.set(i, DatasetOperationResult.failure(dataset, new ServiceException(DATASET_ERROR, e)));
+                }
+            }
+            for (PendingDataset pending : inFlight) {
+                results.set(pending.index, awaitDataset(pending, responseType, status));
+            }
+        } finally {
+            for (String applicationName : applicationNames) {
+                userContextCache.evictApplication(applicationName);
+                datasetCache.evictApplication(applicationName);
+            }
+            resolvedUserContext.clear();
+        }
+        return results;
+    }
+
+    private <T> DatasetOperationResult awaitDataset(PendingDataset pending, Class<T> responseType, Function<T, String> status) {
+        DatasetExtension dataset = pending.dataset;
+        try {
+            String body = pending.response.get(Math.max(0L, pending.deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            return DatasetOperationResult.success(dataset, USMServiceSupport.responseStatus(body, pending.messageId, responseType, status, DATASET_ERROR));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return DatasetOperationResult.failure(dataset, new ServiceException("Interrupted while waiting for USM", e));
+        } catch (ExecutionException | TimeoutException | JAXBException e) {
+            return DatasetOperationResult.failure(dataset, new ServiceException(DATASET_ERROR, e));
+        } catch (ServiceException e) {
+            return DatasetOperationResult.failure(dataset, e);
         }
     }
 
@@ -373,64 +455,55 @@ public class USMServiceBean implements USMService {
     @Override
     public List<DatasetExtension> findDatasetsByDiscriminator(String applicationName, String discriminator) throws ServiceException {
         LOG.debug("START findDatasetByDiscriminator({}, {}", applicationName, discriminator);
-        List<DatasetExtension> listToReturn = null;
+        List<DatasetExtension> listToReturn = datasetCache.get(applicationName, discriminator, () -> fetchDatasets(applicationName, discriminator));
+        LOG.debug("END findDatasetByDiscriminator(...), returning {}", listToReturn);
+        return listToReturn;
+    }
+
+    private List<DatasetExtension> fetchDatasets(String applicationName, String discriminator) throws ServiceException {
         try {
-            DatasetFilter datasetFilter = new DatasetFilter();
-            datasetFilter.setApplicationName(applicationName);
-            datasetFilter.setDiscriminator(discriminator);
-            String payload = UserModuleRequestMapper.mapToFindDatasetRequest(datasetFilter);
-            String messageID = messageProducer.sendMessage(payload, messageConsumer.getDestination());
+            String payload = USMServiceSupport.findDatasetsRequest(applicationName, discriminator);
+            String messageID = messageClient.sendMessage(payload, USMOperation.FIND_DATASETS, applicationName);
             LOG.debug("JMS message with ID: {} is sent to USM.", messageID);
-            String response = messageConsumer.getMessageBody(messageID, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                FilterDatasetResponse filterDatasetResponse = JAXBUtils.unMarshallMessage(response, FilterDatasetResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received. The response is: {}", messageID, filterDatasetResponse.getDatasetList().getList());
-                listToReturn = filterDatasetResponse.getDatasetList().getList();
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", messageID);
-
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                }
-            }
+            String response = messageClient.receiveResponse(messageID);
+            return USMServiceSupport.toDatasets(response, messageID);
         } catch (ModelMarshallException | JMSException | JAXBException e) {
             throw new ServiceException("Unable to update Dataset.", e);
         }
-        LOG.debug("END findDatasetByDiscriminator(...), returning {}", listToReturn);
-        return listToReturn;
     }
 
 
     @Override
     public UserContext getFullUserContext(String remoteUser, String applicationName) throws ServiceException {
         LOG.debug("START getFullUserContext({}, {})", remoteUser, applicationName);
-        UserContext userContext = null;
-        UserContextId contextId = new UserContextId();
-        contextId.setApplicationName(applicationName);
-        contextId.setUserName(remoteUser);
-        String payload;
+        return userContextCache.get(remoteUser, applicationName, () -> fetchFullUserContext(remoteUser, applicationName));
+    }
+
+    private UserContext fetchFullUserContext(String remoteUser, String applicationName) throws ServiceException {
         try {
-            payload = UserModuleRequestMapper.mapToGetUserContextRequest(contextId);
-            String messageID = messageProducer.sendMessage(payload, messageConsumer.getDestination());
+            String payload = USMServiceSupport.getUserContextRequest(remoteUser, applicationName);
+            String messageID = messageClient.sendMessage(payload, USMOperation.GET_USER_CONTEXT, applicationName);
             LOG.debug("JMS message with ID: {} is sent to USM.", messageID);
-            String response = messageConsumer.getMessageBody(messageID, String.class, UVMS_USM_TIMEOUT);
-            if (response != null && !isUserFault(response)) {
-                GetUserContextResponse userContextResponse = JAXBUtils.unMarshallMessage(response, GetUserContextResponse.class);
-                LOG.debug("Response concerning message with ID: {} is received.", messageID);
-                userContext = userContextResponse.getContext();
-            } else {
-                LOG.error("Error occurred while receiving JMS response for message ID: {}", messageID);
-                if (response != null) {
-                    UserFault error = JAXBUtils.unMarshallMessage(response, UserFault.class);
-                    LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
-                    throw new ServiceException("Unable to receive a response from USM.");
-                }
-            }
-        } catch (ModelMarshallException | JMSException | JAXBException e) {
+            String response = messageClient.receiveResponse(messageID);
+            return USMServiceSupport.toUserContext(response, messageID);
+        } catch (JMSException | JAXBException e) {
+            throw new ServiceException("Unexpected exception while trying to get user context.", e);
+        }
+    }
+
+    /**
+     * Reads only the context matching the role and scope from USM.
+     */
+    private Context fetchUserContext(String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
+        try {
+            String payload = USMServiceSupport.getUserContextRequest(username, applicationName);
+            String messageID = messageClient.sendMessage(payload, USMOperation.GET_USER_CONTEXT, applicationName);
+            LOG.debug("JMS message with ID: {} is sent to USM.", messageID);
+            String response = messageClient.receiveResponse(messageID);
+            return USMServiceSupport.toContext(response, messageID, currentRole, currentScope);
+        } catch (JMSException | JAXBException e) {
             throw new ServiceException("Unexpected exception while trying to get user context.", e);
         }
-        return userContext;
     }
 
     @Override
@@ -439,46 +512,42 @@ public class USMServiceBean implements USMService {
         if (userContext == null) {
             return null;
         }
-        List<Feature> features = userContext.getRole().getFeature();
-        Set<String> featuresStr = new HashSet<>(features.size());
-        //extract only the features that the particular application is interested in
-        for (Feature feature : features) {
-            featuresStr.add(feature.getName());
+        AuthorizationSnapshot authorization = resolvedUserContext.getAuthorization(userContext);
+        if (authorization == null) {
+            CachedUserContext cached = getResolvedEntry();
+            authorization = cached == null ? null : cached.getAuthorization(userContext);
         }
+        if (authorization == null) {
+            authorization = AuthorizationSnapshot.of(username, userContext);
+        }
+        Set<String> featuresStr = authorization.getFeatureNames();
         LOG.debug("END getUserFeatures(...), returns {} ", featuresStr);
         return featuresStr;
     }
 
     @Override
     public Set<String> getUserFeatures(String username, String applicationName, String currentRole, String currentScope) throws ServiceException {
-        Context ctxt = getUserContext(username, applicationName, currentRole, currentScope);
-        return getUserFeatures(username, ctxt);
+        return getAuthorization(username, applicationName, currentRole, currentScope).getFeatureNames();
     }
 
-    private boolean isUserFault(String message) {
-        boolean isErrorResponse = false;
-        try {
-            JAXBUtils.unMarshallMessage(message, UserFault.class);
-            isErrorResponse = true;
-        } catch (JAXBException e) {
-            //do nothing  since it's not a UserFault
-        }
-        return isErrorResponse;
+    @FunctionalInterface
+    private interface DatasetRequest {
+        String get(DatasetExtension dataset) throws ModelMarshallException;
     }
 
-
-    private boolean isContextMatch(Context usmCtx, String currentRole, String currentScope) {
-        boolean isContextMatch = false;
-        if (usmCtx.getRole().getRoleName().equalsIgnoreCase(currentRole)) {
-            isContextMatch = true;
-        }
-        //check if our user has a scope (it is possible to have a context without a scope)
-        if (StringUtils.isNotBlank(currentScope)) {
-            if (usmCtx.getScope() == null || !usmCtx.getScope().getScopeName().equalsIgnoreCase(currentScope)) {
-                isContextMatch = false;
-            }
+    private static final class PendingDataset {
+        private final int index;
+        private final DatasetExtension dataset;
+        private final String messageId;
+        private final CompletableFuture<String> response;
+        private final long deadline;
+
+        private PendingDataset(int index, DatasetExtension dataset, String messageId, CompletableFuture<String> response, long deadline) {
+            this.index = index;
+            this.dataset = dataset;
+            this.messageId = messageId;
+            this.response = response;
+            this.deadline = deadline;
         }
-        return isContextMatch;
     }
-
-}
\ No newline at end of file
+}
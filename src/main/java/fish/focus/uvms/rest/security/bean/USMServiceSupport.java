@@ -0,0 +1,520 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.function.Function;
+import javax.xml.bind.JAXBException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+import fish.focus.uvms.cache.CachedUserContext;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.user.model.exception.ModelMarshallException;
+import fish.focus.uvms.user.model.mapper.UserModuleRequestMapper;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.uvms.utils.UserFaults;
+import fish.focus.wsdl.user.module.CreateDatasetResponse;
+import fish.focus.wsdl.user.module.DeleteDatasetResponse;
+import fish.focus.wsdl.user.module.DeployApplicationRequest;
+import fish.focus.wsdl.user.module.DeployApplicationResponse;
+import fish.focus.wsdl.user.module.FilterDatasetResponse;
+import fish.focus.wsdl.user.module.GetDeploymentDescriptorRequest;
+import fish.focus.wsdl.user.module.GetDeploymentDescriptorResponse;
+import fish.focus.wsdl.user.module.GetUserContextRequest;
+import fish.focus.wsdl.user.module.GetUserContextResponse;
+import fish.focus.wsdl.user.module.PutPreferenceResponse;
+import fish.focus.wsdl.user.module.RedeployApplicationResponse;
+import fish.focus.wsdl.user.module.UserModuleMethod;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.DatasetFilter;
+import fish.focus.wsdl.user.types.Option;
+import fish.focus.wsdl.user.types.UserContext;
+import fish.focus.wsdl.user.types.UserContextId;
+import fish.focus.wsdl.user.types.UserFault;
+import fish.focus.wsdl.user.types.UserPreference;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Builds the USM requests and interprets the USM responses, for both {@link USMServiceBean} and
+ * {@link AsyncUSMServiceBean}.
+ */
+final class USMServiceSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(USMServiceSupport.class);
+
+    static final String UNABLE_TO_RECEIVE = "Unable to receive a response from USM.";
+    static final String UNABLE_TO_REGISTER = "Unable to register into USM.";
+    static final String CONTEXT_NOT_FOUND = "Context with the provided username, role and scope is not found.";
+
+    static final boolean USER_CONTEXT_STREAMING = Boolean.getBoolean(AuthConstants.USER_CONTEXT_STREAMING_PROPERTY);
+
+    // local names of the GetUserContextResponse elements read while streaming
+    private static final String CONTEXT_SET_ELEMENT = "contextSet";
+    private static final String CONTEXT_ELEMENT = "contexts";
+    private static final String ROLE_ELEMENT = "role";
+    private static final String ROLE_NAME_ELEMENT = "roleName";
+    private static final String SCOPE_ELEMENT = "scope";
+    private static final String SCOPE_NAME_ELEMENT = "scopeName";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+    private static final XMLOutputFactory XML_OUTPUT_FACTORY = createXMLOutputFactory();
+
+    static {
+        JAXBContextRegistry.preload(GetUserContextResponse.class, GetDeploymentDescriptorResponse.class,
+                FilterDatasetResponse.class, UserFault.class, Context.class, GetDeploymentDescriptorRequest.class,
+                PutPreferenceResponse.class, CreateDatasetResponse.class, DeleteDatasetResponse.class,
+                DeployApplicationResponse.class, RedeployApplicationResponse.class, GetUserContextRequest.class,
+                DeployApplicationRequest.class);
+    }
+
+    private USMServiceSupport() {
+    }
+
+    static String getDeploymentDescriptorRequest(String applicationName) throws JAXBException {
+        GetDeploymentDescriptorRequest getDeploymentDescriptorRequest = new GetDeploymentDescriptorRequest();
+        getDeploymentDescriptorRequest.setMethod(UserModuleMethod.GET_DEPLOYMENT_DESCRIPTOR);
+        getDeploymentDescriptorRequest.setApplicationName(applicationName);
+        return JAXBContextRegistry.marshal(getDeploymentDescriptorRequest);
+    }
+
+    static String getUserContextRequest(String username, String applicationName) throws JAXBException {
+        UserContextId contextId = new UserContextId();
+        contextId.setApplicationName(applicationName);
+        contextId.setUserName(username);
+        GetUserContextRequest getUserContextRequest = new GetUserContextRequest();
+        getUserContextRequest.setMethod(UserModuleMethod.GET_USER_CONTEXT);
+        getUserContextRequest.setContextId(contextId);
+        return JAXBContextRegistry.marshal(getUserContextRequest);
+    }
+
+    static String deployApplicationRequest(Application descriptor) throws JAXBException {
+        DeployApplicationRequest deployApplicationRequest = new DeployApplicationRequest();
+        deployApplicationRequest.setMethod(UserModuleMethod.DEPLOY_APPLICATION);
+        deployApplicationRequest.setApplication(descriptor);
+        return JAXBContextRegistry.marshal(deployApplicationRequest);
+    }
+
+    static UserPreference userPreference(String keyOption, String userDefinedValue, String applicationName, String scopeName, String roleName, String username) {
+        UserPreference userPreference = new UserPreference();
+        userPreference.setApplicationName(applicationName);
+        userPreference.setOptionName(keyOption);
+        userPreference.setOptionValue(userDefinedValue.getBytes());
+        userPreference.setScopeName(scopeName);
+        userPreference.setUserName(username);
+        userPreference.setRoleName(roleName);
+        return userPreference;
+    }
+
+    static String createDatasetRequest(String applicationName, String datasetName, String discriminator, String category, String description) throws ModelMarshallException {
+        if (StringUtils.isEmpty(applicationName) || StringUtils.isEmpty(datasetName)) {
+            throw new IllegalArgumentException("Application name, nor dataset name cannot be null");
+        }
+        DatasetExtension dataset = new DatasetExtension();
+        dataset.setApplicationName(applicationName);
+        dataset.setDiscriminator(discriminator);
+        dataset.setName(datasetName);
+        dataset.setCategory(category);
+        dataset.setDescription(description);
+        return UserModuleRequestMapper.mapToCreateDatasetRequest(dataset);
+    }
+
+    static String createDatasetRequest(DatasetExtension dataset) throws ModelMarshallException {
+        if (StringUtils.isEmpty(dataset.getApplicationName()) || StringUtils.isEmpty(dataset.getName())) {
+            throw new IllegalArgumentException("Application name, nor dataset name cannot be null");
+        }
+        return UserModuleRequestMapper.mapToCreateDatasetRequest(dataset);
+    }
+
+    static String deleteDatasetRequest(String applicationName, String datasetName) throws ModelMarshallException {
+        DatasetExtension dataset = new DatasetExtension();
+        dataset.setApplicationName(applicationName);
+        dataset.setName(datasetName);
+        return UserModuleRequestMapper.mapToDeleteDatasetRequest(dataset);
+    }
+
+    static String deleteDatasetRequest(DatasetExtension dataset) throws ModelMarshallException {
+        return deleteDatasetRequest(dataset.getApplicationName(), dataset.getName());
+    }
+
+    static String findDatasetsRequest(String applicationName, String discriminator) throws ModelMarshallException {
+        DatasetFilter datasetFilter = new DatasetFilter();
+        datasetFilter.setApplicationName(applicationName);
+        datasetFilter.setDiscriminator(discriminator);
+        return UserModuleRequestMapper.mapToFindDatasetRequest(datasetFilter);
+    }
+
+    static Application toApplication(String response, String messageId) throws ServiceException, JAXBException {
+        GetDeploymentDescriptorResponse getDeploymentDescriptorResponse = unmarshal(response, messageId, GetDeploymentDescriptorResponse.class, UNABLE_TO_RECEIVE);
+        return getDeploymentDescriptorResponse == null ? null : getDeploymentDescriptorResponse.getApplication();
+    }
+
+    static UserContext toUserContext(String response, String messageId) throws ServiceException, JAXBException {
+        GetUserContextResponse userContextResponse = unmarshal(response, messageId, GetUserContextResponse.class, UNABLE_TO_RECEIVE);
+        return userContextResponse == null ? null : userContextResponse.getContext();
+    }
+
+    /**
+     * Reads only the context matching the role and scope out of a GetUserContextResponse. The response is scanned with
+     * StAX; the other contexts are skipped without being unmarshalled.
+     *
+     * @throws ServiceException if USM answered with a UserFault or the user has no such context
+     */
+    static Context toContext(String response, String messageId, String currentRole, String currentScope) throws ServiceException, JAXBException {
+        Context context = null;
+        if (response == null) {
+            fault(null, messageId, UNABLE_TO_RECEIVE);
+        } else {
+            try {
+                context = selectContext(response, currentRole, currentScope);
+            } catch (XMLStreamException e) {
+                throw new JAXBException(e);
+            }
+            // a UserFault has no context, so it is only looked for when no context was found
+            if (context == null && isUserFault(response)) {
+                fault(response, messageId, UNABLE_TO_RECEIVE);
+            }
+            LOG.debug("Response concerning message with ID: {} is received.", messageId);
+        }
+        if (context == null) {
+            throw new ServiceException(CONTEXT_NOT_FOUND);
+        }
+        return context;
+    }
+
+    /**
+     * Selects and unmarshals the first context matching the role and scope in a single pass over the response. Each
+     * context is copied while its role and scope are read, and only the copy of the matching one is unmarshalled.
+     *
+     * @return the matching context, or null if there is none
+     */
+    static Context selectContext(String response, String currentRole, String currentScope) throws XMLStreamException, JAXBException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(response));
+        try {
+            boolean inContextSet = false;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    if (!inContextSet) {
+                        inContextSet = CONTEXT_SET_ELEMENT.equals(reader.getLocalName());
+                    } else if (CONTEXT_ELEMENT.equals(reader.getLocalName())) {
+                        String context = copyContext(reader, currentRole, currentScope);
+                        if (context != null) {
+                            return unmarshalContext(context);
+                        }
+                    } else {
+                        skipElement(reader, 1);
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && inContextSet) {
+                    return null;
+                }
+            }
+            return null;
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Copies the context the reader is positioned on, and leaves the reader on its end element. The copy is abandoned
+     * as soon as the role of the context does not match.
+     *
+     * @return the copy of the context, or null if it does not match the role and scope
+     */
+    private static String copyContext(XMLStreamReader reader, String currentRole, String currentScope) throws XMLStreamException {
+        StringWriter context = new StringWriter();
+        XMLStreamWriter writer = XML_OUTPUT_FACTORY.createXMLStreamWriter(context);
+        String roleName = null;
+        String scopeName = null;
+        boolean hasScope = false;
+        String child = null;
+        writeStartElement(reader, writer);
+        // the context is at depth 1, its role and scope at depth 2 and their names at depth 3
+        int depth = 1;
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String name = reader.getLocalName();
+                writeStartElement(reader, writer);
+                if (depth == 2) {
+                    child = name;
+                    hasScope |= SCOPE_ELEMENT.equals(name);
+                } else if (depth == 3 && ROLE_ELEMENT.equals(child) && ROLE_NAME_ELEMENT.equals(name)) {
+                    roleName = copyElementText(reader, writer);
+                    depth--;
+                    if (!isContextMatch(roleName, null, currentRole, null)) {
+                        skipElement(reader, depth);
+                        return null;
+                    }
+                } else if (depth == 3 && SCOPE_ELEMENT.equals(child) && SCOPE_NAME_ELEMENT.equals(name)) {
+                    scopeName = copyElementText(reader, writer);
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+                writer.writeEndElement();
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE) {
+                writer.writeCharacters(reader.getText());
+            }
+        }
+        writer.close();
+        return isContextMatch(roleName, hasScope ? scopeName : null, currentRole, currentScope) ? context.toString() : null;
+    }
+
+    private static void writeStartElement(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        writer.writeStartElement(StringUtils.defaultString(reader.getPrefix()), reader.getLocalName(), StringUtils.defaultString(reader.getNamespaceURI()));
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            writer.writeAttribute(StringUtils.defaultString(reader.getAttributePrefix(i)), StringUtils.defaultString(reader.getAttributeNamespace(i)),
+                    reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+        }
+    }
+
+    /**
+     * Copies the text of the element the reader is positioned on, and leaves the reader on its end element.
+     */
+    private static String copyElementText(XMLStreamReader reader, XMLStreamWriter writer) throws XMLStreamException {
+        String text = reader.getElementText();
+        writer.writeCharacters(text);
+        writer.writeEndElement();
+        return text;
+    }
+
+    /**
+     * Moves the reader to the end element closing the given number of levels.
+     */
+    private static void skipElement(XMLStreamReader reader, int depth) throws XMLStreamException {
+        while (depth > 0) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static Context unmarshalContext(String context) throws XMLStreamException, JAXBException {
+        XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(context));
+        try {
+            reader.nextTag();
+            return JAXBContextRegistry.unmarshal(reader, Context.class);
+        } finally {
+            close(reader);
+        }
+    }
+
+    static List<DatasetExtension> toDatasets(String response, String messageId) throws ServiceException, JAXBException {
+        FilterDatasetResponse filterDatasetResponse = unmarshal(response, messageId, FilterDatasetResponse.class, null);
+        if (filterDatasetResponse == null) {
+            return null;
+        }
+        LOG.debug("The response to message with ID: {} is: {}", messageId, filterDatasetResponse.getDatasetList().getList());
+        return filterDatasetResponse.getDatasetList().getList();
+    }
+
+    /**
+     * Checks the response to a (re)deployment request.
+     *
+     * @throws ServiceException if USM did not answer OK
+     */
+    static <T> void checkRegistered(String response, String messageId, Class<T> responseType, Function<T, String> status) throws ServiceException, JAXBException {
+        T registrationResponse = unmarshal(response, messageId, responseType, UNABLE_TO_REGISTER);
+        if (registrationResponse != null && "OK".equalsIgnoreCase(status.apply(registrationResponse))) {
+            LOG.info("Application successfully registered into USM.");
+        } else {
+            throw new ServiceException(UNABLE_TO_REGISTER);
+        }
+    }
+
+    /**
+     * Logs the response to a write request. Faults are logged, not thrown.
+     */
+    static <T> void logResponse(String response, String messageId, Class<T> responseType, Function<T, String> status) throws ServiceException, JAXBException {
+        T writeResponse = unmarshal(response, messageId, responseType, null);
+        if (writeResponse != null) {
+            LOG.debug("The response to message with ID: {} is: {}", messageId, status.apply(writeResponse));
+        }
+    }
+
+    /**
+     * Reads the status of a write response, for callers that report the outcome instead of only logging it.
+     *
+     * @throws ServiceException if there is no response or USM answered with a UserFault
+     */
+    static <T> String responseStatus(String response, String messageId, Class<T> responseType, Function<T, String> status, String faultMessage) throws ServiceException, JAXBException {
+        T writeResponse = unmarshal(response, messageId, responseType, faultMessage);
+        if (writeResponse == null) {
+            throw new ServiceException(faultMessage);
+        }
+        return status.apply(writeResponse);
+    }
+
+    /**
+     * Unmarshals a USM response of the expected type.
+     *
+     * @param faultMessage the message of the exception thrown when USM answers with a UserFault, or null to return null
+     * @return the response, or null if there is no response or USM answered with a UserFault
+     * @throws ServiceException if USM answered with a UserFault and a fault message is given
+     */
+    static <T> T unmarshal(String response, String messageId, Class<T> responseType, String faultMessage) throws ServiceException, JAXBException {
+        if (response != null) {
+            try {
+                T unmarshalled = JAXBContextRegistry.unmarshal(response, responseType);
+                LOG.debug("Response concerning message with ID: {} is received.", messageId);
+                return unmarshalled;
+            } catch (JAXBException e) {
+                // a UserFault is not of the expected type, so it is only looked for when the response cannot be read
+                if (!isUserFault(response)) {
+                    throw e;
+                }
+            }
+        }
+        fault(response, messageId, faultMessage);
+        return null;
+    }
+
+    /**
+     * Logs a missing response or a UserFault.
+     *
+     * @param response the UserFault, or null if there is no response
+     * @throws ServiceException if USM answered with a UserFault and a fault message is given
+     */
+    private static void fault(String response, String messageId, String faultMessage) throws ServiceException, JAXBException {
+        LOG.error("Error occurred while receiving JMS response for message ID: {}", messageId);
+        if (response != null) {
+            UserFault error = JAXBContextRegistry.unmarshal(response, UserFault.class);
+            LOG.error("Error Code: {}, Message: {}", error.getCode(), error.getFault());
+            if (faultMessage != null) {
+                throw new ServiceException(faultMessage);
+            }
+        }
+    }
+
+    static boolean isUserFault(String message) {
+        return UserFaults.isUserFault(message);
+    }
+
+    static String peekRootElement(String message) {
+        return UserFaults.peekRootElement(message);
+    }
+
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            LOG.debug("Unable to close XML reader", e);
+        }
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    private static XMLOutputFactory createXMLOutputFactory() {
+        XMLOutputFactory factory = XMLOutputFactory.newInstance();
+        // declares the namespaces of the copied contexts, which are declared above them in the response
+        factory.setProperty(XMLOutputFactory.IS_REPAIRING_NAMESPACES, true);
+        return factory;
+    }
+
+    /**
+     * @return the context of the user matching the role and scope
+     * @throws ServiceException if the user has no such context
+     */
+    static Context findContext(UserContext fullContext, String currentRole, String currentScope) throws ServiceException {
+        Context context = null;
+        if (fullContext != null) {
+            for (Context usmCtx : fullContext.getContextSet().getContexts()) {
+                if (isContextMatch(usmCtx, currentRole, currentScope)) {
+                   context = usmCtx;
+                   break;
+                }
+            }
+        }
+        if (context == null) {
+            throw new ServiceException(CONTEXT_NOT_FOUND);
+        }
+        return context;
+    }
+
+    /**
+     * Same as {@link #findContext(UserContext, String, String)}, through the role and scope index of the cached user
+     * context when it is the one given.
+     */
+    static Context findContext(CachedUserContext cached, UserContext fullContext, String currentRole, String currentScope) throws ServiceException {
+        if (cached == null || cached.getUserContext() != fullContext) {
+            return findContext(fullContext, currentRole, currentScope);
+        }
+        Context context = cached.findContext(currentRole, currentScope);
+        if (context == null) {
+            throw new ServiceException(CONTEXT_NOT_FOUND);
+        }
+        return context;
+    }
+
+    private static boolean isContextMatch(Context usmCtx, String currentRole, String currentScope) {
+        return isContextMatch(usmCtx.getRole().getRoleName(), usmCtx.getScope() == null ? null : usmCtx.getScope().getScopeName(), currentRole, currentScope);
+    }
+
+    /**
+     * @param scopeName the scope of the context, null if it has none
+     */
+    private static boolean isContextMatch(String roleName, String scopeName, String currentRole, String currentScope) {
+        boolean isContextMatch = false;
+        if (roleName != null && roleName.equalsIgnoreCase(currentRole)) {
+            isContextMatch = true;
+        }
+        //check if our user has a scope (it is possible to have a context without a scope)
+        if (StringUtils.isNotBlank(currentScope)) {
+            if (scopeName == null || !scopeName.equalsIgnoreCase(currentScope)) {
+                isContextMatch = false;
+            }
+        }
+        return isContextMatch;
+    }
+
+    /**
+     * Sets the default value of an option of the given application, adding the option if needed.
+     */
+    static void setOptionDefaultValue(Application application, String keyOption, String defaultValue) {
+        List<Option> optionList = application.getOption();
+        boolean isOptionAdd = true;
+        for (Option option : optionList) {
+            if (option.getName().equals(keyOption)) {
+                isOptionAdd = false;
+                option.setDefaultValue(defaultValue);
+                break;
+            }
+        }
+        if (isOptionAdd) {
+            Option option = new Option();
+            option.setName(keyOption);
+            option.setDefaultValue(defaultValue);
+            application.getOption().add(option);
+        }
+    }
+}
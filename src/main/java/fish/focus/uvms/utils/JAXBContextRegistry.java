@@ -0,0 +1,277 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.utils;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.dom.DOMResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one {@link JAXBContext} per message type and pools the (un)marshallers created from them.
+ * <p>Creating a JAXBContext is expensive and (un)marshallers are not thread-safe, so each call borrows an
+ * (un)marshaller from the pool of its type, uses it on the calling thread only and gives it back. At most
+ * {@link #POOL_SIZE_PROPERTY} instances are kept per type and kind; extra ones are created on demand and dropped.
+ */
+public final class JAXBContextRegistry {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JAXBContextRegistry.class);
+
+    public static final String POOL_SIZE_PROPERTY = "usm4uvms.jaxb.poolSize";
+
+    private static final int POOL_SIZE = Integer.getInteger(POOL_SIZE_PROPERTY, 16);
+
+    private static final ConcurrentMap<Class<?>, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+    private static final QName COPY_ELEMENT = new QName("copy");
+
+    private JAXBContextRegistry() {
+    }
+
+    /**
+     * Builds the contexts of the given types ahead of their first use. Failures are logged, they will be reported
+     * again when the type is used.
+     */
+    public static void preload(Class<?>... types) {
+        for (Class<?> type : types) {
+            try {
+                getContext(type);
+            } catch (JAXBException e) {
+                LOG.warn("Unable to create the JAXB context of {}", type.getName(), e);
+            }
+        }
+    }
+
+    public static JAXBContext getContext(Class<?> type) throws JAXBException {
+        return entry(type).context;
+    }
+
+    public static <T> T unmarshal(String xml, Class<T> type) throws JAXBException {
+        return unmarshal(new StringReader(xml), type);
+    }
+
+    public static <T> T unmarshal(InputStream xml, Class<T> type) throws JAXBException {
+        Entry entry = entry(type);
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return cast(unmarshaller.unmarshal(xml), type);
+        } finally {
+            entry.releaseUnmarshaller(unmarshaller);
+        }
+    }
+
+    public static <T> T unmarshal(Reader xml, Class<T> type) throws JAXBException {
+        Entry entry = entry(type);
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return cast(unmarshaller.unmarshal(xml), type);
+        } finally {
+            entry.releaseUnmarshaller(unmarshaller);
+        }
+    }
+
+    /**
+     * Unmarshals the element the reader is positioned on as the given type, which does not need to be a root element.
+     * The reader is left after the end of that element.
+     */
+    public static <T> T unmarshal(XMLStreamReader xml, Class<T> type) throws JAXBException {
+        Entry entry = entry(type);
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return cast(unmarshaller.unmarshal(xml, type), type);
+        } finally {
+            entry.releaseUnmarshaller(unmarshaller);
+        }
+    }
+
+    public static String marshal(Object object) throws JAXBException {
+        Entry entry = entry(object.getClass());
+        Marshaller marshaller = entry.borrowMarshaller();
+        try {
+            StringWriter writer = new StringWriter();
+            marshaller.marshal(object, writer);
+            return writer.toString();
+        } finally {
+            entry.releaseMarshaller(marshaller);
+        }
+    }
+
+    /**
+     * Deep copies an object of the given type, which does not need to be a root element, by marshalling it to a DOM
+     * tree and unmarshalling it back.
+     */
+    public static <T> T copy(T object, Class<T> type) throws JAXBException {
+        Entry entry = entry(type);
+        DOMResult tree = new DOMResult();
+        Marshaller marshaller = entry.borrowMarshaller();
+        try {
+            marshaller.marshal(new JAXBElement<>(COPY_ELEMENT, type, object), tree);
+        } finally {
+            entry.releaseMarshaller(marshaller);
+        }
+        Unmarshaller unmarshaller = entry.borrowUnmarshaller();
+        try {
+            return unmarshaller.unmarshal(tree.getNode(), type).getValue();
+        } finally {
+            entry.releaseUnmarshaller(unmarshaller);
+        }
+    }
+
+    /**
+     * @return the pool statistics of every registered type
+     */
+    public static Collection<Statistics> getStatistics() {
+        Collection<Statistics> statistics = new ArrayList<>(ENTRIES.size());
+        for (Entry entry : ENTRIES.values()) {
+            statistics.add(new Statistics(entry));
+        }
+        return statistics;
+    }
+
+    private static Entry entry(Class<?> type) throws JAXBException {
+        Entry entry = ENTRIES.get(type);
+        if (entry == null) {
+            // building the context outside of the map avoids blocking the other types while it is created
+            Entry created = new Entry(type, JAXBContext.newInstance(type));
+            entry = ENTRIES.putIfAbsent(type, created);
+            if (entry == null) {
+                entry = created;
+            }
+        }
+        return entry;
+    }
+
+    private static <T> T cast(Object unmarshalled, Class<T> type) throws JAXBException {
+        Object value = unmarshalled instanceof JAXBElement ? ((JAXBElement<?>) unmarshalled).getValue() : unmarshalled;
+        if (!type.isInstance(value)) {
+            throw new JAXBException("Expected " + type.getName() + " but got " + (value == null ? null : value.getClass().getName()));
+        }
+        return type.cast(value);
+    }
+
+    /**
+     * Pool statistics of one message type.
+     */
+    public static final class Statistics {
+        private final Class<?> type;
+        private final int pooledUnmarshallers;
+        private final int pooledMarshallers;
+        private final long hitCount;
+        private final long missCount;
+
+        private Statistics(Entry entry) {
+            this.type = entry.type;
+            this.pooledUnmarshallers = entry.unmarshallerCount.get();
+            this.pooledMarshallers = entry.marshallerCount.get();
+            this.hitCount = entry.hitCount.get();
+            this.missCount = entry.missCount.get();
+        }
+
+        public Class<?> getType() {
+            return type;
+        }
+
+        public int getPooledUnmarshallers() {
+            return pooledUnmarshallers;
+        }
+
+        public int getPooledMarshallers() {
+            return pooledMarshallers;
+        }
+
+        /**
+         * @return the number of (un)marshallers taken from the pool
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return the number of (un)marshallers created because the pool was empty
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+    }
+
+    private static final class Entry {
+        private final Class<?> type;
+        private final JAXBContext context;
+        private final Queue<Unmarshaller> unmarshallers = new ConcurrentLinkedQueue<>();
+        private final Queue<Marshaller> marshallers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger unmarshallerCount = new AtomicInteger();
+        private final AtomicInteger marshallerCount = new AtomicInteger();
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+
+        private Entry(Class<?> type, JAXBContext context) {
+            this.type = type;
+            this.context = context;
+        }
+
+        private Unmarshaller borrowUnmarshaller() throws JAXBException {
+            Unmarshaller unmarshaller = unmarshallers.poll();
+            if (unmarshaller != null) {
+                unmarshallerCount.decrementAndGet();
+                hitCount.incrementAndGet();
+                return unmarshaller;
+            }
+            missCount.incrementAndGet();
+            return context.createUnmarshaller();
+        }
+
+        private void releaseUnmarshaller(Unmarshaller unmarshaller) {
+            if (unmarshallerCount.incrementAndGet() <= POOL_SIZE) {
+                unmarshallers.offer(unmarshaller);
+            } else {
+                unmarshallerCount.decrementAndGet();
+            }
+        }
+
+        private Marshaller borrowMarshaller() throws JAXBException {
+            Marshaller marshaller = marshallers.poll();
+            if (marshaller != null) {
+                marshallerCount.decrementAndGet();
+                hitCount.incrementAndGet();
+                return marshaller;
+            }
+            missCount.incrementAndGet();
+            return context.createMarshaller();
+        }
+
+        private void releaseMarshaller(Marshaller marshaller) {
+            if (marshallerCount.incrementAndGet() <= POOL_SIZE) {
+                marshallers.offer(marshaller);
+            } else {
+                marshallerCount.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.utils;
+
+import java.io.StringReader;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import fish.focus.wsdl.user.types.UserFault;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Recognizes the UserFault responses of USM without unmarshalling them.
+ */
+public final class UserFaults {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserFaults.class);
+
+    private static final String USER_FAULT_ELEMENT = rootElementName(UserFault.class);
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXMLInputFactory();
+
+    private UserFaults() {
+    }
+
+    /**
+     * Tells whether a USM response is a UserFault by looking at its root element only, so that a response is never
+     * unmarshalled more than once.
+     */
+    public static boolean isUserFault(String message) {
+        return USER_FAULT_ELEMENT.equals(peekRootElement(message));
+    }
+
+    /**
+     * @return the local name of the root element of the message, or null if it is not well-formed XML
+     */
+    public static String peekRootElement(String message) {
+        XMLStreamReader reader = null;
+        try {
+            reader = XML_INPUT_FACTORY.createXMLStreamReader(new StringReader(message));
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    return reader.getLocalName();
+                }
+            }
+            return null;
+        } catch (XMLStreamException e) {
+            // the unmarshaller will report it
+            return null;
+        } finally {
+            if (reader != null) {
+                close(reader);
+            }
+        }
+    }
+
+    private static void close(XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            LOG.debug("Unable to close XML reader", e);
+        }
+    }
+
+    private static String rootElementName(Class<?> type) {
+        XmlRootElement rootElement = type.getAnnotation(XmlRootElement.class);
+        if (rootElement != null && !"##default".equals(rootElement.name())) {
+            return rootElement.name();
+        }
+        String name = type.getSimpleName();
+        return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+    }
+
+    private static XMLInputFactory createXMLInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+}
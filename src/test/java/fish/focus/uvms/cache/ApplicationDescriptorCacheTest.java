@@ -0,0 +1,83 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.Option;
+
+public class ApplicationDescriptorCacheTest {
+
+    private final ApplicationDescriptorCache cache = new ApplicationDescriptorCache();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void descriptorIsCachedUnderTheRequestedName() throws Exception {
+        ApplicationDescriptor loaded = cache.get("Movement", () -> load("MOVEMENT"));
+
+        assertSame(loaded, cache.get("Movement", () -> load("MOVEMENT")));
+        assertSame(loaded, cache.get("movement", () -> load("MOVEMENT")));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void optionDefaultsAreFoundIgnoringCase() throws Exception {
+        ApplicationDescriptor descriptor = cache.get("Movement", () -> load("Movement"));
+
+        assertEquals("10", descriptor.getOptionDefaultValue("Refresh.Rate"));
+        assertEquals("10", descriptor.getOptionDefaultValue("REFRESH.RATE"));
+        assertNull(descriptor.getOptionDefaultValue("unknown"));
+    }
+
+    @Test
+    public void deployedDescriptorIsCopied() throws Exception {
+        Application deployed = application("Movement");
+
+        ApplicationDescriptor cached = cache.put(deployed);
+        deployed.getOption().get(0).setDefaultValue("20");
+
+        assertNotSame(deployed, cached.getApplication());
+        assertSame(cached, cache.get("MOVEMENT"));
+        assertEquals("10", cache.get("Movement").getOptionDefaultValue("refresh.rate"));
+    }
+
+    @Test
+    public void evictIgnoresCase() throws Exception {
+        cache.get("Movement", () -> load("Movement"));
+
+        cache.evict("MOVEMENT");
+
+        assertNull(cache.get("Movement"));
+    }
+
+    private Application load(String name) {
+        loads.incrementAndGet();
+        return application(name);
+    }
+
+    private static Application application(String name) {
+        Option option = new Option();
+        option.setName("refresh.rate");
+        option.setDefaultValue("10");
+        Application application = new Application();
+        application.setName(name);
+        application.getOption().add(option);
+        return application;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.ContextSet;
+import fish.focus.wsdl.user.types.Role;
+import fish.focus.wsdl.user.types.Scope;
+import fish.focus.wsdl.user.types.UserContext;
+import org.junit.Test;
+
+public class CachedUserContextTest {
+
+    private final Context adminWithoutScope = context("AdminAll", null);
+    private final Context reportingEc = context("rep_power_role", "EC");
+    private final Context reportingAllVessels = context("rep_power_role", "All Vessels");
+    private final Context duplicateReportingEc = context("REP_POWER_ROLE", "ec");
+    private final CachedUserContext cached = new CachedUserContext("rep_power",
+            userContext(adminWithoutScope, reportingEc, reportingAllVessels, duplicateReportingEc));
+
+    @Test
+    public void findsContextByRoleAndScopeIgnoringCase() {
+        assertSame(reportingAllVessels, cached.findContext("Rep_Power_Role", "ALL VESSELS"));
+        assertSame(reportingEc, cached.findContext("rep_power_role", "ec"));
+        assertNull(cached.findContext("rep_power_role", "FR"));
+        assertNull(cached.findContext("unknown", "EC"));
+        assertNull(cached.findContext(null, "EC"));
+    }
+
+    @Test
+    public void blankScopeSelectsFirstContextOfTheRole() {
+        assertSame(reportingEc, cached.findContext("rep_power_role", null));
+        assertSame(reportingEc, cached.findContext("rep_power_role", " "));
+        assertSame(adminWithoutScope, cached.findContext("adminall", ""));
+    }
+
+    @Test
+    public void contextWithoutScopeIsNotSelectedForAScope() {
+        assertNull(cached.findContext("AdminAll", "EC"));
+    }
+
+    private static UserContext userContext(Context... contexts) {
+        ContextSet contextSet = new ContextSet();
+        for (Context context : contexts) {
+            contextSet.getContexts().add(context);
+        }
+        UserContext userContext = new UserContext();
+        userContext.setContextSet(contextSet);
+        return userContext;
+    }
+
+    private static Context context(String roleName, String scopeName) {
+        Context context = new Context();
+        Role role = new Role();
+        role.setRoleName(roleName);
+        context.setRole(role);
+        if (scopeName != null) {
+            Scope scope = new Scope();
+            scope.setScopeName(scopeName);
+            context.setScope(scope);
+        }
+        return context;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Dataset;
+import fish.focus.wsdl.user.types.Preference;
+import fish.focus.wsdl.user.types.Preferences;
+import fish.focus.wsdl.user.types.Scope;
+import org.junit.Test;
+
+public class ContextDescriptorTest {
+
+    @Test
+    public void firstPreferenceWins() {
+        Context context = new Context();
+        Preferences preferences = new Preferences();
+        preferences.getPreference().add(preference("measurementSystem", "metric"));
+        preferences.getPreference().add(preference("measurementSystem", "imperial"));
+        preferences.getPreference().add(preference("coordinatesFormat", "dd"));
+        context.setPreferences(preferences);
+
+        ContextDescriptor descriptor = new ContextDescriptor(context);
+
+        assertEquals("metric", descriptor.getPreference("measurementSystem"));
+        assertNull(descriptor.getPreference("MEASUREMENTSYSTEM"));
+        assertNull(descriptor.getPreference(null));
+        assertEquals(2, descriptor.getPreferences().size());
+    }
+
+    @Test
+    public void datasetsAreIndexedByCategoryIgnoringCase() {
+        Dataset reporting = dataset("ReportingDS", "reporting");
+        Dataset otherReporting = dataset("dfavgad", "Reporting");
+        Dataset vessels = dataset("asdfsdfds", "vessels");
+        Context context = new Context();
+        Scope scope = new Scope();
+        scope.getDataset().add(reporting);
+        scope.getDataset().add(dataset("sfsvfdsafas", null));
+        scope.getDataset().add(vessels);
+        scope.getDataset().add(otherReporting);
+        context.setScope(scope);
+
+        ContextDescriptor descriptor = new ContextDescriptor(context);
+
+        assertEquals(2, descriptor.getDatasets("REPORTING").size());
+        assertSame(reporting, descriptor.getDatasets("reporting").get(0));
+        assertSame(vessels, descriptor.getDataset("Vessels", "asdfsdfds"));
+        assertNull(descriptor.getDataset("reporting", "asdfsdfds"));
+        assertTrue(descriptor.getDatasets("areas").isEmpty());
+        assertTrue(descriptor.getDatasets(null).isEmpty());
+    }
+
+    @Test
+    public void contextWithoutScopeOrPreferencesIsEmpty() {
+        ContextDescriptor descriptor = new ContextDescriptor(new Context());
+
+        assertTrue(descriptor.getDatasets("reporting").isEmpty());
+        assertTrue(descriptor.getPreferences().isEmpty());
+    }
+
+    private static Preference preference(String optionName, String optionValue) {
+        Preference preference = new Preference();
+        preference.setOptionName(optionName);
+        preference.setOptionValue(optionValue);
+        return preference;
+    }
+
+    private static Dataset dataset(String name, String category) {
+        Dataset dataset = new Dataset();
+        dataset.setName(name);
+        dataset.setCategory(category);
+        return dataset;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import fish.focus.wsdl.user.types.DatasetExtension;
+
+public class DatasetCacheTest {
+
+    private final DatasetCache cache = new DatasetCache();
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void datasetsAreLoadedOncePerApplicationAndDiscriminator() throws Exception {
+        List<DatasetExtension> first = cache.get("Spatial", "area", this::load);
+        List<DatasetExtension> second = cache.get("Spatial", "area", this::load);
+        cache.get("Spatial", "report", this::load);
+
+        assertSame(first, second);
+        assertEquals(2, loads.get());
+        assertEquals(1, cache.getCache().getHitCount());
+    }
+
+    @Test
+    public void evictingAnApplicationDropsAllItsDiscriminators() throws Exception {
+        cache.get("Spatial", "area", this::load);
+        cache.get("Spatial", "report", this::load);
+        cache.get("Activity", "area", this::load);
+
+        cache.evictApplication("Spatial");
+
+        assertNull(cache.get("Spatial", "area"));
+        assertNull(cache.get("Spatial", "report"));
+        assertEquals(1, cache.get("Activity", "area").size());
+    }
+
+    @Test
+    public void loadOverlappingAnEvictionIsNotCached() throws Exception {
+        List<DatasetExtension> loaded = cache.get("Spatial", "area", () -> {
+            cache.evictApplication("Spatial");
+            return load();
+        });
+
+        assertEquals(1, loaded.size());
+        assertNull(cache.get("Spatial", "area"));
+    }
+
+    @Test
+    public void missingDatasetsAreNotCached() throws Exception {
+        assertNull(cache.get("Spatial", "area", () -> null));
+        assertNull(cache.get("Spatial", "area"));
+
+        assertEquals(1, cache.get("Spatial", "area", this::load).size());
+    }
+
+    private List<DatasetExtension> load() {
+        loads.incrementAndGet();
+        DatasetExtension dataset = new DatasetExtension();
+        dataset.setName("dataset" + loads.get());
+        return Collections.singletonList(dataset);
+    }
+}
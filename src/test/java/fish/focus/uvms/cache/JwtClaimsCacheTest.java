@@ -0,0 +1,110 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class JwtClaimsCacheTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private final JwtClaimsCache cache = new JwtClaimsCache(clock::get);
+    private final AtomicInteger verifications = new AtomicInteger();
+    private final Function<String, String> usernameParser = token -> {
+        verifications.incrementAndGet();
+        return token.endsWith(".forged") ? null : "rep_power";
+    };
+    private final AtomicInteger featureReads = new AtomicInteger();
+    private final Function<String, List<Integer>> featuresParser = token -> {
+        featureReads.incrementAndGet();
+        return Arrays.asList(295, 201);
+    };
+
+    @Test
+    public void tokenIsVerifiedOnceUntilItExpires() {
+        String token = token(NOW / 1000 + 60);
+
+        VerifiedClaims claims = cache.getClaims(token, usernameParser, featuresParser);
+        assertSame(claims, cache.getClaims(token, usernameParser, featuresParser));
+        assertEquals(1, verifications.get());
+        assertEquals("rep_power", claims.getUsername());
+        assertTrue(claims.hasFeature(201));
+        assertFalse(claims.hasFeature(294));
+        assertFalse(claims.expiresBefore(NOW + 59_000L));
+        assertTrue(claims.expiresBefore(NOW + 61_000L));
+
+        clock.set(NOW + 60_000L);
+        cache.getClaims(token, usernameParser, featuresParser);
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    public void featuresAreOnlyReadWhenNeeded() {
+        String token = token(NOW / 1000 + 60);
+
+        VerifiedClaims claims = cache.getClaims(token, usernameParser);
+        assertFalse(claims.hasFeatures());
+        assertFalse(claims.hasFeature(201));
+        assertEquals(0, featureReads.get());
+
+        assertSame(claims, cache.getClaims(token, usernameParser, featuresParser));
+        assertSame(claims, cache.getClaims(token, usernameParser, featuresParser));
+        assertTrue(claims.hasFeature(201));
+        assertEquals(1, featureReads.get());
+        assertEquals(1, verifications.get());
+    }
+
+    @Test
+    public void invalidOrExpiredTokensAreNotCached() {
+        String forged = "eyJhbGciOiJIUzI1NiJ9." + payload(NOW / 1000 + 60) + ".forged";
+        assertNull(cache.getClaims(forged, usernameParser, featuresParser));
+        assertNull(cache.getClaims(forged, usernameParser, featuresParser));
+
+        String expired = token(NOW / 1000 - 1);
+        cache.getClaims(expired, usernameParser, featuresParser);
+        cache.getClaims(expired, usernameParser, featuresParser);
+
+        assertEquals(4, verifications.get());
+        assertEquals(0, cache.getCache().size());
+        assertNull(cache.getClaims(null, usernameParser, featuresParser));
+    }
+
+    @Test
+    public void readExpiryOfMalformedTokenIsNegative() {
+        assertEquals((NOW / 1000 + 60) * 1000, JwtClaimsCache.readExpiry(token(NOW / 1000 + 60)));
+        assertEquals(-1, JwtClaimsCache.readExpiry("not a token"));
+        assertEquals(-1, JwtClaimsCache.readExpiry("a.%%%.b"));
+    }
+
+    private static String token(long expiry) {
+        return "eyJhbGciOiJIUzI1NiJ9." + payload(expiry) + ".c2lnbmF0dXJl";
+    }
+
+    private static String payload(long expiry) {
+        String json = "{\"sub\":\"rep_power\",\"exp\":" + expiry + ",\"features\":[295,201]}";
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,80 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+import fish.focus.uvms.exception.ServiceException;
+
+public class SingleFlightTest {
+
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+    @Test
+    public void concurrentCallsShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<String> response = new CompletableFuture<>();
+        CompletableFuture<String> first = singleFlight.executeAsync("user", () -> {
+            loads.incrementAndGet();
+            return response;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("user", () -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        AtomicReference<String> blockingResult = new AtomicReference<>();
+        Thread blocking = new Thread(() -> {
+            try {
+                blockingResult.set(singleFlight.execute("user", () -> {
+                    loads.incrementAndGet();
+                    return "other";
+                }));
+            } catch (ServiceException e) {
+                blockingResult.set(e.getMessage());
+            }
+        });
+        blocking.start();
+        while (blocking.getState() != Thread.State.WAITING) {
+            Thread.sleep(1);
+        }
+
+        response.complete("context");
+        blocking.join(5000);
+
+        assertEquals("context", first.get(5, TimeUnit.SECONDS));
+        assertEquals("context", second.get(5, TimeUnit.SECONDS));
+        assertEquals("context", blockingResult.get());
+        assertEquals(1, loads.get());
+        assertEquals(0, singleFlight.size());
+    }
+
+    @Test
+    public void failureIsPropagatedAndNotRemembered() throws Exception {
+        ServiceException failure = new ServiceException("USM is down");
+        try {
+            singleFlight.execute("user", () -> {
+                throw failure;
+            });
+            fail("exception expected");
+        } catch (ServiceException e) {
+            assertSame(failure, e);
+        }
+        assertEquals("context", singleFlight.execute("user", () -> "context"));
+    }
+}
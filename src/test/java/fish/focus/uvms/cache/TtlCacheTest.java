@@ -0,0 +1,75 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TtlCacheTest {
+
+    private AtomicLong now;
+    private TtlCache<String, String> cache;
+
+    @Before
+    public void setUp() {
+        now = new AtomicLong(1000L);
+        cache = new TtlCache<>("test", 2, 100L, now::get);
+    }
+
+    @Test
+    public void entryExpiresAfterTtl() {
+        cache.put("a", "A");
+        now.addAndGet(99L);
+        assertEquals("A", cache.get("a"));
+        now.addAndGet(1L);
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvictedWhenFull() {
+        cache.put("a", "A");
+        cache.put("b", "B");
+        cache.get("a");
+        cache.put("c", "C");
+        assertEquals(2, cache.size());
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void invalidateIfRemovesMatchingKeys() {
+        cache.put("a1", "A");
+        cache.put("b1", "B");
+        cache.invalidateIf(key -> key.startsWith("a"));
+        assertNull(cache.get("a1"));
+        assertEquals("B", cache.get("b1"));
+    }
+
+    @Test
+    public void cleanUpDropsExpiredEntries() {
+        cache.put("a", "A");
+        now.addAndGet(50L);
+        cache.put("b", "B");
+        now.addAndGet(60L);
+        cache.cleanUp();
+        assertEquals(1, cache.size());
+        assertEquals("B", cache.get("b"));
+    }
+}
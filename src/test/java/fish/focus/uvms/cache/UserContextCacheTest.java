@@ -0,0 +1,164 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.UserContext;
+
+public class UserContextCacheTest {
+
+    private final AtomicLong now = new AtomicLong(1000L);
+
+    private final UserContextCache cache = new UserContextCache(10, 1000L, 100L, now::get);
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void freshContextIsServedFromTheCache() throws Exception {
+        UserContext loaded = cache.getAsync("user", "app", () -> load(new UserContext())).get(5, TimeUnit.SECONDS);
+        now.addAndGet(99L);
+
+        assertSame(loaded, cache.getAsync("user", "app", () -> load(new UserContext())).get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertEquals(0, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void staleContextIsServedWhileOneRefreshRuns() throws Exception {
+        UserContext stale = cache.getAsync("user", "app", () -> load(new UserContext())).get(5, TimeUnit.SECONDS);
+        now.addAndGet(100L);
+        CompletableFuture<UserContext> refresh = new CompletableFuture<>();
+
+        assertSame(stale, cache.getAsync("user", "app", () -> load(refresh)).get(5, TimeUnit.SECONDS));
+        assertSame(stale, cache.getAsync("user", "app", () -> load(refresh)).get(5, TimeUnit.SECONDS));
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.getStaleHitCount());
+
+        UserContext refreshed = new UserContext();
+        refresh.complete(refreshed);
+
+        assertSame(refreshed, cache.get("user", "app"));
+    }
+
+    @Test
+    public void failedRefreshKeepsServingTheStaleContext() throws Exception {
+        UserContext stale = cache.getAsync("user", "app", () -> load(new UserContext())).get(5, TimeUnit.SECONDS);
+        now.addAndGet(100L);
+
+        assertSame(stale, cache.getAsync("user", "app", () -> load(CompletableFuture.<UserContext>failedFuture(new IllegalStateException("USM is down"))))
+                .get(5, TimeUnit.SECONDS));
+        assertSame(stale, cache.get("user", "app"));
+    }
+
+    @Test
+    public void contextPastItsTtlIsLoadedAgain() throws Exception {
+        cache.getAsync("user", "app", () -> load(new UserContext())).get(5, TimeUnit.SECONDS);
+        now.addAndGet(1000L);
+        UserContext reloaded = new UserContext();
+
+        assertSame(reloaded, cache.getAsync("user", "app", () -> load(reloaded)).get(5, TimeUnit.SECONDS));
+        assertEquals(0, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void selectedContextIsCachedIgnoringCase() throws Exception {
+        Context selected = cache.getContext("user", "app", "Role", "Scope", () -> loadContext(new Context()));
+
+        assertSame(selected, cache.getContext("user", "app", "ROLE", "scope", () -> loadContext(new Context())));
+        assertSame(selected, cache.getContextAsync("user", "app", "role", "SCOPE", () -> CompletableFuture.completedFuture(loadContext(new Context())))
+                .get(5, TimeUnit.SECONDS));
+        assertEquals(1, loads.get());
+        assertNull(cache.getContext("user", "app", "Role", ""));
+    }
+
+    @Test
+    public void selectedContextsAreEvictedWithTheUserContext() throws Exception {
+        cache.getContext("user", "app", "role", null, () -> loadContext(new Context()));
+        cache.getContext("user", "other", "role", null, () -> loadContext(new Context()));
+        cache.getContext("another", "app", "role", null, () -> loadContext(new Context()));
+
+        cache.evict("user", "app");
+        assertNull(cache.getContext("user", "app", "role", null));
+        assertNotNull(cache.getContext("user", "other", "role", null));
+
+        cache.evictUser("user");
+        assertNull(cache.getContext("user", "other", "role", null));
+
+        cache.evictApplication("app");
+        assertNull(cache.getContext("another", "app", "role", null));
+    }
+
+    @Test
+    public void loadThatStartedBeforeAnEvictionIsNotCached() throws Exception {
+        CompletableFuture<UserContext> userContext = new CompletableFuture<>();
+        CompletableFuture<UserContext> loaded = cache.getAsync("user", "app", () -> load(userContext));
+
+        cache.evict("user", "app");
+        userContext.complete(new UserContext());
+
+        assertNotNull(loaded.get(5, TimeUnit.SECONDS));
+        assertNull(cache.get("user", "app"));
+
+        Context context = cache.getContext("user", "app", "role", null, () -> {
+            cache.evictApplication("app");
+            return loadContext(new Context());
+        });
+
+        assertNotNull(context);
+        assertNull(cache.getContext("user", "app", "role", null));
+    }
+
+    @Test
+    public void evictionOfOtherContextsDoesNotAffectTheLoad() throws Exception {
+        CompletableFuture<UserContext> userContext = new CompletableFuture<>();
+        cache.getAsync("user", "app", () -> load(userContext));
+
+        cache.evict("other", "app");
+        cache.evictUser("other");
+        cache.evictApplication("other");
+        UserContext loaded = new UserContext();
+        userContext.complete(loaded);
+
+        assertSame(loaded, cache.get("user", "app"));
+
+        Context context = cache.getContext("user", "app", "role", null, () -> {
+            cache.evict("user", "other");
+            return loadContext(new Context());
+        });
+
+        assertSame(context, cache.getContext("user", "app", "role", null));
+    }
+
+    private Context loadContext(Context context) {
+        loads.incrementAndGet();
+        return context;
+    }
+
+    private CompletableFuture<UserContext> load(UserContext userContext) {
+        return load(CompletableFuture.completedFuture(userContext));
+    }
+
+    private CompletableFuture<UserContext> load(CompletableFuture<UserContext> userContext) {
+        loads.incrementAndGet();
+        return userContext;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.jms.Destination;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import fish.focus.uvms.metrics.USMMetrics;
+
+public class USMMessageClientTest {
+
+    private final USMMessageClient messageClient = new USMMessageClient();
+
+    private final FakeDispatcher dispatcher = new FakeDispatcher();
+
+    private final FakeProducer producer = new FakeProducer();
+
+    private final FakeConsumer consumer = new FakeConsumer();
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(messageClient, "messageProducer", producer);
+        Whitebox.setInternalState(messageClient, "messageConsumer", consumer);
+        Whitebox.setInternalState(messageClient, "responseDispatcher", dispatcher);
+        Whitebox.setInternalState(messageClient, "callGuard", new USMCallGuard());
+        Whitebox.setInternalState(messageClient, "metrics", new USMMetrics());
+    }
+
+    @Test
+    public void replyIsAwaitedOnTheDispatcherItWasSentTo() throws Exception {
+        dispatcher.available = true;
+        String messageId = messageClient.sendMessage("request", USMOperation.OTHER);
+        dispatcher.available = false;
+        dispatcher.getResponse(messageId).complete("dispatched");
+
+        assertSame(dispatcher.replyQueue, producer.replyTo);
+        assertEquals("dispatched", messageClient.receiveResponse(messageId));
+    }
+
+    @Test
+    public void replyIsReadFromTheQueueItWasSentTo() throws Exception {
+        String messageId = messageClient.sendMessage("request", USMOperation.OTHER);
+        dispatcher.available = true;
+
+        assertSame(consumer.replyQueue, producer.replyTo);
+        assertEquals("consumed", messageClient.receiveResponse(messageId));
+
+        dispatcher.available = false;
+        messageId = messageClient.sendMessage("request", USMOperation.OTHER);
+        dispatcher.available = true;
+        Whitebox.setInternalState(messageClient, "executorService", (ManagedExecutorService) Proxy.newProxyInstance(ManagedExecutorService.class.getClassLoader(),
+                new Class<?>[]{ManagedExecutorService.class}, (proxy, method, args) -> {
+                    ((Runnable) args[0]).run();
+                    return null;
+                }));
+        assertEquals("consumed", messageClient.getResponse(messageId).get(5, TimeUnit.SECONDS));
+    }
+
+    private static final class FakeDispatcher extends USMResponseDispatcher {
+        private final Destination replyQueue = new Destination() {
+        };
+        private volatile boolean available;
+
+        @Override
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public Destination getReplyDestination() {
+            return replyQueue;
+        }
+    }
+
+    private static final class FakeProducer extends USMMessageProducer {
+        private Destination replyTo;
+        private int sent;
+
+        @Override
+        public String sendMessage(String text, Destination replyTo) {
+            this.replyTo = replyTo;
+            return "ID:" + sent++;
+        }
+    }
+
+    private static final class FakeConsumer extends USMMessageConsumer {
+        private final Destination replyQueue = new Destination() {
+        };
+
+        @Override
+        public Destination getDestination() {
+            return replyQueue;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getMessageBody(String id, Class<T> type, Long timeout) {
+            return (T) "consumed";
+        }
+    }
+}
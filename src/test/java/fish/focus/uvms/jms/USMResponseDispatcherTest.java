@@ -0,0 +1,253 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.jms.Connection;
+import javax.jms.ConnectionFactory;
+import javax.jms.ExceptionListener;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+import javax.jms.TextMessage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+public class USMResponseDispatcherTest {
+
+    private final USMResponseDispatcher dispatcher = new USMResponseDispatcher();
+
+    private final List<FakeConnection> connections = new CopyOnWriteArrayList<>();
+
+    private volatile boolean brokerDown;
+
+    @Before
+    public void setUp() {
+        ConnectionFactory connectionFactory = proxy(ConnectionFactory.class, (proxy, method, args) -> {
+            if (brokerDown) {
+                throw new JMSException("Connection refused");
+            }
+            FakeConnection connection = new FakeConnection(connections.size());
+            connections.add(connection);
+            return connection.connection;
+        });
+        ManagedThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "usm-response-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        };
+        Whitebox.setInternalState(dispatcher, "connectionFactory", connectionFactory);
+        Whitebox.setInternalState(dispatcher, "threadFactory", threadFactory);
+        dispatcher.start();
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.stop();
+    }
+
+    @Test
+    public void responsesAreDeliveredByCorrelationId() throws Exception {
+        CompletableFuture<String> second = dispatcher.getResponse("ID:2");
+
+        connections.get(0).reply("ID:1", "first");
+        connections.get(0).reply("ID:2", "second");
+
+        assertEquals("second", second.get(5, TimeUnit.SECONDS));
+        assertEquals("first", dispatcher.awaitResponse("ID:1", 5000L));
+        dispatcher.release("ID:2");
+        assertEquals(0, dispatcher.getPendingCount());
+    }
+
+    @Test
+    public void responseWithoutCorrelationIdIsDiscarded() throws Exception {
+        CompletableFuture<String> pending = dispatcher.getResponse("ID:1");
+
+        connections.get(0).reply(null, "orphan");
+        connections.get(0).reply("ID:1", "response");
+
+        assertEquals("response", pending.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void awaitingAResponseTimesOut() throws Exception {
+        try {
+            dispatcher.awaitResponse("ID:1", 50L);
+            fail("USM did not respond");
+        } catch (JMSException e) {
+            assertEquals(0, dispatcher.getPendingCount());
+        }
+    }
+
+    @Test
+    public void lostConnectionIsReplacedByANewTemporaryQueue() throws Exception {
+        FakeConnection lost = connections.get(0);
+        CompletableFuture<String> pending = dispatcher.getResponse("ID:1");
+
+        lost.fail();
+
+        assertFailed(pending);
+        assertTrue(lost.closed);
+        assertEquals(2, connections.size());
+        assertTrue(dispatcher.isAvailable());
+        assertNotSame(lost.queue, dispatcher.getReplyDestination());
+
+        CompletableFuture<String> next = dispatcher.getResponse("ID:2");
+        connections.get(1).reply("ID:2", "response");
+        assertEquals("response", next.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void receiveFailureReconnects() throws Exception {
+        connections.get(0).broken = true;
+
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (connections.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertEquals(2, connections.size());
+        assertTrue(dispatcher.isAvailable());
+    }
+
+    @Test
+    public void dispatcherIsUnavailableWhenItCannotReconnect() throws Exception {
+        CompletableFuture<String> pending = dispatcher.getResponse("ID:1");
+        brokerDown = true;
+
+        connections.get(0).fail();
+
+        assertFailed(pending);
+        assertFalse(dispatcher.isAvailable());
+    }
+
+    private static void assertFailed(CompletableFuture<String> response) throws Exception {
+        try {
+            response.get(5, TimeUnit.SECONDS);
+            fail("The response should have failed");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof JMSException);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    default:
+                        return type.getSimpleName() + "@" + System.identityHashCode(proxy);
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        });
+    }
+
+    /**
+     * A connection of the broker with the temporary queue the dispatcher creates on it.
+     */
+    private static final class FakeConnection {
+        private final BlockingQueue<Message> replies = new LinkedBlockingQueue<>();
+        private final TemporaryQueue queue;
+        private final Connection connection;
+        private volatile ExceptionListener exceptionListener;
+        private volatile boolean closed;
+        private volatile boolean broken;
+
+        private FakeConnection(int number) {
+            String name = "temp-queue-" + number;
+            queue = proxy(TemporaryQueue.class, (proxy, method, args) -> "getQueueName".equals(method.getName()) ? name : null);
+            MessageConsumer consumer = proxy(MessageConsumer.class, (proxy, method, args) -> {
+                if ("receive".equals(method.getName())) {
+                    Message message;
+                    try {
+                        message = closed || broken ? null : replies.poll((Long) args[0], TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        throw new JMSException("Interrupted");
+                    }
+                    if (closed || broken) {
+                        throw new JMSException("Connection is closed");
+                    }
+                    return message;
+                }
+                return null;
+            });
+            Session session = proxy(Session.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "createTemporaryQueue":
+                        return queue;
+                    case "createConsumer":
+                        return consumer;
+                    default:
+                        return null;
+                }
+            });
+            connection = proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "createSession":
+                        return session;
+                    case "setExceptionListener":
+                        exceptionListener = (ExceptionListener) args[0];
+                        return null;
+                    case "close":
+                        closed = true;
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private void reply(String correlationId, String body) {
+            replies.add(proxy(TextMessage.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getJMSCorrelationID":
+                        return correlationId;
+                    case "getText":
+                        return body;
+                    default:
+                        return null;
+                }
+            }));
+        }
+
+        /**
+         * Reports the loss of the connection, as the broker does when it restarts.
+         */
+        private void fail() {
+            exceptionListener.onException(new JMSException("Connection failure detected"));
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Method;
+import org.junit.Test;
+import fish.focus.wsdl.user.types.Application;
+
+public class MonitoredInterceptorTest {
+
+    @Test
+    public void applicationIsTakenFromTheApplicationNameParameter() throws NoSuchMethodException {
+        Method method = Operations.class.getMethod("getUserContext", String.class, String.class, String.class);
+
+        assertEquals("Reporting", MonitoredInterceptor.applicationName(method, new Object[]{"rep_power", "Reporting", "EC"}));
+    }
+
+    @Test
+    public void applicationIsTakenFromTheApplicationParameter() throws NoSuchMethodException {
+        Method method = Operations.class.getMethod("deploy", Application.class);
+        Application application = new Application();
+        application.setName("Reporting");
+
+        assertEquals("Reporting", MonitoredInterceptor.applicationName(method, new Object[]{application}));
+    }
+
+    @Test
+    public void operationWithoutApplicationHasNone() throws NoSuchMethodException {
+        Method method = Operations.class.getMethod("getUserContext", String.class, String.class, String.class);
+
+        assertNull(MonitoredInterceptor.applicationName(method, new Object[]{"rep_power", null, "EC"}));
+        assertNull(MonitoredInterceptor.applicationName(Operations.class.getMethod("evictAll"), new Object[0]));
+    }
+
+    public interface Operations {
+        void getUserContext(String username, String applicationName, String scopeName);
+
+        void deploy(Application descriptor);
+
+        void evictAll();
+    }
+}
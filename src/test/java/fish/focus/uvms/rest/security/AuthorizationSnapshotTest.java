@@ -0,0 +1,63 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Feature;
+import fish.focus.wsdl.user.types.Role;
+import org.junit.Test;
+
+public class AuthorizationSnapshotTest {
+
+    @Test
+    public void grantsOnlyTheFeaturesOfTheRole() {
+        AuthorizationSnapshot authorization = AuthorizationSnapshot.of("rep_power", context("rep_power_role",
+                UnionVMSFeature.viewMovements.name(), "manageReportsOfOtherUsers"));
+
+        assertTrue(authorization.hasFeature(UnionVMSFeature.viewMovements));
+        assertTrue(authorization.hasFeature("manageReportsOfOtherUsers"));
+        assertFalse(authorization.hasFeature(UnionVMSFeature.manageVessels));
+        assertFalse(authorization.hasFeature("neverSeenFeature"));
+        assertFalse(authorization.hasFeature((String) null));
+        assertEquals(2, authorization.getFeatureNames().size());
+        assertEquals("rep_power_role", authorization.getRoleName());
+        assertNull(authorization.getScopeName());
+    }
+
+    @Test
+    public void featuresRegisteredLaterAreNotGrantedToOlderSnapshots() {
+        AuthorizationSnapshot older = AuthorizationSnapshot.of("user", context("role", "featureA"));
+        AuthorizationSnapshot newer = AuthorizationSnapshot.of("user", context("role", "featureA", "featureRegisteredLater"));
+
+        assertFalse(older.hasFeature("featureRegisteredLater"));
+        assertTrue(newer.hasFeature("featureRegisteredLater"));
+        assertTrue(older.hasFeature("featureA"));
+    }
+
+    private static Context context(String roleName, String... featureNames) {
+        Role role = new Role();
+        role.setRoleName(roleName);
+        for (String featureName : featureNames) {
+            Feature feature = new Feature();
+            feature.setName(featureName);
+            role.getFeature().add(feature);
+        }
+        Context context = new Context();
+        context.setRole(role);
+        return context;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.Proxy;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ResourceInfo;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+
+public class UnionVMSFeatureFilterTest {
+
+    @Test
+    public void methodAnnotationWinsOverClassAnnotation() throws NoSuchMethodException {
+        assertEquals(UnionVMSFeature.manageVessels, UnionVMSFeatureFilter.getRequiredFeature(
+                VesselResource.class, VesselResource.class.getMethod("update")));
+        assertEquals(UnionVMSFeature.viewVesselsAndMobileTerminals, UnionVMSFeatureFilter.getRequiredFeature(
+                VesselResource.class, VesselResource.class.getMethod("list")));
+    }
+
+    @Test
+    public void inheritedMethodIsResolvedPerResourceClass() throws NoSuchMethodException {
+        assertEquals(UnionVMSFeature.viewVesselsAndMobileTerminals, UnionVMSFeatureFilter.getRequiredFeature(
+                VesselResource.class, BaseResource.class.getMethod("ping")));
+        assertNull(UnionVMSFeatureFilter.getRequiredFeature(OpenResource.class, BaseResource.class.getMethod("ping")));
+        assertNull(UnionVMSFeatureFilter.getRequiredFeature(OpenResource.class, BaseResource.class.getMethod("ping")));
+    }
+
+    @Test
+    public void methodWithoutRequiredFeatureIsNotMeasured() throws NoSuchMethodException {
+        UnionVMSFeatureFilter filter = new UnionVMSFeatureFilter();
+        ResourceInfo resourceInfo = (ResourceInfo) Proxy.newProxyInstance(ResourceInfo.class.getClassLoader(),
+                new Class<?>[]{ResourceInfo.class}, (proxy, method, args) -> "getResourceClass".equals(method.getName())
+                        ? OpenResource.class : BaseResource.class.getMethod("ping"));
+        Whitebox.setInternalState(filter, "resourceInfo", resourceInfo);
+        // neither the request, the servlet context nor the metrics are injected, so any use of them fails
+        ContainerRequestContext requestContext = (ContainerRequestContext) Proxy.newProxyInstance(ContainerRequestContext.class.getClassLoader(),
+                new Class<?>[]{ContainerRequestContext.class}, (proxy, method, args) -> {
+                    throw new AssertionError(method.getName() + " should not be called");
+                });
+
+        filter.filter(requestContext);
+    }
+
+    public static class BaseResource {
+        public void ping() {
+        }
+    }
+
+    @RequiresFeature(UnionVMSFeature.viewVesselsAndMobileTerminals)
+    public static class VesselResource extends BaseResource {
+        public void list() {
+        }
+
+        @RequiresFeature(UnionVMSFeature.manageVessels)
+        public void update() {
+        }
+    }
+
+    public static class OpenResource extends BaseResource {
+    }
+}
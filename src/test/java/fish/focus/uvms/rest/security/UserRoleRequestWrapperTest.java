@@ -0,0 +1,147 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import org.junit.Test;
+import fish.focus.uvms.constants.AuthConstants;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Feature;
+import fish.focus.wsdl.user.types.Role;
+
+public class UserRoleRequestWrapperTest {
+
+    private final Map<String, Object> servletContextAttributes = new HashMap<>();
+
+    private final ServletContext servletContext = (ServletContext) Proxy.newProxyInstance(ServletContext.class.getClassLoader(),
+            new Class<?>[]{ServletContext.class}, (proxy, method, args) -> {
+                if ("setAttribute".equals(method.getName())) {
+                    servletContextAttributes.put((String) args[0], args[1]);
+                }
+                return null;
+            });
+
+    @Test
+    public void rolesAreKeptOnTheRequestNotOnTheServletContext() {
+        Map<String, Object> firstAttributes = new HashMap<>();
+        Map<String, Object> secondAttributes = new HashMap<>();
+        Set<String> firstRoles = roles("viewMovements");
+        Set<String> secondRoles = roles("manageVessels");
+
+        new UserRoleRequestWrapper("first", firstRoles, request(firstAttributes, "container"));
+        new UserRoleRequestWrapper("second", secondRoles, request(secondAttributes, "container"));
+
+        assertSame(firstRoles, firstAttributes.get(AuthConstants.HTTP_SERVLET_CONTEXT_ATTR_FEATURES));
+        assertSame(secondRoles, secondAttributes.get(AuthConstants.HTTP_SERVLET_CONTEXT_ATTR_FEATURES));
+        assertTrue(servletContextAttributes.isEmpty());
+    }
+
+    @Test
+    public void rolesAnswerIsUserInRole() {
+        UserRoleRequestWrapper wrapper = new UserRoleRequestWrapper("user", roles("viewMovements"), request(new HashMap<>(), "container"));
+
+        assertTrue(wrapper.isUserInRole("viewMovements"));
+        assertFalse(wrapper.isUserInRole("container"));
+        assertEquals("user", wrapper.getRemoteUser());
+        assertSame(wrapper.getUserPrincipal(), wrapper.getUserPrincipal());
+    }
+
+    @Test
+    public void authorizationTakesPrecedenceOverTheRoles() {
+        UserRoleRequestWrapper wrapper = new UserRoleRequestWrapper("user", roles("viewMovements"), request(new HashMap<>(), "container"));
+
+        wrapper.setAuthorization(AuthorizationSnapshot.of("user", context("role", "manageVessels")));
+
+        assertTrue(wrapper.isUserInRole("manageVessels"));
+        assertFalse(wrapper.isUserInRole("viewMovements"));
+    }
+
+    @Test
+    public void wrapperWithoutRolesAsksTheContainer() {
+        UserRoleRequestWrapper wrapper = new UserRoleRequestWrapper(request(new HashMap<>(), "container"), "user");
+
+        assertTrue(wrapper.isUserInRole("container"));
+        assertFalse(wrapper.isUserInRole("viewMovements"));
+        assertEquals("user", wrapper.getUserPrincipal().getName());
+    }
+
+    @Test
+    public void securityContextReadsTheFeaturesOfTheSnapshot() {
+        UserSecurityContext securityContext = new UserSecurityContext();
+
+        assertFalse(securityContext.isAuthorized());
+        assertTrue(securityContext.getFeatures().isEmpty());
+        assertFalse(securityContext.hasFeature(UnionVMSFeature.viewMovements));
+
+        AuthorizationSnapshot authorization = AuthorizationSnapshot.of("user", context("role", UnionVMSFeature.viewMovements.name()));
+        securityContext.setAuthorization("Movement", authorization);
+
+        assertTrue(securityContext.isAuthorized());
+        assertSame(authorization.getFeatureNames(), securityContext.getFeatures());
+        assertTrue(securityContext.hasFeature(UnionVMSFeature.viewMovements));
+        assertEquals("user", securityContext.getUsername());
+        assertEquals("role", securityContext.getRoleName());
+        assertEquals("Movement", securityContext.getApplicationName());
+    }
+
+    /**
+     * @param containerRole the only role the container grants
+     */
+    private HttpServletRequest request(Map<String, Object> attributes, String containerRole) {
+        return (HttpServletRequest) Proxy.newProxyInstance(HttpServletRequest.class.getClassLoader(),
+                new Class<?>[]{HttpServletRequest.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "setAttribute":
+                            attributes.put((String) args[0], args[1]);
+                            return null;
+                        case "getAttribute":
+                            return attributes.get((String) args[0]);
+                        case "getServletContext":
+                            return servletContext;
+                        case "isUserInRole":
+                            return containerRole.equals(args[0]);
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static Set<String> roles(String... roles) {
+        return Collections.unmodifiableSet(new HashSet<>(Arrays.asList(roles)));
+    }
+
+    private static Context context(String roleName, String... featureNames) {
+        Role role = new Role();
+        role.setRoleName(roleName);
+        for (String featureName : featureNames) {
+            Feature feature = new Feature();
+            feature.setName(featureName);
+            role.getFeature().add(feature);
+        }
+        Context context = new Context();
+        context.setRole(role);
+        return context;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.exception.ServiceException;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.jms.USMUnavailableException;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.wsdl.user.module.GetUserContextResponse;
+import fish.focus.wsdl.user.types.Application;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.UserContext;
+import fish.focus.wsdl.user.types.UserFault;
+
+public class AsyncUSMServiceBeanTest {
+
+    private final AsyncUSMServiceBean service = new AsyncUSMServiceBean();
+
+    private final FakeUSMMessageClient messageClient = new FakeUSMMessageClient();
+
+    private final ApplicationDescriptorCache applicationDescriptorCache = new ApplicationDescriptorCache();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(service, "messageClient", messageClient);
+        Whitebox.setInternalState(service, "userContextCache", new UserContextCache());
+        Whitebox.setInternalState(service, "applicationDescriptorCache", applicationDescriptorCache);
+        Whitebox.setInternalState(service, "datasetCache", new DatasetCache());
+        Whitebox.setInternalState(service, "callGuard", new USMCallGuard());
+        Whitebox.setInternalState(service, "preferenceWriteBehind", new PreferenceWriteBehind());
+        Whitebox.setInternalState(service, "executorService", managed(executor));
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void userContextFutureCompletesWithTheResponse() throws Exception {
+        messageClient.setResponder((operation, number) -> userContextResponse("rep_power"));
+
+        UserContext userContext = service.getFullUserContext("rep_power", "Reporting").get(5, TimeUnit.SECONDS);
+
+        assertEquals("rep_power", userContext.getUserName());
+        // the second lookup is served by the cache
+        service.getFullUserContext("rep_power", "Reporting").get(5, TimeUnit.SECONDS);
+        assertEquals(1, messageClient.getSent().size());
+    }
+
+    @Test
+    public void refusedRequestFailsTheFuture() throws Exception {
+        messageClient.setResponder((operation, number) -> {
+            throw new USMUnavailableException("USM is not responding");
+        });
+
+        Throwable error = failure(service.getFullUserContext("rep_power", "Reporting"));
+
+        assertTrue(error instanceof ServiceException);
+        assertTrue(error.getCause() instanceof USMUnavailableException);
+    }
+
+    @Test
+    public void missingResponseFailsTheFuture() throws Exception {
+        Throwable error = failure(service.getFullUserContext("rep_power", "Reporting"));
+
+        assertTrue(error instanceof ServiceException);
+        assertEquals(USMOperation.GET_USER_CONTEXT, messageClient.getSent().get(0));
+    }
+
+    @Test
+    public void userFaultFailsTheDeployment() throws Exception {
+        messageClient.setResponder((operation, number) -> userFault());
+        Application application = new Application();
+        application.setName("Reporting");
+
+        Throwable error = failure(service.deployApplicationDescriptor(application));
+
+        assertEquals(USMServiceSupport.UNABLE_TO_REGISTER, error.getMessage());
+        assertNull(applicationDescriptorCache.get("Reporting"));
+    }
+
+    @Test
+    public void batchThatFailsAtOnceDoesNotRecurse() throws Exception {
+        messageClient.setResponder((operation, number) -> {
+            throw new USMUnavailableException("USM is not responding");
+        });
+        List<DatasetExtension> datasets = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            DatasetExtension dataset = new DatasetExtension();
+            dataset.setApplicationName("Reporting");
+            // every other dataset is refused before being sent
+            dataset.setName(i % 2 == 0 ? "dataset" + i : null);
+            datasets.add(dataset);
+        }
+
+        List<DatasetOperationResult> results = service.createDatasets(datasets).get(30, TimeUnit.SECONDS);
+
+        assertEquals(datasets.size(), results.size());
+        for (DatasetOperationResult result : results) {
+            assertFalse(result.isSuccess());
+        }
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) throws Exception {
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("The future should have failed");
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    static String userContextResponse(String username) {
+        UserContext userContext = new UserContext();
+        userContext.setUserName(username);
+        GetUserContextResponse response = new GetUserContextResponse();
+        response.setContext(userContext);
+        return marshal(response);
+    }
+
+    static String userFault() {
+        UserFault fault = new UserFault();
+        fault.setCode(500);
+        fault.setFault("Unexpected error");
+        return marshal(fault);
+    }
+
+    static String marshal(Object response) {
+        try {
+            return JAXBContextRegistry.marshal(response);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ManagedExecutorService managed(ExecutorService executor) {
+        return (ManagedExecutorService) Proxy.newProxyInstance(ManagedExecutorService.class.getClassLoader(),
+                new Class<?>[]{ManagedExecutorService.class}, (proxy, method, args) -> method.invoke(executor, args));
+    }
+}
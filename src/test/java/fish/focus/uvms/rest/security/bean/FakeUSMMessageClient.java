@@ -0,0 +1,132 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.jms.JMSException;
+import fish.focus.uvms.jms.USMMessageClient;
+import fish.focus.uvms.jms.USMOperation;
+
+/**
+ * Answers the requests to USM without a broker. The response to a request is given by a {@link Responder}, from the
+ * operation and the position of the request among all the requests sent.
+ * <p>Responses are completed when they are first awaited, or at once when obtained with {@link #getResponse(String)}
+ * while {@link #completeOnAwait} is false. Until then the request counts as in flight.
+ */
+class FakeUSMMessageClient extends USMMessageClient {
+
+    private final List<USMOperation> sent = new CopyOnWriteArrayList<>();
+    private final Map<String, Response> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    private volatile Responder responder = (operation, number) -> null;
+    private volatile boolean completeOnAwait;
+
+    @FunctionalInterface
+    interface Responder {
+        /**
+         * @return the body of the response, or null if USM does not respond
+         * @throws JMSException to refuse the request, as the call guard does
+         */
+        String respond(USMOperation operation, int number) throws JMSException;
+    }
+
+    void setResponder(Responder responder) {
+        this.responder = responder;
+    }
+
+    void setCompleteOnAwait(boolean completeOnAwait) {
+        this.completeOnAwait = completeOnAwait;
+    }
+
+    @Override
+    public String sendMessage(String payload, USMOperation operation, String applicationName) throws JMSException {
+        int number;
+        synchronized (sent) {
+            number = sent.size();
+            sent.add(operation);
+        }
+        String body = responder.respond(operation, number);
+        String messageId = "ID:" + number;
+        responses.put(messageId, new Response(body));
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        return messageId;
+    }
+
+    @Override
+    public String receiveResponse(String messageId) throws JMSException {
+        try {
+            return responses.get(messageId).get(USMOperation.OTHER.getTimeout(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException | ExecutionException | TimeoutException e) {
+            throw new JMSException("No response from USM to message " + messageId);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> getResponse(String messageId) {
+        Response response = responses.get(messageId);
+        if (!completeOnAwait) {
+            response.respond();
+        }
+        return response;
+    }
+
+    /**
+     * @return the operation of every request sent, in order
+     */
+    List<USMOperation> getSent() {
+        return sent;
+    }
+
+    /**
+     * @return the largest number of requests that were in flight at the same time
+     */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    private final class Response extends CompletableFuture<String> {
+        private final String body;
+
+        private Response(String body) {
+            this.body = body;
+        }
+
+        private void respond() {
+            boolean completed = body == null ? completeExceptionally(new JMSException("No response from USM")) : complete(body);
+            if (completed) {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public String get() throws InterruptedException, ExecutionException {
+            respond();
+            return super.get();
+        }
+
+        @Override
+        public String get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            respond();
+            return super.get(timeout, unit);
+        }
+    }
+}
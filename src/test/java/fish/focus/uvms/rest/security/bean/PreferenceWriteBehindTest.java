@@ -0,0 +1,173 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMUnavailableException;
+import fish.focus.wsdl.user.module.PutPreferenceResponse;
+import fish.focus.wsdl.user.types.UserPreference;
+
+public class PreferenceWriteBehindTest {
+
+    private final PreferenceWriteBehind writeBehind = new PreferenceWriteBehind(true, 500L);
+
+    private final FakeUSMMessageClient messageClient = new FakeUSMMessageClient();
+
+    private final USMCallGuard callGuard = new USMCallGuard();
+
+    private final AtomicInteger scheduledFlushes = new AtomicInteger();
+
+    /**
+     * Only counts the flushes, the tests flush themselves.
+     */
+    private final ManagedScheduledExecutorService scheduler = (ManagedScheduledExecutorService) Proxy.newProxyInstance(
+            ManagedScheduledExecutorService.class.getClassLoader(), new Class<?>[]{ManagedScheduledExecutorService.class}, (proxy, method, args) -> {
+                if ("schedule".equals(method.getName())) {
+                    scheduledFlushes.incrementAndGet();
+                }
+                return null;
+            });
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(writeBehind, "messageClient", messageClient);
+        Whitebox.setInternalState(writeBehind, "userContextCache", new UserContextCache());
+        Whitebox.setInternalState(writeBehind, "callGuard", callGuard);
+        Whitebox.setInternalState(writeBehind, "scheduler", scheduler);
+    }
+
+    @Test
+    public void writesOfTheSamePreferenceAreCoalesced() {
+        messageClient.setResponder((operation, number) -> putPreferenceResponse("OK"));
+        writeBehind.enqueue(userPreference("REP_POWER_ROLE"), "old");
+        writeBehind.enqueue(userPreference("rep_power_role"), "new");
+
+        assertEquals(1, scheduledFlushes.get());
+        assertEquals("new", pendingValue());
+
+        writeBehind.flush();
+
+        assertEquals(1, messageClient.getSent().size());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void flushKeepsAtMostTheBatchWindowInFlight() {
+        messageClient.setResponder((operation, number) -> putPreferenceResponse("OK"));
+        messageClient.setCompleteOnAwait(true);
+        int count = callGuard.getBatchWindow() * 2 + 1;
+        for (int i = 0; i < count; i++) {
+            writeBehind.enqueue(userPreference("rep_power_role", "option" + i), "value");
+        }
+
+        writeBehind.flush();
+
+        assertEquals(count, messageClient.getSent().size());
+        assertEquals(callGuard.getBatchWindow(), messageClient.getMaxInFlight());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void refusedWritesAreSentAgainWithTheNextFlush() {
+        messageClient.setResponder((operation, number) -> {
+            if (number == 1) {
+                throw new USMUnavailableException("USM is not responding");
+            }
+            return putPreferenceResponse("OK");
+        });
+        for (int i = 0; i < 3; i++) {
+            writeBehind.enqueue(userPreference("rep_power_role", "option" + i), "value");
+        }
+
+        writeBehind.flush();
+
+        // once a write is refused the following ones are not sent
+        assertEquals(2, messageClient.getSent().size());
+        assertEquals(2, writeBehind.getPendingCount());
+        assertEquals(2, scheduledFlushes.get());
+
+        writeBehind.flush();
+
+        assertEquals(4, messageClient.getSent().size());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    public void unansweredWriteStaysPending() {
+        writeBehind.enqueue(userPreference("rep_power_role"), "value");
+
+        writeBehind.flush();
+
+        assertEquals(1, messageClient.getSent().size());
+        assertEquals("value", pendingValue());
+        assertEquals(2, scheduledFlushes.get());
+    }
+
+    @Test
+    public void writeEnqueuedDuringTheFlushIsKept() {
+        messageClient.setResponder((operation, number) -> {
+            if (number == 0) {
+                writeBehind.enqueue(userPreference("rep_power_role"), "newer");
+            }
+            return putPreferenceResponse("OK");
+        });
+        writeBehind.enqueue(userPreference("rep_power_role"), "value");
+
+        writeBehind.flush();
+
+        assertEquals("newer", pendingValue());
+    }
+
+    @Test
+    public void stoppedWriteBehindIsNotRescheduled() {
+        writeBehind.enqueue(userPreference("rep_power_role"), "value");
+
+        writeBehind.stop();
+
+        assertEquals(1, scheduledFlushes.get());
+        assertEquals("value", pendingValue());
+        assertFalse(writeBehind.enqueue(userPreference("rep_power_role"), "other"));
+    }
+
+    private String pendingValue() {
+        return writeBehind.getPendingValue("rep_power", "Reporting", "rep_power_role", null, "option");
+    }
+
+    private static UserPreference userPreference(String roleName) {
+        return userPreference(roleName, "option");
+    }
+
+    private static UserPreference userPreference(String roleName, String optionName) {
+        UserPreference userPreference = new UserPreference();
+        userPreference.setUserName("rep_power");
+        userPreference.setApplicationName("Reporting");
+        userPreference.setRoleName(roleName);
+        userPreference.setOptionName(optionName);
+        return userPreference;
+    }
+
+    private static String putPreferenceResponse(String status) {
+        PutPreferenceResponse response = new PutPreferenceResponse();
+        response.setResponse(status);
+        return AsyncUSMServiceBeanTest.marshal(response);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.Role;
+import org.junit.Test;
+
+public class ResolvedUserContextTest {
+
+    private final ResolvedUserContext resolved = new ResolvedUserContext();
+
+    @Test
+    public void contextIsOnlyReturnedForTheSameRequest() {
+        Context context = new Context();
+        resolved.setContext("rep_power", "Reporting", "rep_power_role", "EC", context);
+
+        assertSame(context, resolved.getContext("rep_power", "Reporting", "rep_power_role", "EC"));
+        assertNull(resolved.getContext("rep_power", "Reporting", "rep_power_role", null));
+        assertNull(resolved.getContext("rep_power", "Spatial", "rep_power_role", "EC"));
+        assertNull(resolved.getAuthorization("rep_power", "Reporting", "rep_power_role", "EC"));
+    }
+
+    @Test
+    public void resolvingAnotherContextForgetsTheAuthorization() {
+        Context context = new Context();
+        context.setRole(new Role());
+        AuthorizationSnapshot authorization = AuthorizationSnapshot.of("rep_power", context);
+        resolved.setAuthorization("rep_power", "Reporting", "rep_power_role", "EC", authorization);
+        assertSame(authorization, resolved.getAuthorization("rep_power", "Reporting", "rep_power_role", "EC"));
+        assertSame(context, resolved.getContext("rep_power", "Reporting", "rep_power_role", "EC"));
+
+        resolved.setContext("rep_power", "Reporting", "AdminAll", null, new Context());
+        assertNull(resolved.getAuthorization("rep_power", "Reporting", "AdminAll", null));
+
+        resolved.clear();
+        assertNull(resolved.getContext("rep_power", "Reporting", "AdminAll", null));
+    }
+}
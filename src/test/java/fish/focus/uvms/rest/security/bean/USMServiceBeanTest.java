@@ -0,0 +1,183 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import org.junit.Before;
+import org.junit.Test;
+import org.powermock.reflect.Whitebox;
+import fish.focus.uvms.cache.ApplicationDescriptorCache;
+import fish.focus.uvms.cache.DatasetCache;
+import fish.focus.uvms.cache.UserContextCache;
+import fish.focus.uvms.jms.USMCallGuard;
+import fish.focus.uvms.jms.USMOperation;
+import fish.focus.uvms.jms.USMUnavailableException;
+import fish.focus.uvms.rest.security.AuthorizationSnapshot;
+import fish.focus.wsdl.user.module.CreateDatasetResponse;
+import fish.focus.wsdl.user.module.DeleteDatasetResponse;
+import fish.focus.wsdl.user.module.GetUserContextResponse;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.ContextSet;
+import fish.focus.wsdl.user.types.DatasetExtension;
+import fish.focus.wsdl.user.types.Feature;
+import fish.focus.wsdl.user.types.Role;
+import fish.focus.wsdl.user.types.UserContext;
+
+public class USMServiceBeanTest {
+
+    private final USMServiceBean service = new USMServiceBean();
+
+    private final FakeUSMMessageClient messageClient = new FakeUSMMessageClient();
+
+    private final USMCallGuard callGuard = new USMCallGuard();
+
+    private final DatasetCache datasetCache = new DatasetCache();
+
+    @Before
+    public void setUp() {
+        Whitebox.setInternalState(service, "messageClient", messageClient);
+        Whitebox.setInternalState(service, "userContextCache", new UserContextCache());
+        Whitebox.setInternalState(service, "applicationDescriptorCache", new ApplicationDescriptorCache());
+        Whitebox.setInternalState(service, "datasetCache", datasetCache);
+        Whitebox.setInternalState(service, "callGuard", callGuard);
+        Whitebox.setInternalState(service, "resolvedUserContext", new ResolvedUserContext());
+        Whitebox.setInternalState(service, "preferenceWriteBehind", new PreferenceWriteBehind());
+        messageClient.setCompleteOnAwait(true);
+    }
+
+    @Test
+    public void batchKeepsAtMostTheBatchWindowInFlight() {
+        messageClient.setResponder((operation, number) -> createDatasetResponse("OK"));
+        List<DatasetExtension> datasets = datasets(callGuard.getBatchWindow() * 3 + 1);
+
+        List<DatasetOperationResult> results = service.createDatasets(datasets);
+
+        assertEquals(datasets.size(), messageClient.getSent().size());
+        assertEquals(callGuard.getBatchWindow(), messageClient.getMaxInFlight());
+        assertEquals(datasets.size(), results.size());
+        for (int i = 0; i < datasets.size(); i++) {
+            assertSame(datasets.get(i), results.get(i).getDataset());
+            assertTrue(results.get(i).isSuccess());
+            assertEquals("OK", results.get(i).getStatus());
+        }
+    }
+
+    @Test
+    public void failuresOnlyFailTheirOwnDataset() {
+        messageClient.setResponder((operation, number) -> {
+            switch (number) {
+                case 1:
+                    throw new USMUnavailableException("USM is not responding");
+                case 2:
+                    return null;
+                case 3:
+                    return AsyncUSMServiceBeanTest.userFault();
+                default:
+                    return createDatasetResponse("OK");
+            }
+        });
+        List<DatasetExtension> datasets = datasets(6);
+        datasets.add(2, dataset("Reporting", null));
+
+        List<DatasetOperationResult> results = service.createDatasets(datasets);
+
+        // the dataset without a name is never sent
+        assertEquals(6, messageClient.getSent().size());
+        assertEquals(7, results.size());
+        boolean[] expected = {true, false, false, false, false, true, true};
+        for (int i = 0; i < expected.length; i++) {
+            assertSame(datasets.get(i), results.get(i).getDataset());
+            assertEquals("dataset " + i, expected[i], results.get(i).isSuccess());
+        }
+        assertTrue(results.get(1).getError().getCause() instanceof USMUnavailableException);
+        assertNull(results.get(4).getStatus());
+    }
+
+    @Test
+    public void updatedApplicationsAreEvicted() throws Exception {
+        datasetCache.get("Reporting", "area", Collections::emptyList);
+        messageClient.setResponder((operation, number) -> deleteDatasetResponse("OK"));
+
+        List<DatasetOperationResult> results = service.deleteDatasets(datasets(2));
+
+        assertTrue(results.get(0).isSuccess());
+        assertEquals(USMOperation.DELETE_DATASET, messageClient.getSent().get(0));
+        assertNull(datasetCache.get("Reporting", "area"));
+    }
+
+    @Test
+    public void userFeaturesAreThoseOfTheAuthorization() throws Exception {
+        messageClient.setResponder((operation, number) -> userContextResponse("rep_power", "rep_power_role", "viewMovements"));
+
+        AuthorizationSnapshot authorization = service.getAuthorization("rep_power", "Reporting", "rep_power_role", null);
+        Set<String> features = service.getUserFeatures("rep_power", authorization.getContext());
+
+        assertSame(authorization.getFeatureNames(), features);
+        assertSame(features, service.getUserFeatures("rep_power", "Reporting", "rep_power_role", null));
+        assertEquals(Collections.singleton("viewMovements"), features);
+        assertEquals(1, messageClient.getSent().size());
+    }
+
+    private static List<DatasetExtension> datasets(int count) {
+        List<DatasetExtension> datasets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            datasets.add(dataset("Reporting", "dataset" + i));
+        }
+        return datasets;
+    }
+
+    private static DatasetExtension dataset(String applicationName, String name) {
+        DatasetExtension dataset = new DatasetExtension();
+        dataset.setApplicationName(applicationName);
+        dataset.setName(name);
+        dataset.setDiscriminator("area");
+        return dataset;
+    }
+
+    private static String userContextResponse(String username, String roleName, String featureName) {
+        Feature feature = new Feature();
+        feature.setName(featureName);
+        Role role = new Role();
+        role.setRoleName(roleName);
+        role.getFeature().add(feature);
+        Context context = new Context();
+        context.setRole(role);
+        ContextSet contextSet = new ContextSet();
+        contextSet.getContexts().add(context);
+        UserContext userContext = new UserContext();
+        userContext.setUserName(username);
+        userContext.setContextSet(contextSet);
+        GetUserContextResponse response = new GetUserContextResponse();
+        response.setContext(userContext);
+        return AsyncUSMServiceBeanTest.marshal(response);
+    }
+
+    private static String createDatasetResponse(String status) {
+        CreateDatasetResponse response = new CreateDatasetResponse();
+        response.setResponse(status);
+        return AsyncUSMServiceBeanTest.marshal(response);
+    }
+
+    private static String deleteDatasetResponse(String status) {
+        DeleteDatasetResponse response = new DeleteDatasetResponse();
+        response.setResponse(status);
+        return AsyncUSMServiceBeanTest.marshal(response);
+    }
+}
@@ -0,0 +1,119 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.rest.security.bean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import javax.xml.bind.JAXBException;
+import org.junit.Test;
+import fish.focus.uvms.utils.JAXBContextRegistry;
+import fish.focus.wsdl.user.module.GetUserContextResponse;
+import fish.focus.wsdl.user.types.Context;
+import fish.focus.wsdl.user.types.ContextSet;
+import fish.focus.wsdl.user.types.Dataset;
+import fish.focus.wsdl.user.types.Feature;
+import fish.focus.wsdl.user.types.Role;
+import fish.focus.wsdl.user.types.Scope;
+import fish.focus.wsdl.user.types.UserContext;
+
+public class USMServiceSupportTest {
+
+    private static final String USER_CONTEXT_RESPONSE = "<ns2:getUserContextResponse xmlns:ns2=\"urn:module\" xmlns:ns3=\"urn:types\"><context>"
+            + "<ns3:userName>rep_power</ns3:userName><ns3:contextSet>"
+            + "<ns3:contexts><ns3:role><ns3:roleName>AdminAll</ns3:roleName><ns3:feature><ns3:name>manageUsers</ns3:name></ns3:feature></ns3:role></ns3:contexts>"
+            + "<ns3:contexts><ns3:role><ns3:roleName>rep_power_role</ns3:roleName></ns3:role><ns3:scope><ns3:scopeName>EC</ns3:scopeName><ns3:dataset><ns3:name>EC</ns3:name></ns3:dataset></ns3:scope></ns3:contexts>"
+            + "<ns3:contexts><ns3:role><ns3:roleName>rep_power_role</ns3:roleName></ns3:role><ns3:scope><ns3:scopeName>All Vessels</ns3:scopeName></ns3:scope></ns3:contexts>"
+            + "</ns3:contextSet></context></ns2:getUserContextResponse>";
+
+    @Test
+    public void peekRootElementSkipsPrologAndComments() {
+        String message = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><!-- reply --><ns2:getUserContextResponse xmlns:ns2=\"urn:module\"><context/></ns2:getUserContextResponse>";
+        assertEquals("getUserContextResponse", USMServiceSupport.peekRootElement(message));
+    }
+
+    @Test
+    public void peekRootElementOfMalformedMessageIsNull() {
+        assertNull(USMServiceSupport.peekRootElement("not xml"));
+    }
+
+    @Test
+    public void responseIsNotAUserFault() {
+        assertFalse(USMServiceSupport.isUserFault("<getUserContextResponse><context/></getUserContextResponse>"));
+    }
+
+    @Test
+    public void selectContextMatchesRoleAndScope() throws Exception {
+        String response = userContextResponse();
+
+        Context context = USMServiceSupport.selectContext(response, "REP_POWER_ROLE", "all vessels");
+        assertEquals("rep_power_role", context.getRole().getRoleName());
+        assertEquals("All Vessels", context.getScope().getScopeName());
+
+        context = USMServiceSupport.selectContext(response, "rep_power_role", "EC");
+        assertEquals("EC", context.getScope().getScopeName());
+        assertEquals("EC", context.getScope().getDataset().get(0).getName());
+    }
+
+    @Test
+    public void selectContextWithoutScopeMatchesRoleOnly() throws Exception {
+        String response = userContextResponse();
+
+        Context context = USMServiceSupport.selectContext(response, "AdminAll", null);
+        assertNull(context.getScope());
+        assertEquals("manageUsers", context.getRole().getFeature().get(0).getName());
+
+        assertEquals("EC", USMServiceSupport.selectContext(response, "rep_power_role", "").getScope().getScopeName());
+    }
+
+    @Test
+    public void selectContextOfUnknownContextIsNull() throws Exception {
+        assertNull(USMServiceSupport.selectContext(USER_CONTEXT_RESPONSE, "AdminAll", "EC"));
+        assertNull(USMServiceSupport.selectContext(USER_CONTEXT_RESPONSE, "manageUsers", null));
+        assertNull(USMServiceSupport.selectContext(userContextResponse(), "rep_power_role", "unknown"));
+    }
+
+    private static String userContextResponse() throws JAXBException {
+        ContextSet contextSet = new ContextSet();
+        contextSet.getContexts().add(context("AdminAll", null, "manageUsers"));
+        contextSet.getContexts().add(context("rep_power_role", "EC", null));
+        contextSet.getContexts().add(context("rep_power_role", "All Vessels", null));
+        UserContext userContext = new UserContext();
+        userContext.setUserName("rep_power");
+        userContext.setContextSet(contextSet);
+        GetUserContextResponse response = new GetUserContextResponse();
+        response.setContext(userContext);
+        return JAXBContextRegistry.marshal(response);
+    }
+
+    private static Context context(String roleName, String scopeName, String featureName) {
+        Role role = new Role();
+        role.setRoleName(roleName);
+        if (featureName != null) {
+            Feature feature = new Feature();
+            feature.setName(featureName);
+            role.getFeature().add(feature);
+        }
+        Context context = new Context();
+        context.setRole(role);
+        if (scopeName != null) {
+            Dataset dataset = new Dataset();
+            dataset.setName(scopeName);
+            Scope scope = new Scope();
+            scope.setScopeName(scopeName);
+            scope.getDataset().add(dataset);
+            context.setScope(scope);
+        }
+        return context;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+﻿Developed with the contribution of the European Commission - Directorate General for Maritime Affairs and Fisheries
+© European Union, 2015-2016.
+
+This file is part of the Integrated Fisheries Data Management (IFDM) Suite. The IFDM Suite is free software: you can
+redistribute it and/or modify it under the terms of the GNU General Public License as published by the
+Free Software Foundation, either version 3 of the License, or any later version. The IFDM Suite is distributed in
+the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License for more details. You should have received a
+copy of the GNU General Public License along with the IFDM Suite. If not, see <http://www.gnu.org/licenses/>.
+ */
+package fish.focus.uvms.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.xml.bind.annotation.XmlRootElement;
+import org.junit.Test;
+
+public class JAXBContextRegistryTest {
+
+    private static final int POOL_SIZE = Integer.getInteger(JAXBContextRegistry.POOL_SIZE_PROPERTY, 16);
+
+    @Test
+    public void marshallersAreTakenFromThePool() throws Exception {
+        Message message = new Message();
+        message.setText("first");
+
+        JAXBContextRegistry.marshal(message);
+        String xml = JAXBContextRegistry.marshal(message);
+
+        JAXBContextRegistry.Statistics statistics = statistics(Message.class);
+        assertEquals(1, statistics.getMissCount());
+        assertEquals(1, statistics.getHitCount());
+        assertEquals(1, statistics.getPooledMarshallers());
+        assertEquals(0, statistics.getPooledUnmarshallers());
+
+        assertEquals("first", JAXBContextRegistry.unmarshal(xml, Message.class).getText());
+        JAXBContextRegistry.unmarshal(xml, Message.class);
+
+        statistics = statistics(Message.class);
+        assertEquals(2, statistics.getMissCount());
+        assertEquals(2, statistics.getHitCount());
+        assertEquals(1, statistics.getPooledUnmarshallers());
+    }
+
+    @Test
+    public void poolIsCappedWhenMoreMarshallersAreInUse() throws Exception {
+        int threads = POOL_SIZE + 4;
+        CountDownLatch marshalling = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                SlowMessage message = new SlowMessage(marshalling);
+                results.add(executor.submit(() -> JAXBContextRegistry.marshal(message)));
+            }
+            for (Future<String> result : results) {
+                result.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        JAXBContextRegistry.Statistics statistics = statistics(SlowMessage.class);
+        assertEquals(threads, statistics.getMissCount());
+        assertEquals(POOL_SIZE, statistics.getPooledMarshallers());
+    }
+
+    private static JAXBContextRegistry.Statistics statistics(Class<?> type) {
+        JAXBContextRegistry.Statistics found = null;
+        for (JAXBContextRegistry.Statistics statistics : JAXBContextRegistry.getStatistics()) {
+            if (statistics.getType() == type) {
+                found = statistics;
+            }
+        }
+        assertNotNull(found);
+        return found;
+    }
+
+    @XmlRootElement(name = "message")
+    public static class Message {
+        private String text;
+
+        public String getText() {
+            return text;
+        }
+
+        public void setText(String text) {
+            this.text = text;
+        }
+    }
+
+    /**
+     * Keeps its marshaller in use until every thread of the test is marshalling.
+     */
+    @XmlRootElement(name = "slowMessage")
+    public static class SlowMessage {
+        private final transient CountDownLatch marshalling;
+
+        public SlowMessage() {
+            this(new CountDownLatch(0));
+        }
+
+        SlowMessage(CountDownLatch marshalling) {
+            this.marshalling = marshalling;
+        }
+
+        public String getText() throws InterruptedException {
+            marshalling.countDown();
+            marshalling.await(5, TimeUnit.SECONDS);
+            return "slow";
+        }
+
+        public void setText(String text) {
+            // read only
+        }
+    }
+}